@@ -0,0 +1,76 @@
+package com.bookstore.ordermanagement.config;
+
+import com.bookstore.ordermanagement.OrderManagementApplication;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.load.StubBookService;
+import com.bookstore.ordermanagement.models.OrderSummary;
+import com.bookstore.ordermanagement.services.OrderService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-order latency of {@link OrderService#placeOrder} with the pooled Apache HttpClient behind the
+ * {@link RestTemplate}, as configured in {@link AppConfig}, against the JDK's
+ * {@link SimpleClientHttpRequestFactory}. Several threads place orders at once, so the JDK's small
+ * keep-alive cache has to open new connections to the book service stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RestTemplateRequestFactoryBenchmark {
+
+    @Param({"pooled", "simple"})
+    private String requestFactory;
+
+    private StubBookService bookService;
+
+    private ConfigurableApplicationContext context;
+
+    private OrderService orderService;
+
+    @Setup
+    public void setup() throws IOException {
+        bookService = new StubBookService(Duration.ZERO);
+        context = new SpringApplicationBuilder(OrderManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "eureka.client.enabled=false",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:request-factory-benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.cloud.discovery.client.simple.instances.book-service[0].uri=" + bookService.getUri())
+                .run();
+        if ("simple".equals(requestFactory)) {
+            context.getBean(RestTemplate.class).setRequestFactory(new SimpleClientHttpRequestFactory());
+        }
+        orderService = context.getBean(OrderService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        bookService.close();
+    }
+
+    @Benchmark
+    public OrderSummary placeOrder() {
+        return orderService.placeOrder(Order.builder()
+                .customerName("benchmark")
+                .address("somewhere")
+                .bookDetails(Arrays.asList(new BookDetail(0, 1, 1), new BookDetail(0, 2, 2)))
+                .build());
+    }
+}
@@ -0,0 +1,94 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.OrderManagementApplication;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of orders with 1, 10 and 100 book lines, each order saved in its own
+ * transaction as {@code placeOrder} does. The prepared statements per order, i.e. sequence calls
+ * plus insert batches, are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderInsertBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int bookLines;
+
+    private ConfigurableApplicationContext context;
+
+    private OrderRepository orderRepository;
+
+    private TransactionTemplate transaction;
+
+    private Statistics statistics;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(OrderManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "eureka.client.enabled=false",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:insert-benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.jpa.properties.hibernate.generate_statistics=true")
+                .run();
+        orderRepository = context.getBean(OrderRepository.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearStatistics() {
+        statistics.clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printStatementCounts() {
+        long orders = statistics.getTransactionCount();
+        System.out.printf("%n%d book lines: %.2f prepared statements and %.1f inserts per order%n", bookLines,
+                (double) statistics.getPrepareStatementCount() / orders,
+                (double) statistics.getEntityInsertCount() / orders);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order insertOrder() {
+        return transaction.execute(status -> orderRepository.save(newOrder()));
+    }
+
+    private Order newOrder() {
+        List<BookDetail> bookDetails = new ArrayList<>(bookLines);
+        for (int bookId = 1; bookId <= bookLines; bookId++) {
+            bookDetails.add(new BookDetail(0, bookId, 1));
+        }
+        return Order.builder()
+                .customerName("benchmark")
+                .address("somewhere")
+                .totalAmount(10.0 * bookLines)
+                .bookDetails(bookDetails)
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.bookstore.ordermanagement.models;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the response bodies of the order endpoints, with an {@link ObjectMapper}
+ * configured the way Spring MVC configures its own, in each content type the endpoints offer and
+ * with or without the Blackbird module of {@code JacksonConfig}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderSerializationBenchmark {
+
+    @Param({"1", "10"})
+    private int booksPerOrder;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean blackbird;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter summaryWriter;
+
+    private Order order;
+
+    private OrderSummary orderSummary;
+
+    private List<Order> ordersPage;
+
+    @Setup
+    public void setup() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .defaultViewInclusion(true);
+        if (blackbird) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        if ("smile".equals(format)) {
+            builder.factory(new SmileFactory());
+        } else if ("cbor".equals(format)) {
+            builder.factory(new CBORFactory());
+        }
+        objectMapper = builder.build();
+        summaryWriter = objectMapper.writerWithView(Views.Summary.class);
+        order = newOrder(1);
+        orderSummary = newOrderSummary();
+        ordersPage = new ArrayList<>();
+        for (int id = 1; id <= 50; id++) {
+            ordersPage.add(newOrder(id));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeOrder() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public byte[] serializeOrderSummary() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orderSummary);
+    }
+
+    /**
+     * The order summary with {@code view=summary}, without book descriptions.
+     */
+    @Benchmark
+    public byte[] serializeOrderSummaryView() throws JsonProcessingException {
+        return summaryWriter.writeValueAsBytes(orderSummary);
+    }
+
+    @Benchmark
+    public byte[] serializeOrdersPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(ordersPage);
+    }
+
+    private Order newOrder(int id) {
+        List<BookDetail> bookDetails = new ArrayList<>(booksPerOrder);
+        for (int bookId = 1; bookId <= booksPerOrder; bookId++) {
+            bookDetails.add(new BookDetail(id * 100 + bookId, bookId, 2));
+        }
+        return new Order(id, "Customer " + id, id + " Some Street, Some City", 42.5 * booksPerOrder, bookDetails, OrderStatus.CONFIRMED, null, null);
+    }
+
+    private OrderSummary newOrderSummary() {
+        List<Book> books = new ArrayList<>(booksPerOrder);
+        for (int bookId = 1; bookId <= booksPerOrder; bookId++) {
+            books.add(new Book(bookId, "Book " + bookId, "Author " + bookId,
+                    "A description of book " + bookId + " that is about as long as the ones in the catalogue.", 21.25, 2));
+        }
+        return new OrderSummary(1, "Customer 1", "1 Some Street, Some City", 42.5 * booksPerOrder, books, OrderStatus.CONFIRMED);
+    }
+}
@@ -0,0 +1,77 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling an order from the book service's reservation response: deserializing the books and
+ * pricing them against the ordered lines. {@code legacy} is the former JsonNode round trip with a
+ * linear scan of the basket per book, {@code current} is what {@link OrderService} does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderAssemblyBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int basketSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<BookDetail> orderedBooks;
+
+    private byte[] responseBody;
+
+    @Setup
+    public void setup() throws IOException {
+        orderedBooks = new ArrayList<>(basketSize);
+        List<Book> books = new ArrayList<>(basketSize);
+        for (int i = 1; i <= basketSize; i++) {
+            orderedBooks.add(new BookDetail(0, i, 1 + i % 5));
+            books.add(new Book(i, "Book " + i, "Author " + i, "Description of book " + i, 5.0 + i % 20, 100));
+        }
+        // the book service does not have to answer in basket order
+        Collections.shuffle(books, new Random(42));
+        responseBody = objectMapper.writeValueAsBytes(books);
+    }
+
+    @Benchmark
+    public double legacy() throws IOException {
+        JsonNode responseNode = objectMapper.readTree(responseBody);
+        JsonNode jsonNode = objectMapper.readTree(responseNode.toString());
+        List<Book> books = objectMapper.convertValue(jsonNode, new TypeReference<List<Book>>() {});
+
+        double totalAmount = 0;
+        for (Book book : books) {
+            int orderedQuantity = orderedBooks.stream()
+                    .filter(bookDetails -> bookDetails.getBookId() == book.getId())
+                    .findFirst()
+                    .get()
+                    .getOrderedQuantity();
+            totalAmount = totalAmount + book.getPrice() * orderedQuantity;
+            book.setQuantity(orderedQuantity);
+        }
+        return totalAmount;
+    }
+
+    @Benchmark
+    public double current() throws IOException {
+        List<Book> books = Arrays.asList(objectMapper.readValue(responseBody, Book[].class));
+        return OrderService.priceBooks(OrderedQuantities.of(orderedBooks), books, new ArrayList<>(books.size()));
+    }
+}
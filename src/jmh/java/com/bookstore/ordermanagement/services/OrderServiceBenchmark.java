@@ -0,0 +1,121 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.OrderManagementApplication;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.load.StubBookService;
+import com.bookstore.ordermanagement.models.OrderSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The order hot paths of {@link OrderService} against the application's in-memory H2 database, with
+ * the book service replaced by a local stub that answers without delay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderServiceBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000"})
+    private int seededOrders;
+
+    private StubBookService bookService;
+
+    private ConfigurableApplicationContext context;
+
+    private OrderService orderService;
+
+    private ObjectMapper objectMapper;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private int maxOrderId;
+
+    @Setup
+    public void setup() throws IOException {
+        bookService = new StubBookService(Duration.ZERO);
+        context = new SpringApplicationBuilder(OrderManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "eureka.client.enabled=false",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                        "spring.cloud.discovery.client.simple.instances.book-service[0].uri=" + bookService.getUri())
+                .run();
+        orderService = context.getBean(OrderService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        for (int i = 0; i < seededOrders; i++) {
+            maxOrderId = orderService.placeOrder(newOrder()).getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        bookService.close();
+    }
+
+    @Benchmark
+    public OrderSummary placeOrder() {
+        return orderService.placeOrder(newOrder());
+    }
+
+    @Benchmark
+    public boolean placeAndCancelOrder() {
+        OrderSummary orderSummary = orderService.placeOrder(newOrder());
+        return orderService.deleteOrder(orderSummary.getId());
+    }
+
+    /**
+     * A random keyset page of the {@link OrderSummaryProjection}, serialized the way {@code GET /orders} does.
+     */
+    @Benchmark
+    public byte[] getOrdersPage() {
+        int after = ThreadLocalRandom.current().nextInt(maxOrderId - PAGE_SIZE);
+        return readOnlyTransaction.execute(status -> {
+            try {
+                return objectMapper.writeValueAsBytes(orderService.getOrders(after, PAGE_SIZE));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * All seeded orders through the NDJSON cursor of {@code GET /orders}.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void streamAllOrders() throws IOException {
+        orderService.streamOrders(0, OutputStream.nullOutputStream());
+    }
+
+    private static Order newOrder() {
+        return Order.builder()
+                .customerName("benchmark")
+                .address("somewhere")
+                .bookDetails(Arrays.asList(new BookDetail(0, 1, 1), new BookDetail(0, 2, 2), new BookDetail(0, 3, 1)))
+                .build();
+    }
+}
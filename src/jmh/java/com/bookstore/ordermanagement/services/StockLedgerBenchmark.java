@@ -0,0 +1,108 @@
+package com.bookstore.ordermanagement.services;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reserving and giving back one copy of a book from locally held stock, with 8 threads ordering
+ * either the same hot book or one of 1000 books. {@code striped} is the {@link StripedStock} of the
+ * {@link StockLedger}, {@code atomic} a single compare-and-swap counter per book and
+ * {@code locked} a counter per book behind a monitor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class StockLedgerBenchmark {
+
+    private static final long INITIAL_STOCK = 1_000_000;
+
+    @Param({"1", "1000"})
+    private int books;
+
+    private StripedStock[] striped;
+
+    private AtomicLong[] atomic;
+
+    private LockedStock[] locked;
+
+    @Setup
+    public void setup() {
+        striped = new StripedStock[books];
+        atomic = new AtomicLong[books];
+        locked = new LockedStock[books];
+        for (int i = 0; i < books; i++) {
+            // lands in the setup thread's stripe; each benchmark thread's first give-back moves a
+            // copy to its own stripe, which it takes from afterwards
+            striped[i] = new StripedStock();
+            striped[i].add(INITIAL_STOCK);
+            atomic[i] = new AtomicLong(INITIAL_STOCK);
+            locked[i] = new LockedStock(INITIAL_STOCK);
+        }
+    }
+
+    @Benchmark
+    public boolean striped() {
+        StripedStock stock = striped[book()];
+        boolean taken = stock.tryTake(1);
+        if (taken) {
+            stock.add(1);
+        }
+        return taken;
+    }
+
+    @Benchmark
+    public boolean atomic() {
+        AtomicLong stock = atomic[book()];
+        long available = stock.get();
+        while (available >= 1) {
+            if (stock.compareAndSet(available, available - 1)) {
+                stock.incrementAndGet();
+                return true;
+            }
+            available = stock.get();
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean locked() {
+        LockedStock stock = locked[book()];
+        boolean taken = stock.tryTake(1);
+        if (taken) {
+            stock.add(1);
+        }
+        return taken;
+    }
+
+    private int book() {
+        return books == 1 ? 0 : ThreadLocalRandom.current().nextInt(books);
+    }
+
+    static final class LockedStock {
+
+        private long available;
+
+        LockedStock(long available) {
+            this.available = available;
+        }
+
+        synchronized boolean tryTake(long quantity) {
+            if (available < quantity) {
+                return false;
+            }
+            available -= quantity;
+            return true;
+        }
+
+        synchronized void add(long quantity) {
+            available += quantity;
+        }
+    }
+}
@@ -1,16 +1,133 @@
 package com.bookstore.ordermanagement.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import io.netty.channel.ChannelOption;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
+    @Value("${orders.book-service.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${orders.book-service.read-timeout:5s}")
+    private Duration readTimeout;
+
+    /**
+     * Keep-alive connections to the book service, shared by all {@link RestTemplate} calls. Pool
+     * usage is published as {@code httpcomponents.httpclient.pool.*}.
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager bookServiceConnectionManager(
+            MeterRegistry meterRegistry,
+            @Value("${orders.book-service.pool.max-total:200}") int maxTotal,
+            @Value("${orders.book-service.pool.max-per-route:100}") int maxPerRoute,
+            @Value("${orders.book-service.pool.time-to-live:5m}") Duration timeToLive,
+            @Value("${orders.book-service.pool.validate-after-inactivity:2s}") Duration validateAfterInactivity) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(timeToLive.toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity((int) validateAfterInactivity.toMillis());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "book-service").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    /**
+     * Pooled HTTP client behind the {@link RestTemplate}. Idle connections are closed by a
+     * background thread before the book service or a proxy drops them.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient bookServiceHttpClient(
+            PoolingHttpClientConnectionManager bookServiceConnectionManager,
+            @Value("${orders.book-service.pool.idle-timeout:30s}") Duration idleTimeout) {
+        return HttpClients.custom()
+                .setConnectionManager(bookServiceConnectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+    }
+
+    /**
+     * Built from Boot's {@link RestTemplateBuilder} so calls are timed as {@code http.client.requests}.
+     * A call waits at most the connect timeout for a pooled connection.
+     */
+    @Bean
+    @LoadBalanced
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, CloseableHttpClient bookServiceHttpClient) {
+        return restTemplateBuilder
+                .requestFactory(() -> {
+                    HttpComponentsClientHttpRequestFactory requestFactory =
+                            new HttpComponentsClientHttpRequestFactory(bookServiceHttpClient);
+                    requestFactory.setConnectionRequestTimeout((int) connectTimeout.toMillis());
+                    return requestFactory;
+                })
+                .setConnectTimeout(connectTimeout)
+                .setReadTimeout(readTimeout)
+                .build();
+    }
+
+    /**
+     * Keep-alive connections of the {@link WebClient}, sized like those of the {@link RestTemplate}
+     * rather than Reactor Netty's default of twice the processors (at least 16), which would queue
+     * non-blocking placements for a connection long before the book service is busy. A call waits
+     * at most the connect timeout for a connection. Pool usage is published as
+     * {@code reactor.netty.connection.provider.*}.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider bookServiceConnectionProvider(
+            @Value("${orders.book-service.pool.max-per-route:100}") int maxPerRoute,
+            @Value("${orders.book-service.pool.idle-timeout:30s}") Duration idleTimeout,
+            @Value("${orders.book-service.pool.time-to-live:5m}") Duration timeToLive) {
+        return ConnectionProvider.builder("book-service")
+                .maxConnections(maxPerRoute)
+                .pendingAcquireTimeout(connectTimeout)
+                .maxIdleTime(idleTimeout)
+                .maxLifeTime(timeToLive)
+                .evictInBackground(idleTimeout)
+                .metrics(true)
+                .build();
+    }
+
     @Bean
     @LoadBalanced
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public WebClient.Builder webClientBuilder(ObjectProvider<WebClientCustomizer> customizers,
+                                              ConnectionProvider bookServiceConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(bookServiceConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        WebClient.Builder builder = WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient));
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+        return builder;
+    }
+
+    /**
+     * Non-blocking client for the book service, used when {@code orders.placement.async} is enabled.
+     */
+    @Bean
+    public WebClient webClient(@LoadBalanced WebClient.Builder webClientBuilder) {
+        return webClientBuilder.build();
     }
 }
@@ -0,0 +1,66 @@
+package com.bookstore.ordermanagement.controllers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tells the clients of the order endpoints apart, by what they cannot choose themselves: the
+ * authenticated principal of the request if there is one, otherwise the address the request came
+ * from.
+ * <p>
+ * Requests from the proxies listed in {@code orders.clients.trusted-proxies} are attributed to the
+ * address those proxies put in the {@code orders.clients.forwarded-header} header, the last one that
+ * is not itself a trusted proxy. The header is ignored on requests from any other address, as every
+ * client can send it.
+ */
+@Component
+public class ClientIdentity {
+
+    private final Set<String> trustedProxies;
+
+    private final String forwardedHeader;
+
+    public ClientIdentity(@Value("${orders.clients.trusted-proxies:}") Set<String> trustedProxies,
+                          @Value("${orders.clients.forwarded-header:X-Forwarded-For}") String forwardedHeader) {
+        this.trustedProxies = trustedProxies;
+        this.forwardedHeader = forwardedHeader;
+    }
+
+    /**
+     * @param request the request to identify the client of
+     * @return {@code user:} followed by the principal name, or {@code address:} followed by the
+     * client address
+     */
+    public String resolve(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "user:" + principal.getName();
+        }
+        String address = request.getRemoteAddr();
+        if (trustedProxies.contains(address)) {
+            List<String> forwarded = Collections.list(headerValues(request));
+            for (int i = forwarded.size() - 1; i >= 0 && trustedProxies.contains(address); i--) {
+                String[] hops = forwarded.get(i).split(",");
+                for (int j = hops.length - 1; j >= 0 && trustedProxies.contains(address); j--) {
+                    String hop = hops[j].trim();
+                    if (!hop.isEmpty()) {
+                        address = hop;
+                    }
+                }
+            }
+        }
+        return "address:" + address;
+    }
+
+    private Enumeration<String> headerValues(HttpServletRequest request) {
+        Enumeration<String> values = request.getHeaders(forwardedHeader);
+        return values != null ? values : Collections.emptyEnumeration();
+    }
+}
@@ -0,0 +1,128 @@
+package com.bookstore.ordermanagement.controllers;
+
+import com.bookstore.ordermanagement.services.OrderAdmission;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejects requests to the order write endpoints that {@link OrderAdmission} does not admit, before
+ * their body is read or a book-service call is made: 429 Too Many Requests when the client or all
+ * clients together exceed their rate, and 503 Service Unavailable when the placements in flight reach
+ * the concurrency limit. Both carry a {@code Retry-After} header.
+ * <p>
+ * Only requests that place or cancel orders are limited; reads, such as polling an order's status,
+ * the analytics and the export, are not. Clients are told apart by {@link ClientIdentity}, never by a
+ * header they could choose. Only synchronous placements ({@code POST /orders} without
+ * {@code Prefer: respond-async}) count towards the concurrency limit, as only their latency is that
+ * of placing an order.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.admission.enabled", havingValue = "true")
+public class OrderAdmissionFilter extends OncePerRequestFilter {
+
+    private static final String ORDERS_PATH = "/orders";
+
+    @Autowired
+    private OrderAdmission orderAdmission;
+
+    @Autowired
+    private ClientIdentity clientIdentity;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.equals(ORDERS_PATH) && !path.startsWith(ORDERS_PATH + "/") || !isWrite(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long wait = orderAdmission.tryAcquire(clientIdentity.resolve(request));
+        if (wait > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, wait);
+            return;
+        }
+        if (!isPlacement(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!orderAdmission.tryStartPlacement()) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 0);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new PlacementListener(start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                orderAdmission.placementFinished(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        return HttpMethod.POST.matches(request.getMethod()) || HttpMethod.PUT.matches(request.getMethod())
+                || HttpMethod.PATCH.matches(request.getMethod()) || HttpMethod.DELETE.matches(request.getMethod());
+    }
+
+    private static boolean isPlacement(HttpServletRequest request) {
+        String prefer = request.getHeader(OrderController.PREFER_HEADER);
+        return HttpMethod.POST.matches(request.getMethod())
+                && request.getRequestURI().substring(request.getContextPath().length()).equals(ORDERS_PATH)
+                && (prefer == null || !prefer.contains(OrderController.RESPOND_ASYNC));
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos) {
+        response.setStatus(status.value());
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, seconds)));
+    }
+
+    /**
+     * Ends a placement answered asynchronously once its response is complete.
+     */
+    private final class PlacementListener implements AsyncListener {
+
+        private final long start;
+
+        PlacementListener(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            orderAdmission.placementFinished(System.nanoTime() - start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
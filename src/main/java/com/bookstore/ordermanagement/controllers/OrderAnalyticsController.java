@@ -0,0 +1,78 @@
+package com.bookstore.ordermanagement.controllers;
+
+import com.bookstore.ordermanagement.models.BasketStatistics;
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+import com.bookstore.ordermanagement.services.OrderAnalytics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Sales figures of the confirmed orders, maintained as orders are placed and cancelled, see
+ * {@link OrderAnalytics}.
+ */
+@RestController
+@RequestMapping("/orders/analytics")
+public class OrderAnalyticsController {
+
+    @Autowired
+    private OrderAnalytics orderAnalytics;
+
+    static final int DEFAULT_REVENUE_DAYS = 30;
+
+    static final int MAX_REVENUE_DAYS = 366;
+
+    static final int DEFAULT_TOP_BOOKS = 10;
+
+    /**
+     * Retrieves the number and total amount of the orders placed per day.
+     *
+     * @param from the first day, {@value #DEFAULT_REVENUE_DAYS} days up to {@code to} if omitted
+     * @param to the last day, inclusive, today if omitted
+     * @return one entry per day, or 400 Bad Request if the range is empty or longer than
+     * {@value #MAX_REVENUE_DAYS} days
+     */
+    @GetMapping("/revenue")
+    public ResponseEntity<List<DailyRevenue>> getRevenue(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate last = to != null ? to : orderAnalytics.today();
+        LocalDate first = from != null ? from : last.minusDays(DEFAULT_REVENUE_DAYS - 1);
+        if (first.isAfter(last) || ChronoUnit.DAYS.between(first, last) >= MAX_REVENUE_DAYS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderAnalytics.getRevenue(first, last));
+    }
+
+    /**
+     * Retrieves the best selling books.
+     *
+     * @param limit the maximum number of books
+     * @return the books with the most copies sold, most first
+     */
+    @GetMapping("/top-books")
+    public ResponseEntity<List<BookSales>> getTopBooks(@RequestParam(defaultValue = "" + DEFAULT_TOP_BOOKS) int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderAnalytics.getTopBooks(limit));
+    }
+
+    /**
+     * Retrieves the number of orders, copies and revenue, with the average basket size and value.
+     *
+     * @return the totals of all confirmed orders
+     */
+    @GetMapping("/basket")
+    public ResponseEntity<BasketStatistics> getBasketStatistics() {
+        return ResponseEntity.ok(orderAnalytics.getBasketStatistics());
+    }
+}
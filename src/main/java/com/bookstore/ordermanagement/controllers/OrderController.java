@@ -1,15 +1,37 @@
 package com.bookstore.ordermanagement.controllers;
 
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
 import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BatchItemResult;
+import com.bookstore.ordermanagement.models.ExportFormat;
+import com.bookstore.ordermanagement.models.OrderStatusResult;
 import com.bookstore.ordermanagement.models.OrderSummary;
+import com.bookstore.ordermanagement.models.SerializedOrder;
+import com.bookstore.ordermanagement.models.Views;
+import com.bookstore.ordermanagement.services.BookServiceUnavailableException;
+import com.bookstore.ordermanagement.services.IdempotencyKeyReusedException;
+import com.bookstore.ordermanagement.services.OrderExporter;
 import com.bookstore.ordermanagement.services.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/orders")
@@ -19,73 +41,340 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderExporter orderExporter;
+
+    @Autowired
+    private ClientIdentity clientIdentity;
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    static final int DEFAULT_PAGE_SIZE = 50;
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    static final int MAX_BATCH_SIZE = 1000;
+
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    static final String SUMMARY_VIEW = "summary";
+
+    static final String PREFER_HEADER = "Prefer";
+
+    static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+
+    static final String RESPOND_ASYNC = "respond-async";
+
+    static final MediaType APPLICATION_GZIP = MediaType.parseMediaType("application/gzip");
+
     /**
-     * Retrieves all orders.
+     * Retrieves a page of order summaries, with the books as priced when each order was placed.
+     * Pass the ID of the last order received as {@code after} to fetch the next page.
      *
-     * @return the list of orders
+     * @param after the ID to start after, 0 for the first page
+     * @param limit the page size, capped at {@value #MAX_PAGE_SIZE}
+     * @return the list of order summaries
      */
-    @GetMapping
-    public ResponseEntity<List<Order>> getAllOrders() {
-        List<Order> orders = orderService.getAllOrders();
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<List<OrderSummary>> getOrders(@RequestParam(defaultValue = "0") int after,
+                                                        @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<OrderSummary> orders = orderService.getOrders(after, Math.min(limit, MAX_PAGE_SIZE));
         return ResponseEntity.ok(orders);
     }
 
     /**
-     * Retrieves an order by its ID.
+     * Retrieves a page of the orders of a customer. Pass the ID of the last order received as
+     * {@code after} to fetch the next page.
+     *
+     * @param customerName the exact customer name
+     * @param after the ID to start after, 0 for the first page
+     * @param limit the page size, capped at {@value #MAX_PAGE_SIZE}
+     * @return the list of orders
+     */
+    @GetMapping("/search/by-customer")
+    public ResponseEntity<List<Order>> findOrdersByCustomer(@RequestParam String customerName,
+                                                            @RequestParam(defaultValue = "0") int after,
+                                                            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderService.findOrdersByCustomer(customerName, after, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Retrieves a page of the orders containing a book. Pass the ID of the last order received as
+     * {@code after} to fetch the next page.
+     *
+     * @param bookId the ID of the book
+     * @param after the ID to start after, 0 for the first page
+     * @param limit the page size, capped at {@value #MAX_PAGE_SIZE}
+     * @return the list of orders
+     */
+    @GetMapping("/search/by-book")
+    public ResponseEntity<List<Order>> findOrdersByBook(@RequestParam int bookId,
+                                                        @RequestParam(defaultValue = "0") int after,
+                                                        @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderService.findOrdersByBook(bookId, after, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Retrieves a page of the orders with a total amount in a range, ordered by total amount and ID.
+     * Pass the total amount and ID of the last order received as {@code afterAmount} and
+     * {@code after} to fetch the next page.
+     *
+     * @param min the minimum total amount, inclusive
+     * @param max the maximum total amount, inclusive
+     * @param afterAmount the total amount to start after, omitted for the first page
+     * @param after the ID to start after within {@code afterAmount}
+     * @param limit the page size, capped at {@value #MAX_PAGE_SIZE}
+     * @return the list of orders, or 400 Bad Request if the range is empty
+     */
+    @GetMapping("/search/by-amount")
+    public ResponseEntity<List<Order>> findOrdersByAmount(@RequestParam(defaultValue = "0") double min,
+                                                          @RequestParam(defaultValue = "" + Double.MAX_VALUE) double max,
+                                                          @RequestParam(required = false) Double afterAmount,
+                                                          @RequestParam(defaultValue = "0") int after,
+                                                          @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
+        if (limit < 1 || min > max) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(orderService.findOrdersByAmount(min, max, afterAmount, after, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Streams the summaries of all orders as newline delimited JSON, one per line, the same summaries
+     * {@code GET /orders} returns as JSON pages.
+     *
+     * @param after the ID to start after, 0 for all orders
+     * @return the streamed orders
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamOrders(@RequestParam(defaultValue = "0") int after) {
+        StreamingResponseBody body = out -> orderService.streamOrders(after, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Exports the orders and their book details as a gzip compressed file, streamed from a database
+     * cursor. Pass the ID of the last order of the previous export as {@code after}, or the time of
+     * that export as {@code since}, to only export the orders since.
+     *
+     * @param format {@code ndjson} or {@code csv}
+     * @param after the ID to start after, 0 for all orders
+     * @param since only export the orders placed after this time, as an ISO-8601 instant
+     * @return the compressed export, or 400 Bad Request if the format is unknown
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(defaultValue = "ndjson") String format,
+                                                              @RequestParam(defaultValue = "0") int after,
+                                                              @RequestParam(required = false) Instant since) {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        if (exportFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> orderExporter.export(exportFormat, after, since, null, Channels.newChannel(out));
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_GZIP)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("orders." + exportFormat.getFileExtension()).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Retrieves the summary of an order by its ID, with the books as priced when the order was placed.
+     * The response carries an {@code ETag}; a poller that sends it back in {@code If-None-Match} gets
+     * 304 Not Modified while the order is unchanged.
      *
      * @param id the ID of the order to retrieve
-     * @return the order if found, or 404 Not Found if not found
+     * @param ifNoneMatch the entity tags the client already has, if any
+     * @return the order if found, 304 Not Modified if the client's copy is current, or 404 Not Found
+     * if not found
      */
-    @GetMapping("/{id}")
-    public ResponseEntity<Order> getOrderById(@PathVariable int id) {
-        Order order = orderService.getOrderById(id);
-        if (order != null) {
-            return ResponseEntity.ok(order);
-        } else {
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getOrderById(@PathVariable int id,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        SerializedOrder order = orderService.getSerializedOrder(id);
+        if (order == null) {
             log.error("Order not found with ID: {}", id);
             return ResponseEntity.notFound().build();
         }
+        if (matches(ifNoneMatch, order.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(order.getEtag()).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(order.getEtag())
+                .body(order.getJson());
+    }
+
+    /**
+     * Retrieves the placement status of an order, for clients polling an order accepted with
+     * {@code Prefer: respond-async}.
+     *
+     * @param id the ID of the order
+     * @return the status of the order, or 404 Not Found if not found
+     */
+    @GetMapping("/{id}/status")
+    public ResponseEntity<OrderStatusResult> getOrderStatus(@PathVariable int id) {
+        OrderStatusResult status = orderService.getOrderStatus(id);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
     }
 
     /**
-     * Creates a new order.
+     * Creates a new order. The request thread is released while the order is placed when
+     * {@code orders.placement.async} is enabled. With {@code Prefer: respond-async} the order is only
+     * checked and accepted, and placed in the background: the response is 202 Accepted with the
+     * pending order, and its outcome is polled from {@code GET /orders/{id}/status}.
      *
+     * @param idempotencyKey optional key identifying the request, retries with the same key get the
+     *                       originally created order instead of creating another one; keys are scoped
+     *                       per {@link ClientIdentity client}, and reusing one for a different order is
+     *                       answered with 422 Unprocessable Entity
+     * @param prefer {@value #RESPOND_ASYNC} to have the order placed in the background
+     * @param view {@value #SUMMARY_VIEW} to leave the book descriptions out of the response
      * @param order the order to create
-     * @return the created order
+     * @param request the request, to identify the client by
+     * @return the created order, or the pending order if accepted for background placement
      */
     @PostMapping
-    public ResponseEntity<Object> createOrder(@RequestBody Order order) {
-        try {
-            OrderSummary orderSummary = orderService.placeOrder(order);
-            log.info("Order executed with ID: {}", orderSummary.getId());
-            return ResponseEntity.status(HttpStatus.CREATED).body(orderSummary);
-        } catch (Exception e) {
-            log.error("Failed to execute order: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+    public CompletableFuture<ResponseEntity<Object>> createOrder(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestHeader(value = PREFER_HEADER, required = false) String prefer,
+            @RequestParam(required = false) String view,
+            @RequestBody Order order,
+            HttpServletRequest request) {
+        if (idempotencyKey != null && (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyRecord.MAX_KEY_LENGTH)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(IDEMPOTENCY_KEY_HEADER + " must be 1 to " + IdempotencyRecord.MAX_KEY_LENGTH + " characters"));
         }
+        boolean respondAsync = prefer != null && prefer.contains(RESPOND_ASYNC);
+        String clientId = idempotencyKey != null ? clientIdentity.resolve(request) : null;
+        CompletableFuture<OrderSummary> placement = respondAsync
+                ? orderService.acceptOrderAsync(order, clientId, idempotencyKey)
+                : orderService.placeOrderAsync(order, clientId, idempotencyKey);
+        return placement
+                .thenApply(orderSummary -> {
+                    if (orderSummary.getStatus() == OrderStatus.PENDING) {
+                        log.info("Order accepted with ID: {}", orderSummary.getId());
+                        return ResponseEntity.accepted()
+                                .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC)
+                                .location(URI.create("/orders/" + orderSummary.getId() + "/status"))
+                                .body(withView(orderSummary, view));
+                    }
+                    log.info("Order executed with ID: {}", orderSummary.getId());
+                    return ResponseEntity.status(HttpStatus.CREATED).body(withView(orderSummary, view));
+                })
+                .exceptionally(throwable -> {
+                    Throwable e = unwrap(throwable);
+                    log.error("Failed to execute order: {}", e.getMessage());
+                    HttpStatus status = e instanceof BookServiceUnavailableException || e instanceof RejectedExecutionException
+                            ? HttpStatus.SERVICE_UNAVAILABLE
+                            : e instanceof IdempotencyKeyReusedException ? HttpStatus.UNPROCESSABLE_ENTITY : HttpStatus.INTERNAL_SERVER_ERROR;
+                    return ResponseEntity.status(status).body(e.getMessage());
+                });
+    }
+
+    /**
+     * Creates several orders at once, with one book-service call and one database transaction for the
+     * whole batch. Each order succeeds or fails on its own.
+     *
+     * @param view {@value #SUMMARY_VIEW} to leave the book descriptions out of the response
+     * @param orders the orders to create, at most {@value #MAX_BATCH_SIZE}
+     * @return the outcome per order, in request order
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Object> createOrders(@RequestParam(required = false) String view,
+                                               @RequestBody List<Order> orders) {
+        if (orders.isEmpty() || orders.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body("A batch must contain 1 to " + MAX_BATCH_SIZE + " orders");
+        }
+        List<BatchItemResult> results = orderService.placeOrders(orders);
+        log.info("Batch of {} orders executed", orders.size());
+        return ResponseEntity.ok(withView(results, view));
+    }
+
+    /**
+     * Cancels several orders at once and adds their books back to inventory. Orders still being
+     * placed and archived orders are reported as {@code CONFLICT} and left alone.
+     *
+     * @param ids the IDs of the orders to cancel, at most {@value #MAX_BATCH_SIZE}
+     * @return the outcome per ID, in request order
+     */
+    @DeleteMapping("/batch")
+    public ResponseEntity<Object> cancelOrders(@RequestBody List<Integer> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body("A batch must contain 1 to " + MAX_BATCH_SIZE + " order IDs");
+        }
+        List<BatchItemResult> results = orderService.deleteOrders(ids);
+        log.info("Batch of {} orders cancelled", ids.size());
+        return ResponseEntity.ok(results);
     }
 
     /**
      * Cancels an order and adds the books back to inventory
      *
      * @param id the ID of the order to delete
-     * @return 204 No Content if the order is deleted, or 404 Not Found if not found
+     * @return 204 No Content if the order is deleted, 404 Not Found if not found, or 409 Conflict if
+     * the order is still being placed or archived
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> cancelOrder(@PathVariable int id) {
-        try {
-            boolean deleted = orderService.deleteOrder(id);
-            if (deleted) {
-                log.info("Order deleted with ID: {}", id);
-                return ResponseEntity.noContent().build();
-            } else {
-                log.warn("Order not found with ID: {}", id);
-                return ResponseEntity.notFound().build();
+    public CompletableFuture<ResponseEntity<Void>> cancelOrder(@PathVariable int id) {
+        return orderService.deleteOrderAsync(id)
+                .thenApply(deleted -> {
+                    if (deleted) {
+                        log.info("Order deleted with ID: {}", id);
+                        return ResponseEntity.noContent().<Void>build();
+                    } else {
+                        log.warn("Order not found with ID: {}", id);
+                        return ResponseEntity.notFound().<Void>build();
+                    }
+                })
+                .exceptionally(throwable -> {
+                    Throwable e = unwrap(throwable);
+                    log.error("Failed to cancel order: {}", e.getMessage());
+                    return e instanceof IllegalStateException
+                            ? ResponseEntity.status(HttpStatus.CONFLICT).<Void>build()
+                            : ResponseEntity.badRequest().<Void>build();
+                });
+    }
+
+    private static Object withView(Object body, String view) {
+        if (!SUMMARY_VIEW.equals(view)) {
+            return body;
+        }
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setSerializationView(Views.Summary.class);
+        return value;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
             }
-        } catch (Exception e) {
-            log.error("Failed to cancel order: {}", e.getMessage());
-            return ResponseEntity.badRequest().build();
         }
+        return false;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
     }
 
 }
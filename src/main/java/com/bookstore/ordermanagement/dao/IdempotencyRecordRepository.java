@@ -0,0 +1,22 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface IdempotencyRecordRepository extends CrudRepository<IdempotencyRecord, IdempotencyRecord.Key> {
+
+    /**
+     * Deletes the records created before the given instant in one statement.
+     *
+     * @return the number of deleted records
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.createdAt < :createdAt")
+    int deleteCreatedBefore(Instant createdAt);
+}
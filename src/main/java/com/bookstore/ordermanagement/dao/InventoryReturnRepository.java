@@ -0,0 +1,52 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.entities.InventoryReturn;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface InventoryReturnRepository extends CrudRepository<InventoryReturn, Long> {
+
+    /**
+     * The oldest returns that are due, locked until the end of the transaction so that another
+     * instance claiming returns at the same time waits rather than claims them too.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<InventoryReturn> findByNextAttemptAtLessThanEqualOrderByIdAsc(Instant now, Pageable pageable);
+
+    /**
+     * Moves the next attempt of returns to a later time, without counting an attempt.
+     *
+     * @return the number of returns updated
+     */
+    @Modifying
+    @Query("update InventoryReturn r set r.nextAttemptAt = :nextAttemptAt where r.id in :ids")
+    int postpone(@Param("ids") Collection<Long> ids, @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    /**
+     * Records a failed attempt of a return and when to try it again.
+     *
+     * @return 1 if the return is updated, 0 if it no longer exists
+     */
+    @Modifying
+    @Query("update InventoryReturn r set r.attempts = :attempts, r.nextAttemptAt = :nextAttemptAt where r.id = :id")
+    int reschedule(@Param("id") long id, @Param("attempts") int attempts, @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    /**
+     * @return the number of returns deleted
+     */
+    @Modifying
+    @Query("delete from InventoryReturn r where r.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    Optional<InventoryReturn> findFirstByOrderByIdAsc();
+}
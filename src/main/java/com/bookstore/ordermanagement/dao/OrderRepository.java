@@ -1,8 +1,155 @@
 package com.bookstore.ordermanagement.dao;
 
 import com.bookstore.ordermanagement.entities.Order;
-import org.springframework.data.repository.CrudRepository;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+import com.bookstore.ordermanagement.models.OrderStatusResult;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
-public interface OrderRepository extends CrudRepository<Order, Integer> {
+import java.sql.Date;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+public interface OrderRepository extends PagingAndSortingRepository<Order, Integer> {
+
+    /**
+     * Loads an order together with its book details in a single query.
+     */
+    @Override
+    @EntityGraph(attributePaths = "bookDetails")
+    Optional<Order> findById(Integer id);
+
+    /**
+     * Loads the orders with the given IDs together with their book details in a single query.
+     * IDs without an order are ignored.
+     */
+    @EntityGraph(attributePaths = "bookDetails")
+    List<Order> findDistinctByIdIn(Collection<Integer> ids);
+
+    /**
+     * Keyset page of orders: the orders with an ID strictly greater than the given cursor,
+     * in ascending ID order. Only {@link Pageable#getPageSize()} is used, the offset is always 0.
+     * Book details of the page are batch fetched, see {@link Order#getBookDetails()}.
+     */
+    List<Order> findByIdGreaterThanOrderByIdAsc(int after, Pageable pageable);
+
+    /**
+     * Keyset page of the orders of a customer, in ascending ID order, see
+     * {@link #findByIdGreaterThanOrderByIdAsc}. Served by the {@code (customer_name, id)} index.
+     */
+    List<Order> findByCustomerNameAndIdGreaterThanOrderByIdAsc(String customerName, int after, Pageable pageable);
+
+    /**
+     * Keyset page of the orders containing a book, in ascending ID order. Served by the
+     * {@code (book_id, order_id)} index of the book details.
+     */
+    @Query("select distinct o from Order o join o.bookDetails d"
+            + " where d.bookId = :bookId and o.id > :after order by o.id")
+    List<Order> findByBookIdAndIdGreaterThan(@Param("bookId") int bookId, @Param("after") int after, Pageable pageable);
+
+    /**
+     * Keyset page of the orders with a total amount between {@code min} and {@code max}, in ascending
+     * order of total amount and then ID. Pass the total amount and ID of the last order received as
+     * {@code afterAmount} and {@code after} to fetch the next page, or {@code min} and 0 for the first
+     * page. Served by the {@code (total_amount, id)} index.
+     */
+    @Query("select o from Order o where o.totalAmount <= :max and o.totalAmount >= :afterAmount"
+            + " and (o.totalAmount > :afterAmount or o.id > :after) order by o.totalAmount, o.id")
+    List<Order> findByTotalAmountAfter(@Param("afterAmount") double afterAmount, @Param("after") int after,
+                                       @Param("max") double max, Pageable pageable);
+
+    /**
+     * The placement status of an order, without loading the order itself.
+     */
+    @Query("select new com.bookstore.ordermanagement.models.OrderStatusResult(o.id, o.status, o.rejectionReason)"
+            + " from Order o where o.id = :id")
+    Optional<OrderStatusResult> findStatusById(@Param("id") int id);
+
+    /**
+     * Records the outcome of placing a pending order, its status, total amount, rejection reason and
+     * placement time, only if the order is still pending, so an order deleted or placed by another
+     * worker meanwhile is neither recreated nor placed twice.
+     *
+     * @return 1 if the order was updated, 0 if it is no longer pending or no longer exists
+     */
+    default int completePendingOrder(Order order) {
+        return updatePendingOrder(order.getId(), order.getStatus(), order.getTotalAmount(), order.getRejectionReason(),
+                order.getPlacedAt());
+    }
+
+    @Modifying
+    @Query("update Order o set o.status = :status, o.totalAmount = :totalAmount, o.rejectionReason = :rejectionReason,"
+            + " o.placedAt = :placedAt where o.id = :id and o.status = com.bookstore.ordermanagement.entities.OrderStatus.PENDING")
+    int updatePendingOrder(@Param("id") int id, @Param("status") OrderStatus status, @Param("totalAmount") double totalAmount,
+                           @Param("rejectionReason") String rejectionReason, @Param("placedAt") Instant placedAt);
+
+    /**
+     * Keyset page of the IDs of the orders in a status, in ascending ID order. Served by the
+     * {@code (status, id)} index.
+     */
+    @Query("select o.id from Order o where o.status = :status and o.id > :after order by o.id")
+    List<Integer> findIdsByStatus(@Param("status") OrderStatus status, @Param("after") int after, Pageable pageable);
+
+    /**
+     * Copies sold per book by the orders in a status within an ID range, archived ones included, see
+     * {@code services.OrderAnalytics#rebuild()}. Both tables are read in one statement, so an order
+     * archived meanwhile is counted once.
+     */
+    default List<BookSales> sumCopiesByBook(OrderStatus status, int from, int to) {
+        return sumCopiesByBook(status.name(), from, to).stream()
+                .map(row -> new BookSales(((Number) row[0]).intValue(), ((Number) row[1]).longValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Query(nativeQuery = true, value = "select \"book_id\", sum(\"ordered_quantity\") from ("
+            + "select d.\"book_id\", d.\"ordered_quantity\" from \"order\" o join \"book_detail\" d on d.\"order_id\" = o.\"id\""
+            + " where o.\"status\" = :status and o.\"id\" between :from and :to"
+            + " union all select d.\"book_id\", d.\"ordered_quantity\""
+            + " from \"archived_order\" o join \"archived_book_detail\" d on d.\"order_id\" = o.\"id\""
+            + " where o.\"status\" = :status and o.\"id\" between :from and :to"
+            + ") sales group by \"book_id\"")
+    List<Object[]> sumCopiesByBook(@Param("status") String status, @Param("from") int from, @Param("to") int to);
+
+    /**
+     * Number and total amount of the orders in a status within an ID range per day of
+     * {@link Order#getPlacedAt()}, archived ones included, with a null date for the orders without
+     * it.
+     */
+    default List<DailyRevenue> sumRevenueByDay(OrderStatus status, int from, int to) {
+        return sumRevenueByDay(status.name(), from, to).stream()
+                .map(row -> new DailyRevenue(row[0] == null ? null : ((Date) row[0]).toLocalDate(),
+                        ((Number) row[1]).longValue(), ((Number) row[2]).doubleValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Query(nativeQuery = true, value = "select cast(\"placed_at\" as date), count(*), sum(\"total_amount\") from ("
+            + "select \"placed_at\", \"total_amount\" from \"order\""
+            + " where \"status\" = :status and \"id\" between :from and :to"
+            + " union all select \"placed_at\", \"total_amount\" from \"archived_order\""
+            + " where \"status\" = :status and \"id\" between :from and :to"
+            + ") revenue group by cast(\"placed_at\" as date)")
+    List<Object[]> sumRevenueByDay(@Param("status") String status, @Param("from") int from, @Param("to") int to);
+
+    /**
+     * The lowest order ID, archived orders included.
+     */
+    @Query(nativeQuery = true, value = "select min(\"id\") from (select min(\"id\") as \"id\" from \"order\""
+            + " union all select min(\"id\") from \"archived_order\") ids")
+    Optional<Integer> findMinId();
+
+    /**
+     * The highest order ID, archived orders included.
+     */
+    @Query(nativeQuery = true, value = "select max(\"id\") from (select max(\"id\") as \"id\" from \"order\""
+            + " union all select max(\"id\") from \"archived_order\") ids")
+    Optional<Integer> findMaxId();
 }
@@ -0,0 +1,45 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.entities.OrderSummaryRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface OrderSummaryRecordRepository extends CrudRepository<OrderSummaryRecord, Integer> {
+
+    /**
+     * Retrieves a keyset page of summaries, a range scan of the primary key.
+     *
+     * @param after the ID of the last order of the previous page
+     * @param pageable the page size, the page number is ignored
+     * @return the summaries of the orders with an ID greater than {@code after}, in ascending ID order
+     */
+    List<OrderSummaryRecord> findByOrderIdGreaterThanOrderByOrderIdAsc(int after, Pageable pageable);
+
+    /**
+     * Forward-only cursor over the summaries after the given ID, as JSON. Selects the column only, so
+     * no entities pile up in the persistence context. Must be consumed inside a transaction and
+     * closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select r.summary from OrderSummaryRecord r where r.orderId > :after order by r.orderId")
+    Stream<String> streamSummariesAfter(int after);
+
+    /**
+     * Deletes the summaries of orders in one statement, without loading them first.
+     *
+     * @return the number of deleted summaries
+     */
+    @Modifying
+    @Query("delete from OrderSummaryRecord r where r.orderId in :orderIds")
+    int deleteByOrderIds(Collection<Integer> orderIds);
+}
@@ -8,15 +8,28 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "book_detail_order_id_idx", columnList = "order_id"),
+        @Index(name = "book_detail_book_id_idx", columnList = "bookId, order_id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class BookDetail {
 
+    public static final int ID_ALLOCATION_SIZE = 100;
+
+    /**
+     * Drawn from a pooled sequence, see {@link Order#getId()}.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_detail_seq")
+    @SequenceGenerator(name = "book_detail_seq", sequenceName = "book_detail_seq", allocationSize = ID_ALLOCATION_SIZE)
     private int fid;
     private int bookId;
     private int orderedQuantity;
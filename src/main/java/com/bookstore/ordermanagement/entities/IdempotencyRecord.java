@@ -0,0 +1,77 @@
+package com.bookstore.ordermanagement.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * The response of an order placed with an {@code Idempotency-Key}, kept so that retries of the
+ * same request are answered with it instead of placing the order again. Keys are scoped per client,
+ * so clients choosing the same key do not see each other's orders.
+ * <p>
+ * Records are only ever inserted, in the transaction that saves their order, so a second insert of
+ * the same key fails instead of overwriting the first.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(IdempotencyRecord.Key.class)
+@Table(indexes = @Index(name = "idempotency_record_created_at_idx", columnList = "createdAt"))
+public class IdempotencyRecord implements Persistable<IdempotencyRecord.Key> {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    @Id
+    private String clientId;
+
+    @Id
+    @Column(length = IdempotencyRecord.MAX_KEY_LENGTH)
+    private String idempotencyKey;
+
+    /**
+     * The SHA-256 of the original request, in hex, null for records created before it was kept.
+     */
+    @Column(length = 64)
+    private String requestHash;
+
+    private int orderId;
+
+    /**
+     * The {@code OrderSummary} returned for the original request, as JSON.
+     */
+    @Lob
+    private String response;
+
+    private Instant createdAt;
+
+    @Override
+    public Key getId() {
+        return new Key(clientId, idempotencyKey);
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    /**
+     * The key of an {@link IdempotencyRecord}: the client and the key it chose.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private String clientId;
+
+        private String idempotencyKey;
+    }
+}
@@ -0,0 +1,46 @@
+package com.bookstore.ordermanagement.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Outbox record of books to give back to the book service's inventory, written in the same
+ * transaction that deletes the cancelled order.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(indexes = @Index(name = "inventory_return_next_attempt_at_idx", columnList = "nextAttemptAt"))
+public class InventoryReturn {
+
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Drawn from a pooled sequence, see {@link Order#getId()}.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_return_seq")
+    @SequenceGenerator(name = "inventory_return_seq", sequenceName = "inventory_return_seq", allocationSize = ID_ALLOCATION_SIZE)
+    private long id;
+
+    private int orderId;
+
+    /**
+     * The book details of the cancelled order, as JSON.
+     */
+    @Lob
+    private String bookDetails;
+
+    private Instant createdAt;
+
+    private int attempts;
+
+    private Instant nextAttemptAt;
+}
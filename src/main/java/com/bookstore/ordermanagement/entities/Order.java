@@ -4,19 +4,38 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "order_customer_name_idx", columnList = "customerName, id"),
+        @Index(name = "order_total_amount_idx", columnList = "totalAmount, id"),
+        @Index(name = "order_status_idx", columnList = "status, id"),
+        @Index(name = "order_placed_at_idx", columnList = "placedAt, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
 
+    public static final int BOOK_DETAILS_BATCH_SIZE = 500;
+
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    public static final int MAX_REJECTION_REASON_LENGTH = 255;
+
+    /**
+     * Drawn from a pooled sequence: one sequence call hands out {@value #ID_ALLOCATION_SIZE} IDs, so
+     * inserts don't each wait for a sequence round trip and can be sent as JDBC batches.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "order_seq", allocationSize = ID_ALLOCATION_SIZE)
     private int id;
 
     private String customerName;
@@ -25,6 +44,30 @@ public class Order {
 
     private double totalAmount;
 
+    /**
+     * Loaded lazily, but in batches: touching the book details of one order of a page initializes
+     * the book details of up to {@value #BOOK_DETAILS_BATCH_SIZE} orders of that page in one query.
+     * Mapped by the {@code order_id} column of the book details, which is written with the book
+     * detail insert.
+     */
     @OneToMany(cascade = CascadeType.ALL)
+    @JoinColumn(name = "order_id", nullable = false, updatable = false)
+    @BatchSize(size = BOOK_DETAILS_BATCH_SIZE)
     private List<BookDetail> bookDetails;
+
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    private OrderStatus status = OrderStatus.CONFIRMED;
+
+    /**
+     * Why the book service refused a {@link OrderStatus#REJECTED} order, null otherwise.
+     */
+    @Column(length = MAX_REJECTION_REASON_LENGTH)
+    private String rejectionReason;
+
+    /**
+     * When the order was confirmed, null while it is not and for orders confirmed before this was
+     * recorded.
+     */
+    private Instant placedAt;
 }
@@ -0,0 +1,23 @@
+package com.bookstore.ordermanagement.entities;
+
+/**
+ * Where an order is in its placement. Orders placed synchronously are saved {@link #CONFIRMED}
+ * right away; orders accepted for background placement start {@link #PENDING}.
+ */
+public enum OrderStatus {
+
+    /**
+     * Accepted and waiting for its books to be reserved.
+     */
+    PENDING,
+
+    /**
+     * Books reserved and priced.
+     */
+    CONFIRMED,
+
+    /**
+     * The book service refused to reserve the books, see {@link Order#getRejectionReason()}.
+     */
+    REJECTED
+}
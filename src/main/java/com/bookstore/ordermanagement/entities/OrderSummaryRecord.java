@@ -0,0 +1,31 @@
+package com.bookstore.ordermanagement.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * The read model of an order: its {@code OrderSummary}, including the priced books, written in the
+ * same transaction as the order so that reads are a single primary key lookup without joining the
+ * book details.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "order_summary")
+public class OrderSummaryRecord {
+
+    @Id
+    private int orderId;
+
+    /**
+     * The {@code OrderSummary} of the order, as JSON.
+     */
+    @Lob
+    private String summary;
+}
@@ -0,0 +1,32 @@
+package com.bookstore.ordermanagement.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Totals of all confirmed orders.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BasketStatistics {
+
+    private long orders;
+
+    private long copies;
+
+    private double revenue;
+
+    /**
+     * Copies per order, 0 without orders.
+     */
+    private double averageBasketSize;
+
+    /**
+     * Total amount per order, 0 without orders.
+     */
+    private double averageOrderValue;
+}
@@ -0,0 +1,28 @@
+package com.bookstore.ordermanagement.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of one item of a bulk order request, in the position of the item in the request.
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemResult {
+
+    private int index;
+
+    private Integer orderId;
+
+    private BatchItemStatus status;
+
+    private OrderSummary order;
+
+    private String error;
+}
@@ -0,0 +1,25 @@
+package com.bookstore.ordermanagement.models;
+
+/**
+ * Outcome of one item of a bulk order request.
+ */
+public enum BatchItemStatus {
+
+    /** The order was placed. */
+    CREATED,
+
+    /** The order was cancelled. */
+    CANCELLED,
+
+    /** No order exists with the given ID. */
+    NOT_FOUND,
+
+    /** The order cannot be cancelled in its current state: it is still being placed, or archived. */
+    CONFLICT,
+
+    /** The order was rejected, e.g. because a book is out of stock. */
+    REJECTED,
+
+    /** The order could not be processed, it may be retried. */
+    FAILED
+}
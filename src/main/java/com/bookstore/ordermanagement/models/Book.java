@@ -2,6 +2,7 @@ package com.bookstore.ordermanagement.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -24,6 +25,7 @@ public class Book {
     private String author;
 
     @JsonProperty(value = "description")
+    @JsonView(Views.Full.class)
     private String description;
 
     @JsonProperty(value = "price")
@@ -0,0 +1,25 @@
+package com.bookstore.ordermanagement.models;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One order's share of a batched reservation sent to the book service.
+ */
+@Data
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookReservation {
+
+    private long reservationId;
+
+    private List<BookDetail> bookDetails;
+}
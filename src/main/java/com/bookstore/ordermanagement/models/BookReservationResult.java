@@ -0,0 +1,27 @@
+package com.bookstore.ordermanagement.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The book service's answer for one {@link BookReservation} of a batch: either the reserved books,
+ * or an error if that order could not be reserved.
+ */
+@Data
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookReservationResult {
+
+    private long reservationId;
+
+    private List<Book> books;
+
+    private String error;
+}
@@ -0,0 +1,20 @@
+package com.bookstore.ordermanagement.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Copies of a book sold in confirmed orders.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookSales {
+
+    private int bookId;
+
+    private long copies;
+}
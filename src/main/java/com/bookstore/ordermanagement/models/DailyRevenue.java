@@ -0,0 +1,24 @@
+package com.bookstore.ordermanagement.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Confirmed orders and their total amount on one day, in the time zone of the server.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DailyRevenue {
+
+    private LocalDate date;
+
+    private long orders;
+
+    private double revenue;
+}
@@ -0,0 +1,39 @@
+package com.bookstore.ordermanagement.models;
+
+/**
+ * File format of an order export, always gzip compressed.
+ */
+public enum ExportFormat {
+
+    /** One JSON order per line, with its book details. */
+    NDJSON("ndjson"),
+
+    /** One line per book detail, repeating the columns of its order, under a header line. */
+    CSV("csv");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the file name extension, e.g. {@code ndjson.gz}
+     */
+    public String getFileExtension() {
+        return extension + ".gz";
+    }
+
+    /**
+     * @param name the name of the format, in any case
+     * @return the format, or null if there is none of that name
+     */
+    public static ExportFormat of(String name) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.bookstore.ordermanagement.models;
+
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Placement status of an order, polled by clients whose order was accepted for background placement.
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderStatusResult {
+
+    private int orderId;
+
+    private OrderStatus status;
+
+    private String error;
+}
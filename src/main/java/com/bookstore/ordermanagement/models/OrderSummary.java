@@ -1,5 +1,6 @@
 package com.bookstore.ordermanagement.models;
 
+import com.bookstore.ordermanagement.entities.OrderStatus;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -24,4 +25,11 @@ public class OrderSummary {
     private double totalAmount;
 
     private List<Book> books;
+
+    /**
+     * {@link OrderStatus#PENDING} for an order accepted for background placement, whose total
+     * amount and books are not known yet.
+     */
+    @Builder.Default
+    private OrderStatus status = OrderStatus.CONFIRMED;
 }
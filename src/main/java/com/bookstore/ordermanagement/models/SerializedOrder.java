@@ -0,0 +1,16 @@
+package com.bookstore.ordermanagement.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * An order as served by {@code GET /orders/{id}}: its JSON and the entity tag of that JSON.
+ */
+@Data
+@AllArgsConstructor
+public class SerializedOrder {
+
+    private byte[] json;
+
+    private String etag;
+}
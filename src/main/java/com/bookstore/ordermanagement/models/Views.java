@@ -0,0 +1,22 @@
+package com.bookstore.ordermanagement.models;
+
+/**
+ * Jackson views of the response bodies. Properties without a view are part of every view.
+ */
+public final class Views {
+
+    /**
+     * Leaves out long text such as book descriptions, requested with {@code view=summary}.
+     */
+    public interface Summary {
+    }
+
+    /**
+     * Everything, the default.
+     */
+    public interface Full extends Summary {
+    }
+
+    private Views() {
+    }
+}
@@ -0,0 +1,168 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Bounded, expiring local copy of the book service's catalogue (price and stock per book ID).
+ * <p>
+ * It is fed with the books returned by every reservation and, in bulk, from {@code GET /books}.
+ * Orders are checked against it before any remote call, so an order for an unknown book or for more
+ * copies than are in stock is rejected locally. A book missing from the cache is never a reason to
+ * reject an order, the book service stays the authority on stock. With the {@link StockLedger}
+ * enabled, the copies it holds count as in stock too, as the book service's quantities leave out the
+ * copies leased to this instance.
+ */
+@Component
+@Slf4j
+public class BookCatalogue {
+
+    static final String BOOKS_URL = "http://book-service/books";
+
+    private final RestTemplate restTemplate;
+
+    private final BookServiceGuard bookServiceGuard;
+
+    private final Cache<Integer, Book> books;
+
+    private final Duration ttl;
+
+    private final boolean refreshEnabled;
+
+    private final StockLedger stockLedger;
+
+    /**
+     * Sorted IDs of all books of the last bulk refresh, null until the first one succeeded.
+     */
+    private volatile int[] knownBookIds;
+
+    private volatile long knownBookIdsExpireAt;
+
+    public BookCatalogue(RestTemplate restTemplate,
+                         BookServiceGuard bookServiceGuard,
+                         MeterRegistry meterRegistry,
+                         @Value("${orders.catalogue.max-size:10000}") long maxSize,
+                         @Value("${orders.catalogue.ttl:5m}") Duration ttl,
+                         @Value("${orders.catalogue.refresh.enabled:false}") boolean refreshEnabled,
+                         @Nullable StockLedger stockLedger) {
+        this.restTemplate = restTemplate;
+        this.stockLedger = stockLedger;
+        this.bookServiceGuard = bookServiceGuard;
+        this.ttl = ttl;
+        this.refreshEnabled = refreshEnabled;
+        this.books = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, books, "bookCatalogue");
+    }
+
+    /**
+     * Returns the cached book, or null if it is not cached.
+     */
+    public Book get(int bookId) {
+        return books.getIfPresent(bookId);
+    }
+
+    /**
+     * Caches a copy of each book, as returned by the book service.
+     */
+    public void putAll(Collection<Book> reservedBooks) {
+        for (Book book : reservedBooks) {
+            books.put(book.getId(), new Book(book.getId(), book.getTitle(), book.getAuthor(),
+                    book.getDescription(), book.getPrice(), book.getQuantity()));
+        }
+    }
+
+    /**
+     * Drops the given books, e.g. because returned copies made their cached stock stale.
+     */
+    public void invalidateAll(Collection<BookDetail> bookDetails) {
+        for (BookDetail bookDetail : bookDetails) {
+            books.invalidate(bookDetail.getBookId());
+        }
+    }
+
+    /**
+     * Rejects an order that the cached catalogue already shows cannot be fulfilled.
+     *
+     * @param orderedBooks the ordered books
+     * @throws IllegalArgumentException if a book is unknown or has fewer copies in stock, or held by
+     * the {@link StockLedger}, than ordered
+     */
+    public void validate(List<BookDetail> orderedBooks) throws IllegalArgumentException {
+        if (orderedBooks == null || orderedBooks.isEmpty()) {
+            throw new IllegalArgumentException("Order contains no books");
+        }
+        int[] knownIds = System.currentTimeMillis() < knownBookIdsExpireAt ? knownBookIds : null;
+        for (BookDetail bookDetail : orderedBooks) {
+            int bookId = bookDetail.getBookId();
+            Book book = books.getIfPresent(bookId);
+            if (book == null) {
+                if (knownIds != null && Arrays.binarySearch(knownIds, bookId) < 0) {
+                    throw new IllegalArgumentException("Book not found with ID: " + bookId);
+                }
+            } else if (book.getQuantity() < bookDetail.getOrderedQuantity()) {
+                long inStock = book.getQuantity() + (stockLedger != null ? stockLedger.getHeld(bookId) : 0);
+                if (inStock < bookDetail.getOrderedQuantity()) {
+                    throw new IllegalArgumentException("Book with ID " + bookId + " has only "
+                            + inStock + " copies in stock");
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads the whole catalogue from the book service.
+     *
+     * @throws RestClientException if the book service cannot be reached
+     * @throws BookServiceUnavailableException if the book service is not called, see {@link BookServiceGuard}
+     */
+    public void refresh() throws RestClientException {
+        ResponseEntity<Book[]> responseEntity = bookServiceGuard.call(() -> restTemplate.getForEntity(BOOKS_URL, Book[].class));
+        Book[] allBooks = responseEntity.getBody();
+        if (allBooks == null) {
+            return;
+        }
+        putAll(Arrays.asList(allBooks));
+
+        int[] ids = new int[allBooks.length];
+        for (int i = 0; i < allBooks.length; i++) {
+            ids[i] = allBooks[i].getId();
+        }
+        Arrays.sort(ids);
+        knownBookIds = ids;
+        knownBookIdsExpireAt = System.currentTimeMillis() + ttl.toMillis();
+        log.info("Book catalogue refreshed with {} books", ids.length);
+    }
+
+    @Scheduled(fixedDelayString = "${orders.catalogue.refresh.interval:PT1M}")
+    void scheduledRefresh() {
+        if (!refreshEnabled) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (RestClientException | BookServiceUnavailableException e) {
+            log.warn("Failed to refresh book catalogue: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.BookReservation;
+import com.bookstore.ordermanagement.models.BookReservationResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the book reservations of concurrent orders into one batched call to the book service.
+ * <p>
+ * Reservations are queued and a single dispatcher thread collects them until either
+ * {@code max-batch-size} reservations are waiting or {@code max-wait} has passed since the first one,
+ * then sends them with one {@code PUT /books/order/batch} through the {@link BookReservationClient}.
+ * Each caller gets the result for its own reservation, so one rejected order does not fail the others
+ * of its batch. Batches are sent one at a time, so a blocking caller whose reservation is still queued
+ * after {@code timeout}, behind slow batches, takes it back out of the queue and gives up; once sent,
+ * a reservation is bounded by the timeouts of the book-service client.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "orders.reservation.batching.enabled", havingValue = "true")
+public class BookReservationBatcher {
+
+    private final BookReservationClient bookReservationClient;
+
+    private final int maxBatchSize;
+
+    private final Duration maxWait;
+
+    private final Duration timeout;
+
+    private final BlockingQueue<PendingReservation> queue;
+
+    private final AtomicLong reservationIds = new AtomicLong();
+
+    private Thread dispatcher;
+
+    private volatile boolean running;
+
+    public BookReservationBatcher(BookReservationClient bookReservationClient,
+                                  @Value("${orders.reservation.batching.max-batch-size:100}") int maxBatchSize,
+                                  @Value("${orders.reservation.batching.max-wait:5ms}") Duration maxWait,
+                                  @Value("${orders.reservation.batching.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${orders.reservation.batching.timeout:2s}") Duration timeout) {
+        this.bookReservationClient = bookReservationClient;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait = maxWait;
+        this.timeout = timeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "book-reservation-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+        List<PendingReservation> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(pending -> pending.result.completeExceptionally(
+                new IllegalStateException("Book reservation batcher is shut down")));
+    }
+
+    /**
+     * Queues the books of one order for the next batch.
+     *
+     * @param bookDetails the ordered books
+     * @return a future completed with the reserved books, or with an {@link IllegalArgumentException}
+     * if the book service rejected this order
+     * @throws IllegalStateException if the queue is full or the batcher is shut down
+     */
+    public CompletableFuture<List<Book>> reserveAsync(List<BookDetail> bookDetails) {
+        return enqueue(bookDetails).result;
+    }
+
+    /**
+     * Reserves the books of one order as part of the next batch, waiting for the batch to complete.
+     *
+     * @param bookDetails the ordered books
+     * @return the reserved books
+     * @throws IllegalArgumentException if the book service rejected this order
+     * @throws BookServiceUnavailableException if the reservation was not sent within {@code timeout}
+     */
+    public List<Book> reserve(List<BookDetail> bookDetails) {
+        PendingReservation pending = enqueue(bookDetails);
+        try {
+            try {
+                return pending.result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (queue.remove(pending)) {
+                    throw new BookServiceUnavailableException("Book reservation not sent within " + timeout, e);
+                }
+                // already taken for a batch, which may reserve the books, so wait for its result
+                return pending.result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for book reservation", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private PendingReservation enqueue(List<BookDetail> bookDetails) {
+        PendingReservation pending = new PendingReservation(
+                new BookReservation(reservationIds.incrementAndGet(), bookDetails));
+        if (!running) {
+            throw new IllegalStateException("Book reservation batcher is shut down");
+        }
+        if (!queue.offer(pending)) {
+            throw new IllegalStateException("Book reservation queue is full");
+        }
+        return pending;
+    }
+
+    private void dispatchLoop() {
+        List<PendingReservation> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWait.toNanos();
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingReservation next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    batch.add(next);
+                }
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.result.completeExceptionally(
+                        new IllegalStateException("Book reservation batcher is shut down")));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void dispatch(List<PendingReservation> batch) {
+        List<BookReservation> reservations = new ArrayList<>(batch.size());
+        for (PendingReservation pending : batch) {
+            reservations.add(pending.reservation);
+        }
+
+        Map<Long, BookReservationResult> results;
+        try {
+            results = bookReservationClient.reserveAll(reservations);
+        } catch (RuntimeException e) {
+            log.error("Batched book reservation of {} orders failed: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+            return;
+        }
+
+        for (PendingReservation pending : batch) {
+            BookReservationResult result = results.get(pending.reservation.getReservationId());
+            if (result == null) {
+                pending.result.completeExceptionally(new IllegalStateException(
+                        "Book service did not answer reservation " + pending.reservation.getReservationId()));
+            } else if (result.getError() != null) {
+                pending.result.completeExceptionally(new IllegalArgumentException(result.getError()));
+            } else {
+                pending.result.complete(result.getBooks());
+            }
+        }
+    }
+
+    static final class PendingReservation {
+
+        final BookReservation reservation;
+
+        final CompletableFuture<List<Book>> result = new CompletableFuture<>();
+
+        PendingReservation(BookReservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+}
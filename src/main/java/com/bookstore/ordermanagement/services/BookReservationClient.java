@@ -0,0 +1,60 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.models.BookReservation;
+import com.bookstore.ordermanagement.models.BookReservationResult;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reserves the books of several orders with one call to the book service's batch endpoint.
+ */
+@Component
+public class BookReservationClient {
+
+    static final String BATCH_URL = "http://book-service/books/order/batch";
+
+    private final RestTemplate restTemplate;
+
+    private final BookServiceGuard bookServiceGuard;
+
+    public BookReservationClient(RestTemplate restTemplate, BookServiceGuard bookServiceGuard) {
+        this.restTemplate = restTemplate;
+        this.bookServiceGuard = bookServiceGuard;
+    }
+
+    /**
+     * Sends the reservations in one {@code PUT /books/order/batch}.
+     *
+     * @param reservations the reservations, one per order
+     * @return the book service's result per reservation ID; a reservation it did not answer is missing
+     * @throws IllegalStateException if the batch as a whole failed
+     * @throws BookServiceUnavailableException if the book service is not called, see {@link BookServiceGuard}
+     */
+    public Map<Long, BookReservationResult> reserveAll(List<BookReservation> reservations) {
+        ResponseEntity<BookReservationResult[]> responseEntity = bookServiceGuard.call(() -> restTemplate.exchange(
+                BATCH_URL,
+                HttpMethod.PUT,
+                new HttpEntity<>(reservations),
+                BookReservationResult[].class
+        ));
+        if (responseEntity.getStatusCode() != HttpStatus.OK || responseEntity.getBody() == null) {
+            throw new IllegalStateException("Batched book reservation failed with status "
+                    + responseEntity.getStatusCode());
+        }
+
+        BookReservationResult[] results = responseEntity.getBody();
+        Map<Long, BookReservationResult> byId = new HashMap<>(results.length * 2);
+        for (BookReservationResult result : results) {
+            byId.put(result.getReservationId(), result);
+        }
+        return byId;
+    }
+}
@@ -0,0 +1,191 @@
+package com.bookstore.ordermanagement.services;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Protects the order service from a slow or failing book service. Every call goes through a
+ * bulkhead that caps the calls in flight, and a circuit breaker that fails calls fast once too many
+ * of the recent ones failed or were slow. Rejected calls throw {@link BookServiceUnavailableException}.
+ * <p>
+ * Blocking calls are capped by {@code max-concurrent-calls}, sized to the request threads that may
+ * wait on the book service. Non-blocking calls hold no thread, so they have a bulkhead of their own,
+ * {@code async-max-concurrent-calls}, sized to the connections of the {@code WebClient}: calls
+ * beyond them would only queue for a connection and count as slow.
+ * <p>
+ * Client errors (4xx, e.g. a book out of stock) are answers, not failures, and don't count
+ * towards opening the circuit. Timeouts are set on the HTTP clients, see {@code AppConfig}.
+ * State and call metrics are published as {@code resilience4j.circuitbreaker.*} and
+ * {@code resilience4j.bulkhead.*} with the tag {@code name=book-service}.
+ */
+@Component
+public class BookServiceGuard {
+
+    static final String NAME = "book-service";
+
+    static final String ASYNC_NAME = "book-service-async";
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Bulkhead bulkhead;
+
+    private final Bulkhead asyncBulkhead;
+
+    private final Counter hedged;
+
+    public BookServiceGuard(MeterRegistry meterRegistry,
+                            @Value("${orders.book-service.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+                            @Value("${orders.book-service.circuit-breaker.slow-call-duration:2s}") Duration slowCallDuration,
+                            @Value("${orders.book-service.circuit-breaker.slow-call-rate-threshold:80}") float slowCallRateThreshold,
+                            @Value("${orders.book-service.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+                            @Value("${orders.book-service.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                            @Value("${orders.book-service.circuit-breaker.open-duration:10s}") Duration openDuration,
+                            @Value("${orders.book-service.bulkhead.max-concurrent-calls:32}") int maxConcurrentCalls,
+                            @Value("${orders.book-service.bulkhead.max-wait:0s}") Duration maxWait,
+                            @Value("${orders.book-service.bulkhead.async-max-concurrent-calls:100}") int asyncMaxConcurrentCalls) {
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(slowCallDuration)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(openDuration)
+                .ignoreExceptions(HttpClientErrorException.class, IllegalArgumentException.class)
+                .build());
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(maxWait)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(NAME);
+        this.bulkhead = bulkheadRegistry.bulkhead(NAME);
+        this.asyncBulkhead = bulkheadRegistry.bulkhead(ASYNC_NAME, BulkheadConfig.custom()
+                .maxConcurrentCalls(asyncMaxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        this.hedged = Counter.builder("orders.book.service.hedged")
+                .description("Book-service calls that were sent a second time because the first was slow")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Makes a blocking call to the book service.
+     *
+     * @param call the call
+     * @return the result of the call
+     * @throws BookServiceUnavailableException if the call was not made
+     */
+    public <T> T call(Supplier<T> call) {
+        try {
+            return Bulkhead.decorateSupplier(bulkhead, CircuitBreaker.decorateSupplier(circuitBreaker, call)).get();
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            throw unavailable(e);
+        }
+    }
+
+    /**
+     * Makes a non-blocking call to the book service. The call holds a permit of the non-blocking
+     * calls' bulkhead until the returned stage completes.
+     *
+     * @param call the call
+     * @return the result of the call, failed with {@link BookServiceUnavailableException} if the call
+     * was not made
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletionStage<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Bulkhead.decorateCompletionStage(asyncBulkhead, CircuitBreaker.decorateCompletionStage(circuitBreaker, call))
+                .get()
+                .whenComplete((value, error) -> {
+                    if (error == null) {
+                        result.complete(value);
+                    } else {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        result.completeExceptionally(cause instanceof CallNotPermittedException
+                                || cause instanceof BulkheadFullException ? unavailable(cause) : cause);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Makes a blocking, idempotent call to the book service and, if it has not answered after
+     * {@code hedgeDelay}, sends the same call again and takes whichever answers successfully first.
+     * Only for calls the book service can safely receive twice.
+     *
+     * @param call the call
+     * @param hedgeDelay how long to wait for the first call before hedging, zero to never hedge
+     * @param executor runs the calls
+     * @return the result of the first successful call
+     * @throws BookServiceUnavailableException if the calls were not made
+     */
+    public <T> T hedgedCall(Supplier<T> call, Duration hedgeDelay, Executor executor) {
+        if (hedgeDelay.isZero() || hedgeDelay.isNegative()) {
+            return call(call);
+        }
+
+        CompletableFuture<T> first = CompletableFuture.supplyAsync(() -> call(call), executor);
+        try {
+            try {
+                return first.get(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                hedged.increment();
+                CompletableFuture<T> second = CompletableFuture.supplyAsync(() -> call(call), executor);
+                return firstSuccessful(first, second).get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the book service", e);
+        }
+    }
+
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        BiConsumer<T, Throwable> onComplete = (value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (first.isCompletedExceptionally() && second.isCompletedExceptionally()) {
+                result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            }
+        };
+        first.whenComplete(onComplete);
+        second.whenComplete(onComplete);
+        return result;
+    }
+
+    private static BookServiceUnavailableException unavailable(Throwable cause) {
+        return new BookServiceUnavailableException("Book service unavailable: " + cause.getMessage(), cause);
+    }
+}
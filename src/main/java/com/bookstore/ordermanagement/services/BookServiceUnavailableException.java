@@ -0,0 +1,12 @@
+package com.bookstore.ordermanagement.services;
+
+/**
+ * Thrown instead of calling the book service when its circuit breaker is open or too many calls to
+ * it are already in flight.
+ */
+public class BookServiceUnavailableException extends RuntimeException {
+
+    public BookServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
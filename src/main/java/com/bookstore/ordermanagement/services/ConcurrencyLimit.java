@@ -0,0 +1,100 @@
+package com.bookstore.ordermanagement.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit on the calls in flight that adapts to their latency, in the manner of Netflix's gradient
+ * limit: a short and a long moving average of the latency are kept, and while the short one stays
+ * within {@value #TOLERANCE} times the long one the limit grows with each call, by a share of its
+ * square root. Once calls queue up and slow down, the limit shrinks in proportion to the slowdown.
+ * <p>
+ * The limit only grows while at least half of it is in use, so an idle service does not drift to
+ * the maximum. The long average follows a lasting change of the latency, quickly when it drops, so
+ * the limit reacts to sudden slowdowns rather than to the level of the latency.
+ */
+final class ConcurrencyLimit {
+
+    static final double TOLERANCE = 1.5;
+
+    private static final double SHORT_WINDOW = 10;
+
+    private static final double LONG_WINDOW = 600;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    // guarded by this
+    private double estimatedLimit;
+
+    private double shortLatency;
+
+    private double longLatency;
+
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Starts a call if the limit allows it. A started call must be ended with {@link #release(long)}.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends a call and adjusts the limit to its latency.
+     *
+     * @param latencyNanos how long the call took
+     */
+    void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        update(latencyNanos, current);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(double latency, int inFlightBefore) {
+        if (longLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+        } else {
+            shortLatency += (latency - shortLatency) / SHORT_WINDOW;
+            longLatency += (latency - longLatency) / LONG_WINDOW;
+        }
+        if (longLatency / shortLatency > 2) {
+            longLatency *= 0.95;
+        }
+        if (inFlightBefore < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
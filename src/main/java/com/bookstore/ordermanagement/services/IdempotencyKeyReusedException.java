@@ -0,0 +1,11 @@
+package com.bookstore.ordermanagement.services;
+
+/**
+ * Thrown when a client sends an {@code Idempotency-Key} it already used for a different request.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,210 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.IdempotencyRecordRepository;
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.models.OrderSummary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates order placements by their {@code Idempotency-Key}, scoped per client.
+ * <p>
+ * Recent keys live in a bounded, expiring in-memory map whose values are the futures of the orders
+ * being placed, so a retry arriving while the original is still in flight waits for it instead of
+ * placing the order a second time. The map is a Caffeine cache, backed by a concurrent hash map, so
+ * lookups are O(1) and only contend on the key's bin, never on a global lock. Placements are also
+ * recorded as {@link IdempotencyRecord}s, by {@link #record}, in the transaction that saves their
+ * order: a key is recorded if and only if its order is saved, and the records answer retries after a
+ * restart, after the key was evicted from memory, or on another instance, for
+ * {@code orders.idempotency.retention}. Two instances placing the same key at once both save their
+ * order, but the second transaction fails on the record of the first and is answered with it.
+ * <p>
+ * Every key remembers a hash of the request it was first used with. A client reusing a key for a
+ * different order gets an {@link IdempotencyKeyReusedException} rather than the other order.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final Cache<IdempotencyRecord.Key, Placement> recentKeys;
+
+    private final Duration retention;
+
+    public IdempotencyStore(IdempotencyRecordRepository idempotencyRecordRepository,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${orders.idempotency.max-size:100000}") long maxSize,
+                            @Value("${orders.idempotency.ttl:1h}") Duration ttl,
+                            @Value("${orders.idempotency.retention:1d}") Duration retention) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.retention = retention;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "idempotencyKeys");
+    }
+
+    /**
+     * @param clientId the client sending the request
+     * @param idempotencyKey the client supplied key
+     * @param order the order requested, hashed before it is placed
+     * @return the request to pass to {@link #execute} and {@link #record}
+     */
+    public IdempotentRequest request(String clientId, String idempotencyKey, Order order) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(order));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return new IdempotentRequest(new IdempotencyRecord.Key(clientId, idempotencyKey), hex.toString());
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to hash order for idempotency key " + idempotencyKey, e);
+        }
+    }
+
+    /**
+     * Places an order once per key: the first call runs the placement, every later call with the
+     * same key and the same order gets the outcome of the first one. A failed placement is forgotten
+     * so it can be retried. The placement must {@link #record} the request when it saves the order.
+     *
+     * @param request the request, see {@link #request}
+     * @param placement places the order
+     * @return the summary of the order placed for this key, or a future failed with an
+     * {@link IdempotencyKeyReusedException} if the key was used for a different order
+     */
+    public CompletableFuture<OrderSummary> execute(IdempotentRequest request, Supplier<CompletableFuture<OrderSummary>> placement) {
+        Placement created = new Placement(request.getRequestHash());
+        Placement existing = recentKeys.asMap().putIfAbsent(request.getKey(), created);
+        if (existing != null) {
+            if (!existing.requestHash.equals(request.getRequestHash())) {
+                return CompletableFuture.failedFuture(reused(request));
+            }
+            log.info("Replaying order for idempotency key {}", request.getKey().getIdempotencyKey());
+            return existing.result;
+        }
+
+        CompletableFuture<OrderSummary> result = created.result;
+        try {
+            Optional<OrderSummary> recorded = replay(request);
+            if (recorded.isPresent()) {
+                result.complete(recorded.get());
+                return result;
+            }
+            placement.get().whenComplete((orderSummary, e) -> {
+                if (e == null) {
+                    result.complete(orderSummary);
+                    return;
+                }
+                Throwable failure = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                try {
+                    // another instance recorded the key first
+                    Optional<OrderSummary> recordedMeanwhile = failure instanceof DataIntegrityViolationException
+                            ? replay(request) : Optional.empty();
+                    if (recordedMeanwhile.isPresent()) {
+                        result.complete(recordedMeanwhile.get());
+                        return;
+                    }
+                } catch (Exception replayFailure) {
+                    failure = replayFailure;
+                }
+                recentKeys.asMap().remove(request.getKey(), created);
+                result.completeExceptionally(failure);
+            });
+        } catch (Exception e) {
+            recentKeys.asMap().remove(request.getKey(), created);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Records the order placed for a request, in the transaction that saves the order.
+     *
+     * @param request the request, see {@link #request}
+     * @param orderSummary the summary of the order saved, returned to retries
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(IdempotentRequest request, OrderSummary orderSummary) {
+        try {
+            idempotencyRecordRepository.save(IdempotencyRecord.builder()
+                    .clientId(request.getKey().getClientId())
+                    .idempotencyKey(request.getKey().getIdempotencyKey())
+                    .requestHash(request.getRequestHash())
+                    .orderId(orderSummary.getId())
+                    .response(objectMapper.writeValueAsString(orderSummary))
+                    .createdAt(Instant.now())
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize summary of order " + orderSummary.getId(), e);
+        }
+    }
+
+    private Optional<OrderSummary> replay(IdempotentRequest request) throws JsonProcessingException {
+        Optional<IdempotencyRecord> record = idempotencyRecordRepository.findById(request.getKey());
+        if (record.isEmpty()) {
+            return Optional.empty();
+        }
+        String requestHash = record.get().getRequestHash();
+        if (requestHash != null && !requestHash.equals(request.getRequestHash())) {
+            throw reused(request);
+        }
+        log.info("Replaying persisted order for idempotency key {}", request.getKey().getIdempotencyKey());
+        return Optional.of(objectMapper.readValue(record.get().getResponse(), OrderSummary.class));
+    }
+
+    private static IdempotencyKeyReusedException reused(IdempotentRequest request) {
+        return new IdempotencyKeyReusedException("Idempotency-Key " + request.getKey().getIdempotencyKey()
+                + " was already used for a different order");
+    }
+
+    @Scheduled(fixedDelayString = "${orders.idempotency.purge-interval:PT10M}")
+    void purgeExpiredRecords() {
+        int purged = idempotencyRecordRepository.deleteCreatedBefore(Instant.now().minus(retention));
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency records", purged);
+        }
+    }
+
+    /**
+     * A placement in flight or done, with the hash of the request that started it.
+     */
+    private static final class Placement {
+
+        final String requestHash;
+
+        final CompletableFuture<OrderSummary> result = new CompletableFuture<>();
+
+        Placement(String requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+}
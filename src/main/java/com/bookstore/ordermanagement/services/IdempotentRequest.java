@@ -0,0 +1,20 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A request carrying an {@code Idempotency-Key}, as created by {@link IdempotencyStore#request}.
+ */
+@Getter
+@AllArgsConstructor
+public class IdempotentRequest {
+
+    private final IdempotencyRecord.Key key;
+
+    /**
+     * The SHA-256 of the order requested, in hex.
+     */
+    private final String requestHash;
+}
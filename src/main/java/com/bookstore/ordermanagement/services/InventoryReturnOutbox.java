@@ -0,0 +1,331 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.InventoryReturnRepository;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.InventoryReturn;
+import com.bookstore.ordermanagement.entities.Order;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional outbox for giving the books of cancelled orders back to the book service.
+ * <p>
+ * {@link #enqueue(Order)} records the return in the cancelling transaction, so it commits or rolls
+ * back together with the order deletion. {@link #dispatch()} then periodically sends the due returns,
+ * merged into one {@code PUT /books/return} per batch. The returns of a batch are claimed in a short
+ * transaction that moves their next attempt {@code orders.outbox.lease} ahead, so other instances
+ * skip them; they are sent with no transaction or connection held, and deleted or rescheduled in a
+ * second transaction. A return whose dispatcher died is sent again once its lease has expired.
+ * <p>
+ * If the book service refuses a batch with a client error, the batch was not applied and its returns
+ * are sent again one by one, so a single bad return cannot hold up the others; returns not sent
+ * before the lease expires are left to the next claim. If a batch times out or fails with a server
+ * error it may still have been applied, so its returns are not split into requests under other keys
+ * but rescheduled as a whole. Failed returns are retried with exponential backoff until they succeed.
+ * <p>
+ * Every request carries an {@code Idempotency-Key} derived from the outbox IDs of its returns:
+ * {@code inventory-return-<id>} for a single return, a name-based UUID of the IDs for a batch, so a
+ * resent request has the same key as the original. With {@code orders.outbox.hedge-delay} set, a
+ * return the book service has not answered within that delay is sent a second time, see
+ * {@link BookServiceGuard#hedgedCall}; enable it only if the book service deduplicates returns by that
+ * key.
+ */
+@Component
+@Slf4j
+public class InventoryReturnOutbox {
+
+    static final String BOOK_RETURN_URL = "http://book-service/books/return";
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    static final String IDEMPOTENCY_KEY_PREFIX = "inventory-return-";
+
+    private final InventoryReturnRepository inventoryReturnRepository;
+
+    private final RestTemplate restTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final int batchSize;
+
+    private final Duration retryBackoff;
+
+    private final Duration maxRetryBackoff;
+
+    private final Duration lease;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final BookServiceGuard bookServiceGuard;
+
+    private final Duration hedgeDelay;
+
+    private final Executor hedgeExecutor;
+
+    private final Counter dispatched;
+
+    private final Counter failures;
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    public InventoryReturnOutbox(InventoryReturnRepository inventoryReturnRepository,
+                                 RestTemplate restTemplate,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${orders.outbox.batch-size:100}") int batchSize,
+                                 @Value("${orders.outbox.retry-backoff:1s}") Duration retryBackoff,
+                                 @Value("${orders.outbox.max-retry-backoff:5m}") Duration maxRetryBackoff,
+                                 BookServiceGuard bookServiceGuard,
+                                 @Value("${orders.outbox.hedge-delay:0s}") Duration hedgeDelay,
+                                 @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor hedgeExecutor,
+                                 @Value("${orders.outbox.lease:PT1M}") Duration lease,
+                                 TransactionTemplate transactionTemplate) {
+        this.inventoryReturnRepository = inventoryReturnRepository;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.retryBackoff = retryBackoff;
+        this.maxRetryBackoff = maxRetryBackoff;
+        this.bookServiceGuard = bookServiceGuard;
+        this.hedgeDelay = hedgeDelay;
+        this.hedgeExecutor = hedgeExecutor;
+        this.lease = lease;
+        this.transactionTemplate = transactionTemplate;
+        this.dispatched = Counter.builder("orders.outbox.dispatched")
+                .description("Inventory returns sent to the book service")
+                .register(meterRegistry);
+        this.failures = Counter.builder("orders.outbox.failures")
+                .description("Failed attempts to send an inventory return")
+                .register(meterRegistry);
+        Gauge.builder("orders.outbox.pending", pending, AtomicLong::get)
+                .description("Inventory returns not yet sent")
+                .register(meterRegistry);
+        Gauge.builder("orders.outbox.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest inventory return not yet sent")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records that the books of the order have to be returned. Must be called in the transaction
+     * that deletes the order.
+     *
+     * @param order the cancelled order
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(Order order) {
+        inventoryReturnRepository.save(toInventoryReturn(order, Instant.now()));
+    }
+
+    /**
+     * Records the inventory returns of several cancelled orders, see {@link #enqueue(Order)}.
+     *
+     * @param orders the cancelled orders
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueAll(Collection<Order> orders) {
+        Instant now = Instant.now();
+        List<InventoryReturn> returns = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            returns.add(toInventoryReturn(order, now));
+        }
+        inventoryReturnRepository.saveAll(returns);
+    }
+
+    private InventoryReturn toInventoryReturn(Order order, Instant now) {
+        try {
+            return InventoryReturn.builder()
+                    .orderId(order.getId())
+                    .bookDetails(objectMapper.writeValueAsString(order.getBookDetails()))
+                    .createdAt(now)
+                    .nextAttemptAt(now)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize book details of order " + order.getId(), e);
+        }
+    }
+
+    /**
+     * Sends the due inventory returns in batches.
+     */
+    @Scheduled(fixedDelayString = "${orders.outbox.dispatch-interval:PT1S}")
+    public void dispatch() {
+        Instant now = Instant.now();
+        List<InventoryReturn> due = claim(now);
+        if (!due.isEmpty()) {
+            List<InventoryReturn> sent = new ArrayList<>(due.size());
+            List<InventoryReturn> failed = new ArrayList<>();
+            Outcome outcome = send(due);
+            if (outcome == Outcome.SENT) {
+                sent.addAll(due);
+            } else if (outcome == Outcome.REFUSED && due.size() > 1) {
+                Instant leaseExpiry = now.plus(lease);
+                for (InventoryReturn inventoryReturn : due) {
+                    // the rest stay claimed until the lease expires and are sent by the next claim
+                    if (!Instant.now().isBefore(leaseExpiry)) {
+                        break;
+                    }
+                    if (send(Collections.singletonList(inventoryReturn)) == Outcome.SENT) {
+                        sent.add(inventoryReturn);
+                    } else {
+                        failed.add(inventoryReturn);
+                    }
+                }
+            } else {
+                failed.addAll(due);
+            }
+            complete(sent, failed, Instant.now());
+        }
+        updateLag(now);
+    }
+
+    /**
+     * Claims the oldest due returns for one lease, in a transaction of its own.
+     */
+    private List<InventoryReturn> claim(Instant now) {
+        List<InventoryReturn> due = transactionTemplate.execute(status -> {
+            List<InventoryReturn> claimed = inventoryReturnRepository
+                    .findByNextAttemptAtLessThanEqualOrderByIdAsc(now, PageRequest.of(0, batchSize));
+            if (!claimed.isEmpty()) {
+                inventoryReturnRepository.postpone(ids(claimed), now.plus(lease));
+            }
+            return claimed;
+        });
+        return due != null ? due : Collections.emptyList();
+    }
+
+    /**
+     * Deletes the returns sent and reschedules the failed ones, in a transaction of its own.
+     */
+    private void complete(List<InventoryReturn> sent, List<InventoryReturn> failed, Instant now) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sent.isEmpty()) {
+                inventoryReturnRepository.deleteByIds(ids(sent));
+            }
+            for (InventoryReturn inventoryReturn : failed) {
+                scheduleRetry(inventoryReturn, now);
+            }
+        });
+        dispatched.increment(sent.size());
+    }
+
+    private static List<Long> ids(List<InventoryReturn> inventoryReturns) {
+        List<Long> ids = new ArrayList<>(inventoryReturns.size());
+        for (InventoryReturn inventoryReturn : inventoryReturns) {
+            ids.add(inventoryReturn.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Sends the returns in one request.
+     *
+     * @return {@link Outcome#REFUSED} if the book service answered with a client error or the book
+     * details of a return cannot be read, so that the request was certainly not applied
+     */
+    private Outcome send(List<InventoryReturn> inventoryReturns) {
+        List<BookDetail> bookDetails = new ArrayList<>();
+        try {
+            for (InventoryReturn inventoryReturn : inventoryReturns) {
+                bookDetails.addAll(Arrays.asList(objectMapper.readValue(inventoryReturn.getBookDetails(), BookDetail[].class)));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read books of {} cancelled orders: {}", inventoryReturns.size(), e.getMessage());
+            return Outcome.REFUSED;
+        }
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey(inventoryReturns));
+            HttpEntity<List<BookDetail>> request = new HttpEntity<>(bookDetails, headers);
+            ResponseEntity<Boolean> responseEntity = bookServiceGuard.hedgedCall(() -> restTemplate.exchange(
+                    BOOK_RETURN_URL,
+                    HttpMethod.PUT,
+                    request,
+                    boolean.class
+            ), hedgeDelay, hedgeExecutor);
+            return responseEntity.getStatusCode().is2xxSuccessful() ? Outcome.SENT : Outcome.FAILED;
+        } catch (HttpClientErrorException e) {
+            log.warn("Book service refused to return books of {} cancelled orders: {}", inventoryReturns.size(), e.getMessage());
+            return Outcome.REFUSED;
+        } catch (RestClientException | BookServiceUnavailableException e) {
+            log.warn("Failed to return books of {} cancelled orders: {}", inventoryReturns.size(), e.getMessage());
+            return Outcome.FAILED;
+        }
+    }
+
+    /**
+     * @return the key the book service can deduplicate a request for these returns by
+     */
+    static String idempotencyKey(List<InventoryReturn> inventoryReturns) {
+        if (inventoryReturns.size() == 1) {
+            return IDEMPOTENCY_KEY_PREFIX + inventoryReturns.get(0).getId();
+        }
+        StringBuilder ids = new StringBuilder();
+        for (InventoryReturn inventoryReturn : inventoryReturns) {
+            ids.append(inventoryReturn.getId()).append(',');
+        }
+        return IDEMPOTENCY_KEY_PREFIX + UUID.nameUUIDFromBytes(ids.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void scheduleRetry(InventoryReturn inventoryReturn, Instant now) {
+        failures.increment();
+        int attempts = inventoryReturn.getAttempts() + 1;
+        Duration backoff = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (backoff.compareTo(maxRetryBackoff) > 0) {
+            backoff = maxRetryBackoff;
+        }
+        inventoryReturn.setAttempts(attempts);
+        inventoryReturn.setNextAttemptAt(now.plus(backoff));
+        inventoryReturnRepository.reschedule(inventoryReturn.getId(), attempts, inventoryReturn.getNextAttemptAt());
+    }
+
+    private void updateLag(Instant now) {
+        pending.set(inventoryReturnRepository.count());
+        lagSeconds.set(inventoryReturnRepository.findFirstByOrderByIdAsc()
+                .map(oldest -> Duration.between(oldest.getCreatedAt(), now).getSeconds())
+                .orElse(0L));
+    }
+
+    private enum Outcome {
+        SENT,
+        /** Certainly not applied, the returns can be sent again in another request. */
+        REFUSED,
+        /** Possibly applied, the returns must only be sent again in the same request. */
+        FAILED
+    }
+}
@@ -0,0 +1,140 @@
+package com.bookstore.ordermanagement.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control of the order endpoints, applied before a request is parsed. Every request
+ * takes a token from its client's bucket and then from a bucket shared by all clients, so one
+ * client flooding the service exhausts its own bucket first. Placements are further bounded by a
+ * {@link ConcurrencyLimit} that adapts to their latency, shedding load once the book service or the
+ * database slows down.
+ * <p>
+ * Buckets are kept for the {@code max-clients} most recent clients, and dropped after
+ * {@code client-idle-timeout} without requests. Rejections are counted as
+ * {@code orders.admission.rejected} tagged by {@code reason} ({@code client}, {@code global} or
+ * {@code concurrency}), and the limit and placements in flight are published as the
+ * {@code orders.admission.limit} and {@code orders.admission.in.flight} gauges.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.admission.enabled", havingValue = "true")
+public class OrderAdmission {
+
+    private final Cache<String, TokenBucket> clientBuckets;
+
+    private final TokenBucket globalBucket;
+
+    private final ConcurrencyLimit concurrencyLimit;
+
+    private final double clientRate;
+
+    private final int clientBurst;
+
+    private final LongSupplier nanoClock;
+
+    private final Counter clientRejections;
+
+    private final Counter globalRejections;
+
+    private final Counter concurrencyRejections;
+
+    @Autowired
+    public OrderAdmission(MeterRegistry meterRegistry,
+                          @Value("${orders.admission.client.rate:50}") double clientRate,
+                          @Value("${orders.admission.client.burst:100}") int clientBurst,
+                          @Value("${orders.admission.global.rate:1000}") double globalRate,
+                          @Value("${orders.admission.global.burst:2000}") int globalBurst,
+                          @Value("${orders.admission.max-clients:100000}") long maxClients,
+                          @Value("${orders.admission.client-idle-timeout:10m}") Duration clientIdleTimeout,
+                          @Value("${orders.admission.concurrency.initial-limit:20}") int initialLimit,
+                          @Value("${orders.admission.concurrency.min-limit:4}") int minLimit,
+                          @Value("${orders.admission.concurrency.max-limit:200}") int maxLimit) {
+        this(meterRegistry, clientRate, clientBurst, globalRate, globalBurst, maxClients, clientIdleTimeout,
+                new ConcurrencyLimit(initialLimit, minLimit, maxLimit), System::nanoTime);
+    }
+
+    OrderAdmission(MeterRegistry meterRegistry, double clientRate, int clientBurst, double globalRate, int globalBurst,
+                   long maxClients, Duration clientIdleTimeout, ConcurrencyLimit concurrencyLimit, LongSupplier nanoClock) {
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.nanoClock = nanoClock;
+        this.concurrencyLimit = concurrencyLimit;
+        this.globalBucket = new TokenBucket(globalRate, globalBurst, nanoClock.getAsLong());
+        this.clientBuckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(clientIdleTimeout)
+                .build();
+        this.clientRejections = rejections(meterRegistry, "client");
+        this.globalRejections = rejections(meterRegistry, "global");
+        this.concurrencyRejections = rejections(meterRegistry, "concurrency");
+        Gauge.builder("orders.admission.limit", concurrencyLimit, ConcurrencyLimit::getLimit)
+                .description("Placements allowed in flight")
+                .register(meterRegistry);
+        Gauge.builder("orders.admission.in.flight", concurrencyLimit, ConcurrencyLimit::getInFlight)
+                .description("Placements admitted and not yet answered")
+                .register(meterRegistry);
+        Gauge.builder("orders.admission.clients", clientBuckets, Cache::estimatedSize)
+                .description("Clients with a token bucket")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a token for a request of a client, from the client's bucket and then the global one.
+     *
+     * @param clientId the ID of the client
+     * @return 0 if the request is admitted, otherwise the nanoseconds until it could be
+     */
+    public long tryAcquire(String clientId) {
+        long now = nanoClock.getAsLong();
+        long wait = clientBuckets.get(clientId, id -> new TokenBucket(clientRate, clientBurst, now)).tryAcquire(now);
+        if (wait > 0) {
+            clientRejections.increment();
+            return wait;
+        }
+        wait = globalBucket.tryAcquire(now);
+        if (wait > 0) {
+            globalRejections.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Starts a placement if the concurrency limit allows it. A started placement must be ended with
+     * {@link #placementFinished(long)}.
+     *
+     * @return true if the placement is admitted
+     */
+    public boolean tryStartPlacement() {
+        if (concurrencyLimit.tryAcquire()) {
+            return true;
+        }
+        concurrencyRejections.increment();
+        return false;
+    }
+
+    /**
+     * Ends a placement and adapts the concurrency limit to its latency.
+     *
+     * @param latencyNanos how long the placement took
+     */
+    public void placementFinished(long latencyNanos) {
+        concurrencyLimit.release(latencyNanos);
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("orders.admission.rejected")
+                .description("Requests rejected before being parsed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,133 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.models.BasketStatistics;
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the confirmed orders: copies sold per book, orders and revenue per day, and
+ * grand totals. Every figure is a {@link LongAdder} or {@link DoubleAdder}, striped counters that
+ * concurrent placements update without contending on one memory location.
+ */
+final class OrderAggregates {
+
+    /**
+     * Days are those of the server's time zone, as the database's {@code cast(placed_at as date)}.
+     */
+    static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final Map<Integer, LongAdder> copiesByBook = new ConcurrentHashMap<>();
+
+    private final Map<LocalDate, DayTotals> days = new ConcurrentHashMap<>();
+
+    private final LongAdder orders = new LongAdder();
+
+    private final LongAdder copies = new LongAdder();
+
+    private final DoubleAdder revenue = new DoubleAdder();
+
+    private final TopBooks topBooks;
+
+    OrderAggregates(int topBooksCapacity) {
+        this.topBooks = new TopBooks(topBooksCapacity);
+    }
+
+    /**
+     * Adds a confirmed order, or removes a cancelled one.
+     *
+     * @param sign 1 to add the order, -1 to remove it
+     */
+    void add(Order order, int sign) {
+        LocalDate date = order.getPlacedAt() != null ? LocalDate.ofInstant(order.getPlacedAt(), ZONE) : null;
+        addOrders(date, sign, sign * order.getTotalAmount());
+        for (BookDetail bookDetail : order.getBookDetails()) {
+            addCopies(bookDetail.getBookId(), (long) sign * bookDetail.getOrderedQuantity());
+        }
+    }
+
+    /**
+     * @param date the day the orders were placed, null if not known
+     */
+    void addOrders(LocalDate date, long count, double amount) {
+        orders.add(count);
+        revenue.add(amount);
+        if (date != null) {
+            DayTotals day = days.computeIfAbsent(date, d -> new DayTotals());
+            day.orders.add(count);
+            day.revenue.add(amount);
+        }
+    }
+
+    void addCopies(int bookId, long quantity) {
+        LongAdder sold = copiesByBook.computeIfAbsent(bookId, id -> new LongAdder());
+        sold.add(quantity);
+        copies.add(quantity);
+        topBooks.update(bookId, sold.sum());
+    }
+
+    long getCopies(int bookId) {
+        LongAdder sold = copiesByBook.get(bookId);
+        return sold == null ? 0 : sold.sum();
+    }
+
+    /**
+     * @return the orders and revenue of every day from {@code from} to {@code to}, both inclusive,
+     * including the days without orders
+     */
+    List<DailyRevenue> getRevenue(LocalDate from, LocalDate to) {
+        List<DailyRevenue> revenue = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            DayTotals day = days.get(date);
+            revenue.add(day == null ? new DailyRevenue(date, 0, 0)
+                    : new DailyRevenue(date, day.orders.sum(), day.revenue.sum()));
+        }
+        return revenue;
+    }
+
+    /**
+     * @return the best selling of the tracked books, most copies first
+     */
+    List<BookSales> getTopBooks(int limit) {
+        List<BookSales> sales = new ArrayList<>();
+        for (int bookId : topBooks.candidates()) {
+            long sold = getCopies(bookId);
+            if (sold > 0) {
+                sales.add(new BookSales(bookId, sold));
+            }
+        }
+        sales.sort(Comparator.comparingLong(BookSales::getCopies).reversed().thenComparingInt(BookSales::getBookId));
+        return sales.size() > limit ? new ArrayList<>(sales.subList(0, limit)) : sales;
+    }
+
+    BasketStatistics getBasketStatistics() {
+        long orderCount = orders.sum();
+        long copyCount = copies.sum();
+        double total = revenue.sum();
+        return BasketStatistics.builder()
+                .orders(orderCount)
+                .copies(copyCount)
+                .revenue(total)
+                .averageBasketSize(orderCount > 0 ? (double) copyCount / orderCount : 0)
+                .averageOrderValue(orderCount > 0 ? total / orderCount : 0)
+                .build();
+    }
+
+    private static final class DayTotals {
+
+        final LongAdder orders = new LongAdder();
+
+        final DoubleAdder revenue = new DoubleAdder();
+    }
+}
@@ -0,0 +1,398 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.OrderRepository;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BasketStatistics;
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sales figures of the confirmed orders, kept up to date as orders are placed and cancelled so that
+ * reading them never scans the orders: revenue per day, the best selling books and basket totals.
+ * <p>
+ * {@link OrderService} reports every order it confirms or cancels once the transaction committed,
+ * and the figures are updated in {@link OrderAggregates}. The best selling books come from a bounded
+ * {@link TopBooks} sketch. The figures are kept in memory only, so they are rebuilt from the order
+ * tables after startup and then every {@code rebuild-interval}, which also corrects the drift of the
+ * sketch. A rebuild splits the ID range of the orders into ranges of {@code rebuild-range-size} IDs,
+ * aggregated by the database in parallel on a fork-join pool of {@code rebuild-parallelism} threads.
+ * Orders confirmed or cancelled during a rebuild are replayed onto the rebuilt figures if they were
+ * reported after their range was read; a range with orders reported while it was being read is read
+ * again, since the read may or may not have seen them. The duration is published as
+ * {@code orders.analytics.rebuild}.
+ */
+@Component
+@Slf4j
+public class OrderAnalytics {
+
+    static final int MAX_RANGE_READS = 3;
+
+    private final OrderRepository orderRepository;
+
+    private final Executor taskExecutor;
+
+    private final int topBooksCapacity;
+
+    private final int rangeSize;
+
+    private final int parallelism;
+
+    private final Timer rebuildTimer;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    /**
+     * Orders the changes reported while a rebuild runs relative to the ranges it reads.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile OrderAggregates aggregates;
+
+    /**
+     * The rebuild in progress, null if none.
+     */
+    private volatile Rebuild rebuild;
+
+    public OrderAnalytics(OrderRepository orderRepository,
+                          MeterRegistry meterRegistry,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor taskExecutor,
+                          @Value("${orders.analytics.top-books-capacity:100}") int topBooksCapacity,
+                          @Value("${orders.analytics.rebuild-range-size:10000}") int rangeSize,
+                          @Value("${orders.analytics.rebuild-parallelism:4}") int parallelism) {
+        this.orderRepository = orderRepository;
+        this.taskExecutor = taskExecutor;
+        this.topBooksCapacity = topBooksCapacity;
+        this.rangeSize = rangeSize;
+        this.parallelism = parallelism;
+        this.aggregates = new OrderAggregates(topBooksCapacity);
+        this.rebuildTimer = Timer.builder("orders.analytics.rebuild")
+                .description("Rebuilds of the order analytics from the order tables")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds an order to the figures. Must be called once the order is committed
+     * {@link OrderStatus#CONFIRMED}.
+     *
+     * @param order the confirmed order
+     */
+    public void orderPlaced(Order order) {
+        record(order, 1);
+    }
+
+    /**
+     * Removes an order from the figures. Must be called once the deletion of a
+     * {@link OrderStatus#CONFIRMED} order is committed.
+     *
+     * @param order the cancelled order
+     */
+    public void orderCancelled(Order order) {
+        record(order, -1);
+    }
+
+    private void record(Order order, int sign) {
+        OrderAggregates target = aggregates;
+        target.add(order, sign);
+        Rebuild current = rebuild;
+        if (current != null) {
+            current.changes.add(new Change(copy(order), sign, target, sequence.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Retrieves the orders and revenue per day.
+     *
+     * @param from the first day
+     * @param to the last day, inclusive
+     * @return one entry per day, in ascending order
+     */
+    public List<DailyRevenue> getRevenue(LocalDate from, LocalDate to) {
+        return aggregates.getRevenue(from, to);
+    }
+
+    /**
+     * Retrieves the best selling books.
+     *
+     * @param limit the maximum number of books, at most {@code top-books-capacity} are known
+     * @return the books with the most copies sold, most first
+     */
+    public List<BookSales> getTopBooks(int limit) {
+        return aggregates.getTopBooks(limit);
+    }
+
+    public BasketStatistics getBasketStatistics() {
+        return aggregates.getBasketStatistics();
+    }
+
+    /**
+     * @return the day of the server's time zone the figures are bucketed by, today
+     */
+    public LocalDate today() {
+        return LocalDate.now(OrderAggregates.ZONE);
+    }
+
+    /**
+     * Starts a {@link #rebuild()} on the application task executor, so the scheduler thread is not
+     * held for its duration.
+     */
+    @Scheduled(initialDelayString = "${orders.analytics.rebuild-delay:PT0S}",
+            fixedDelayString = "${orders.analytics.rebuild-interval:PT6H}")
+    public void scheduleRebuild() {
+        taskExecutor.execute(this::rebuild);
+    }
+
+    /**
+     * Recomputes the figures from the order tables and replaces the current ones.
+     *
+     * @return true if rebuilt, false if a rebuild is running already or failed
+     */
+    public boolean rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        Rebuild pending = new Rebuild();
+        rebuild = pending;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Timer.Sample sample = Timer.start();
+        try {
+            OrderAggregates rebuilt = new OrderAggregates(topBooksCapacity);
+            Optional<Integer> minId = orderRepository.findMinId();
+            Optional<Integer> maxId = orderRepository.findMaxId();
+            if (minId.isPresent() && maxId.isPresent()) {
+                RangeTotals totals = pool.invoke(new RangeTask(minId.get(), maxId.get(), pending));
+                for (int attempt = 1; attempt < MAX_RANGE_READS; attempt++) {
+                    List<RangeRead> unsettled = pending.unsettled();
+                    if (unsettled.isEmpty()) {
+                        break;
+                    }
+                    for (RangeRead stale : unsettled) {
+                        totals.merge(stale.totals.negate()).merge(read(stale.from, stale.to, pending).totals);
+                    }
+                }
+                totals.copiesByBook.forEach(rebuilt::addCopies);
+                totals.days.forEach((date, day) -> rebuilt.addOrders(date, day.getOrders(), day.getRevenue()));
+            }
+
+            aggregates = rebuilt;
+            rebuild = null;
+            for (Change change : pending.changes) {
+                if (change.target != rebuilt && pending.missed(change)) {
+                    rebuilt.add(change.order, change.sign);
+                }
+            }
+            log.info("Rebuilt order analytics from orders {} to {}", minId.orElse(null), maxId.orElse(null));
+            return true;
+        } catch (RuntimeException e) {
+            rebuild = null;
+            log.error("Failed to rebuild order analytics: {}", e.getMessage());
+            return false;
+        } finally {
+            sample.stop(rebuildTimer);
+            pool.shutdown();
+            rebuilding.set(false);
+        }
+    }
+
+    private static Order copy(Order order) {
+        List<BookDetail> bookDetails = new ArrayList<>(order.getBookDetails().size());
+        for (BookDetail bookDetail : order.getBookDetails()) {
+            bookDetails.add(new BookDetail(0, bookDetail.getBookId(), bookDetail.getOrderedQuantity()));
+        }
+        return Order.builder()
+                .id(order.getId())
+                .totalAmount(order.getTotalAmount())
+                .placedAt(order.getPlacedAt())
+                .bookDetails(bookDetails)
+                .build();
+    }
+
+    /**
+     * Aggregates the confirmed orders of an ID range, split in halves until a range has at most
+     * {@code rebuild-range-size} IDs.
+     */
+    private final class RangeTask extends RecursiveTask<RangeTotals> {
+
+        private final int from;
+
+        private final int to;
+
+        private final Rebuild pending;
+
+        RangeTask(int from, int to, Rebuild pending) {
+            this.from = from;
+            this.to = to;
+            this.pending = pending;
+        }
+
+        @Override
+        protected RangeTotals compute() {
+            if ((long) to - from < rangeSize) {
+                return read(from, to, pending).totals.copy();
+            }
+            int middle = (int) (((long) from + to) / 2);
+            RangeTask lower = new RangeTask(from, middle, pending);
+            lower.fork();
+            RangeTotals totals = new RangeTask(middle + 1, to, pending).compute();
+            return totals.merge(lower.join());
+        }
+    }
+
+    /**
+     * Aggregates the confirmed orders of an ID range and records the read in the rebuild.
+     */
+    private RangeRead read(int from, int to, Rebuild pending) {
+        long start = sequence.get();
+        RangeTotals totals = new RangeTotals();
+        for (BookSales sales : orderRepository.sumCopiesByBook(OrderStatus.CONFIRMED, from, to)) {
+            totals.copiesByBook.put(sales.getBookId(), sales.getCopies());
+        }
+        for (DailyRevenue day : orderRepository.sumRevenueByDay(OrderStatus.CONFIRMED, from, to)) {
+            totals.days.put(day.getDate(), day);
+        }
+        RangeRead read = new RangeRead(from, to, start, sequence.get(), totals);
+        pending.ranges.put(from, read);
+        return read;
+    }
+
+    private static final class RangeTotals {
+
+        final Map<Integer, Long> copiesByBook = new HashMap<>();
+
+        /**
+         * By day, with the orders without {@link Order#getPlacedAt()} under null.
+         */
+        final Map<LocalDate, DailyRevenue> days = new HashMap<>();
+
+        RangeTotals merge(RangeTotals other) {
+            other.copiesByBook.forEach((bookId, copies) -> copiesByBook.merge(bookId, copies, Long::sum));
+            other.days.forEach((date, day) -> days.merge(date, day, (a, b) ->
+                    new DailyRevenue(date, a.getOrders() + b.getOrders(), a.getRevenue() + b.getRevenue())));
+            return this;
+        }
+
+        RangeTotals copy() {
+            return new RangeTotals().merge(this);
+        }
+
+        RangeTotals negate() {
+            RangeTotals negated = new RangeTotals();
+            copiesByBook.forEach((bookId, copies) -> negated.copiesByBook.put(bookId, -copies));
+            days.forEach((date, day) -> negated.days.put(date, new DailyRevenue(date, -day.getOrders(), -day.getRevenue())));
+            return negated;
+        }
+    }
+
+    private static final class Rebuild {
+
+        /**
+         * The last read of each range, by first ID.
+         */
+        final ConcurrentSkipListMap<Integer, RangeRead> ranges = new ConcurrentSkipListMap<>();
+
+        final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+
+        /**
+         * @return the last read of the range of the change's order, null if outside of the ranges read
+         */
+        RangeRead rangeOf(Change change) {
+            Map.Entry<Integer, RangeRead> range = ranges.floorEntry(change.order.getId());
+            return range == null || change.order.getId() > range.getValue().to ? null : range.getValue();
+        }
+
+        /**
+         * @return true if the change was reported after its range was read, or its order is outside
+         * of the ranges read, so the rebuilt figures don't reflect it
+         */
+        boolean missed(Change change) {
+            RangeRead range = rangeOf(change);
+            return range == null || change.sequence > range.end;
+        }
+
+        /**
+         * @return the ranges with changes reported while they were being read
+         */
+        List<RangeRead> unsettled() {
+            Map<Integer, RangeRead> unsettled = new HashMap<>();
+            for (Change change : changes) {
+                RangeRead range = rangeOf(change);
+                if (range != null && change.sequence > range.start && change.sequence <= range.end) {
+                    unsettled.put(range.from, range);
+                }
+            }
+            return new ArrayList<>(unsettled.values());
+        }
+    }
+
+    private static final class RangeRead {
+
+        final int from;
+
+        final int to;
+
+        /**
+         * The last change reported before the read started.
+         */
+        final long start;
+
+        /**
+         * The last change reported before the read ended.
+         */
+        final long end;
+
+        final RangeTotals totals;
+
+        RangeRead(int from, int to, long start, long end, RangeTotals totals) {
+            this.from = from;
+            this.to = to;
+            this.start = start;
+            this.end = end;
+            this.totals = totals;
+        }
+    }
+
+    private static final class Change {
+
+        final Order order;
+
+        final int sign;
+
+        /**
+         * The figures the change was applied to when reported.
+         */
+        final OrderAggregates target;
+
+        final long sequence;
+
+        Change(Order order, int sign, OrderAggregates target, long sequence) {
+            this.order = order;
+            this.sign = sign;
+            this.target = target;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves confirmed orders placed more than {@code orders.archive.age} ago, with their book details,
+ * from the {@code order} and {@code book_detail} tables to {@code archived_order} and
+ * {@code archived_book_detail}, so the tables and indexes orders are placed, searched and paged in
+ * only hold the recent orders.
+ * <p>
+ * Every {@code orders.archive.interval} the orders due are moved {@code batch-size} at a time, each
+ * batch in its own transaction of four set-based statements, pausing {@code batch-delay} between
+ * batches and stopping after {@code max-batches}, so a large backlog is worked off over several runs
+ * without holding locks or starving placements. Pending and rejected orders, and orders confirmed
+ * before {@link Order#getPlacedAt()} was recorded, are never archived.
+ * <p>
+ * Archived orders keep their summary, so {@code GET /orders} and {@code GET /orders/{id}} are
+ * unchanged; {@link OrderService#getOrderById(int)} and {@link OrderService#getOrderStatus(int)} fall
+ * through to {@link #find(int)}, and the analytics queries read both tables. The searches and exports
+ * only cover the orders not archived, and archived orders cannot be deleted: deleting one is a
+ * conflict, see {@link #findArchivedIds(Collection)}, rather than an order not found.
+ * <p>
+ * Archived orders are counted as {@code orders.archived}, batches timed as {@code orders.archive.batch},
+ * and the orders due at the start of a run and not yet moved published as the
+ * {@code orders.archive.backlog} gauge.
+ */
+@Component
+@Slf4j
+public class OrderArchive {
+
+    private static final String SELECT_DUE = "select \"id\" from \"order\""
+            + " where \"placed_at\" < :cutoff and \"status\" = :status"
+            + " order by \"placed_at\", \"id\" limit :limit for update";
+
+    private static final String COUNT_DUE = "select count(*) from \"order\""
+            + " where \"placed_at\" < :cutoff and \"status\" = :status";
+
+    private static final String ARCHIVE_ORDERS = "insert into \"archived_order\" (\"id\", \"address\", \"customer_name\","
+            + " \"total_amount\", \"status\", \"rejection_reason\", \"placed_at\", \"archived_at\")"
+            + " select \"id\", \"address\", \"customer_name\", \"total_amount\", \"status\", \"rejection_reason\","
+            + " \"placed_at\", :now from \"order\" where \"id\" in (:ids)";
+
+    private static final String ARCHIVE_BOOK_DETAILS = "insert into \"archived_book_detail\" (\"fid\", \"book_id\","
+            + " \"ordered_quantity\", \"order_id\")"
+            + " select \"fid\", \"book_id\", \"ordered_quantity\", \"order_id\" from \"book_detail\" where \"order_id\" in (:ids)";
+
+    private static final String DELETE_BOOK_DETAILS = "delete from \"book_detail\" where \"order_id\" in (:ids)";
+
+    private static final String DELETE_ORDERS = "delete from \"order\" where \"id\" in (:ids)";
+
+    private static final String SELECT_ORDER = "select \"id\", \"customer_name\", \"address\", \"total_amount\","
+            + " \"status\", \"rejection_reason\", \"placed_at\" from \"archived_order\" where \"id\" = :id";
+
+    private static final String SELECT_ARCHIVED_IDS = "select \"id\" from \"archived_order\" where \"id\" in (:ids)";
+
+    private static final String SELECT_BOOK_DETAILS = "select \"fid\", \"book_id\", \"ordered_quantity\""
+            + " from \"archived_book_detail\" where \"order_id\" = :id order by \"fid\"";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+
+    private final Duration age;
+
+    private final int batchSize;
+
+    private final Duration batchDelay;
+
+    private final int maxBatches;
+
+    private final Counter archived;
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    public OrderArchive(DataSource dataSource,
+                        TransactionTemplate transactionTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${orders.archive.enabled:false}") boolean enabled,
+                        @Value("${orders.archive.age:P365D}") Duration age,
+                        @Value("${orders.archive.batch-size:500}") int batchSize,
+                        @Value("${orders.archive.batch-delay:100ms}") Duration batchDelay,
+                        @Value("${orders.archive.max-batches:1000}") int maxBatches) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.age = age;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.maxBatches = maxBatches;
+        this.archived = Counter.builder("orders.archived")
+                .description("Orders moved to the archive")
+                .register(meterRegistry);
+        Gauge.builder("orders.archive.backlog", backlog, AtomicLong::get)
+                .description("Orders due for archiving and not yet moved")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads an archived order together with its book details.
+     *
+     * @param id the ID of the order
+     * @return the order, or null if it is not archived
+     */
+    public Order find(int id) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("id", id);
+        List<Order> orders = jdbcTemplate.query(SELECT_ORDER, parameters, (row, rowNum) -> {
+            Timestamp placedAt = row.getTimestamp("placed_at");
+            return Order.builder()
+                    .id(row.getInt("id"))
+                    .customerName(row.getString("customer_name"))
+                    .address(row.getString("address"))
+                    .totalAmount(row.getDouble("total_amount"))
+                    .status(OrderStatus.valueOf(row.getString("status")))
+                    .rejectionReason(row.getString("rejection_reason"))
+                    .placedAt(placedAt != null ? placedAt.toInstant() : null)
+                    .build();
+        });
+        if (orders.isEmpty()) {
+            return null;
+        }
+        Order order = orders.get(0);
+        order.setBookDetails(jdbcTemplate.query(SELECT_BOOK_DETAILS, parameters, (row, rowNum) ->
+                new BookDetail(row.getInt("fid"), row.getInt("book_id"), row.getInt("ordered_quantity"))));
+        return order;
+    }
+
+    /**
+     * @param ids the IDs of orders not found in the {@code order} table
+     * @return those of the IDs that are archived
+     */
+    public Set<Integer> findArchivedIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(SELECT_ARCHIVED_IDS, new MapSqlParameterSource("ids", ids), Integer.class));
+    }
+
+    /**
+     * Moves up to {@code limit} of the confirmed orders placed before a time to the archive, oldest
+     * first, in one transaction.
+     *
+     * @param cutoff the time the orders were placed before
+     * @param limit the maximum number of orders to move
+     * @return the number of orders moved
+     */
+    public int archiveBatch(Instant cutoff, int limit) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Integer moved = transactionTemplate.execute(status -> {
+            List<Integer> ids = jdbcTemplate.queryForList(SELECT_DUE, due(cutoff).addValue("limit", limit), Integer.class);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource("ids", ids)
+                    .addValue("now", Timestamp.from(Instant.now()));
+            jdbcTemplate.update(ARCHIVE_ORDERS, parameters);
+            jdbcTemplate.update(ARCHIVE_BOOK_DETAILS, parameters);
+            jdbcTemplate.update(DELETE_BOOK_DETAILS, parameters);
+            return jdbcTemplate.update(DELETE_ORDERS, parameters);
+        });
+        sample.stop(meterRegistry.timer("orders.archive.batch"));
+        int count = moved != null ? moved : 0;
+        archived.increment(count);
+        return count;
+    }
+
+    /**
+     * Moves the orders due to the archive in throttled batches, see the class documentation.
+     */
+    @Scheduled(fixedDelayString = "${orders.archive.interval:PT1H}")
+    public void archiveOldOrders() {
+        if (!enabled) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(age);
+        try {
+            backlog.set(jdbcTemplate.queryForObject(COUNT_DUE, due(cutoff), Long.class));
+            long total = 0;
+            for (int batch = 0; batch < maxBatches && backlog.get() > 0; batch++) {
+                if (batch > 0) {
+                    Thread.sleep(batchDelay.toMillis());
+                }
+                int moved = archiveBatch(cutoff, batchSize);
+                total += moved;
+                backlog.addAndGet(-moved);
+                if (moved < batchSize) {
+                    backlog.set(0);
+                }
+            }
+            if (total > 0) {
+                log.info("Archived {} orders placed before {}, {} left", total, cutoff, backlog.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Failed to archive orders: {}", e.getMessage());
+        }
+    }
+
+    private static MapSqlParameterSource due(Instant cutoff) {
+        return new MapSqlParameterSource("cutoff", Timestamp.from(cutoff))
+                .addValue("status", OrderStatus.CONFIRMED.name());
+    }
+}
@@ -0,0 +1,60 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.models.SerializedOrder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.IntFunction;
+
+/**
+ * Bounded read-through cache of serialized orders by ID, in front of {@code GET /orders/{id}}.
+ * Concurrent misses for the same ID wait for a single load. Orders that don't exist are not cached.
+ * Writers must call {@link #invalidate(int)} after their transaction committed; an invalidation
+ * waits for a load of the same ID in progress, so a stale load cannot outlive it. Hits and misses
+ * are published as {@code cache.*} with the tag {@code cache=orders}.
+ */
+@Component
+public class OrderCache {
+
+    private final Cache<Integer, SerializedOrder> orders;
+
+    public OrderCache(MeterRegistry meterRegistry,
+                      @Value("${orders.cache.max-size:10000}") long maxSize,
+                      @Value("${orders.cache.ttl:10m}") Duration ttl) {
+        this.orders = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, orders, "orders");
+    }
+
+    /**
+     * Returns the cached order, loading it and computing its entity tag on a miss.
+     *
+     * @param id the ID of the order
+     * @param loader loads the order as JSON, returns null if it does not exist
+     * @return the serialized order, or null if it does not exist
+     */
+    public SerializedOrder get(int id, IntFunction<byte[]> loader) {
+        return orders.get(id, key -> {
+            byte[] json = loader.apply(key);
+            return json != null ? new SerializedOrder(json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"") : null;
+        });
+    }
+
+    public void invalidate(int id) {
+        orders.invalidate(id);
+    }
+
+    public void invalidateAll(Collection<Integer> ids) {
+        orders.invalidateAll(ids);
+    }
+}
@@ -0,0 +1,390 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.models.ExportFormat;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk export of the orders and their book details as gzip compressed NDJSON or CSV, for the data
+ * team. The rows are read by one forward-only JDBC query, {@value #FETCH_SIZE} rows per round trip,
+ * and written as they arrive without building entities, so memory stays flat whatever the size of
+ * the table; H2 keeps a result larger than its {@code MAX_MEMORY_ROWS} in a temporary file rather
+ * than the heap.
+ * <p>
+ * Exports are written to a channel: the response of {@code GET /orders/export}, or a file under
+ * {@code orders.export.dir}. Every {@code orders.export.cron} the orders confirmed since the previous
+ * run are exported to a new file. Runs follow {@code placed_at} rather than IDs: IDs come from pooled
+ * sequences, so an order can commit after orders with higher IDs were exported. Each run stops at the
+ * orders placed {@code orders.export.commit-lag} ago, so a transaction that committed late is picked
+ * up by the next run, and where it stopped is kept in {@value #WATERMARK_FILE} next to the files.
+ * Exports are timed as {@code orders.export}, and the orders written counted as {@code orders.exported}.
+ */
+@Component
+@Slf4j
+public class OrderExporter {
+
+    static final int FETCH_SIZE = 1000;
+
+    static final String WATERMARK_FILE = "placed-until";
+
+    private static final DateTimeFormatter FILE_NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SELECT_ORDERS = "select o.\"id\", o.\"customer_name\", o.\"address\", o.\"total_amount\","
+            + " o.\"status\", o.\"rejection_reason\", o.\"placed_at\", d.\"fid\", d.\"book_id\", d.\"ordered_quantity\""
+            + " from \"order\" o left join \"book_detail\" d on d.\"order_id\" = o.\"id\""
+            + " where o.\"id\" > ?";
+
+    private static final String PLACED_AFTER = " and o.\"placed_at\" > ?";
+
+    private static final String PLACED_UNTIL = " and o.\"placed_at\" <= ?";
+
+    private static final String ORDER_BY = " order by o.\"id\", d.\"fid\"";
+
+    private static final String[] CSV_HEADER = {"id", "customer_name", "address", "total_amount", "status",
+            "rejection_reason", "placed_at", "book_detail_id", "book_id", "ordered_quantity"};
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final JsonFactory jsonFactory;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter exported;
+
+    private final Path directory;
+
+    private final ExportFormat scheduledFormat;
+
+    private final Duration commitLag;
+
+    public OrderExporter(DataSource dataSource,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${orders.export.dir:./export}") String directory,
+                         @Value("${orders.export.format:ndjson}") String scheduledFormat,
+                         @Value("${orders.export.commit-lag:PT5M}") Duration commitLag) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.jsonFactory = objectMapper.getFactory();
+        this.meterRegistry = meterRegistry;
+        this.directory = Paths.get(directory);
+        this.scheduledFormat = ExportFormat.of(scheduledFormat);
+        if (this.scheduledFormat == null) {
+            throw new IllegalArgumentException("Unknown export format: " + scheduledFormat);
+        }
+        this.commitLag = commitLag;
+        this.exported = Counter.builder("orders.exported")
+                .description("Orders written by exports")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Writes the orders with an ID greater than {@code after}, optionally only those placed in a time
+     * range, in ascending ID order. The channel is left open.
+     *
+     * @param format the file format
+     * @param after the ID to start after, 0 for all orders
+     * @param placedAfter only export the orders placed after this time, null for all orders
+     * @param placedUntil only export the orders placed up to this time, null for all orders
+     * @param channel the channel to write the compressed export to
+     * @return the ID of the last order written, {@code after} if there was none
+     * @throws IOException if writing to the channel fails
+     */
+    public int export(ExportFormat format, int after, Instant placedAfter, Instant placedUntil,
+                      WritableByteChannel channel) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        OutputStream out = new BufferedOutputStream(
+                new GZIPOutputStream(new UnclosedOutputStream(Channels.newOutputStream(channel)), BUFFER_SIZE), BUFFER_SIZE);
+        RowWriter writer = format == ExportFormat.NDJSON ? new NdjsonWriter(jsonFactory, out) : new CsvWriter(out);
+        int[] lastId = {after};
+        int orders = 0;
+        try {
+            writer.start();
+            StringBuilder sql = new StringBuilder(SELECT_ORDERS);
+            List<Object> args = new ArrayList<>(3);
+            args.add(after);
+            if (placedAfter != null) {
+                sql.append(PLACED_AFTER);
+                args.add(Timestamp.from(placedAfter));
+            }
+            if (placedUntil != null) {
+                sql.append(PLACED_UNTIL);
+                args.add(Timestamp.from(placedUntil));
+            }
+            sql.append(ORDER_BY);
+            int[] count = {0};
+            jdbcTemplate.query(sql.toString(), resultSet -> {
+                int id = resultSet.getInt(1);
+                boolean newOrder = count[0] == 0 || id != lastId[0];
+                if (newOrder) {
+                    count[0]++;
+                    lastId[0] = id;
+                }
+                try {
+                    writer.write(resultSet, newOrder);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, args.toArray());
+            orders = count[0];
+            writer.finish();
+            // only closed once complete, so that a failed export is not a valid gzip stream
+            out.close();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            exported.increment(orders);
+            sample.stop(meterRegistry.timer("orders.export", "format", format.name().toLowerCase()));
+        }
+        log.info("Exported {} orders after ID {} as {}", orders, after, format);
+        return lastId[0];
+    }
+
+    /**
+     * Exports the orders placed in a time range to a new file under {@code orders.export.dir}, named
+     * after the range, e.g. {@code orders-20260301T000000Z-20260302T000000Z.ndjson.gz}. The file only
+     * appears once complete, and is not created if there are no orders to export.
+     *
+     * @param placedAfter the time the orders were placed after
+     * @param placedUntil the time the orders were placed up to, inclusive
+     * @return the file, or null if there were no orders to export
+     * @throws IOException if writing the file fails
+     * @see #export(ExportFormat, int, Instant, Instant, WritableByteChannel)
+     */
+    public Path exportToFile(ExportFormat format, Instant placedAfter, Instant placedUntil) throws IOException {
+        Files.createDirectories(directory);
+        Path partial = Files.createTempFile(directory, "orders-", ".partial");
+        try {
+            int lastId;
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                lastId = export(format, 0, placedAfter, placedUntil, channel);
+                channel.force(false);
+            }
+            if (lastId == 0) {
+                return null;
+            }
+            Path file = directory.resolve("orders-" + FILE_NAME_TIME.format(placedAfter) + "-"
+                    + FILE_NAME_TIME.format(placedUntil) + "." + format.getFileExtension());
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Exported orders placed after {} until {} to {}", placedAfter, placedUntil, file);
+            return file;
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    /**
+     * Exports the orders confirmed since the previous run, up to {@code commit-lag} ago, to a new
+     * file. Pending and rejected orders are not exported, and orders cancelled after they were
+     * exported stay in their file.
+     */
+    @Scheduled(cron = "${orders.export.cron:-}")
+    public void exportNewOrders() {
+        try {
+            Path state = directory.resolve(WATERMARK_FILE);
+            Instant placedAfter = Files.exists(state) ? Instant.parse(Files.readString(state).trim()) : Instant.EPOCH;
+            Instant placedUntil = Instant.now().minus(commitLag);
+            if (!placedUntil.isAfter(placedAfter)) {
+                return;
+            }
+            exportToFile(scheduledFormat, placedAfter, placedUntil);
+            Path partial = Files.createTempFile(directory, WATERMARK_FILE, ".partial");
+            Files.writeString(partial, placedUntil.toString());
+            Files.move(partial, state, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to export orders: {}", e.getMessage());
+        }
+    }
+
+    private interface RowWriter {
+
+        void start() throws IOException;
+
+        /**
+         * Writes a row of the query, the first one of an order if {@code newOrder}.
+         */
+        void write(ResultSet row, boolean newOrder) throws IOException, SQLException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * One line per order, in the JSON shape of {@code Order}.
+     */
+    private static final class NdjsonWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonWriter(JsonFactory jsonFactory, OutputStream out) throws IOException {
+            this.generator = jsonFactory.createGenerator(out);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void write(ResultSet row, boolean newOrder) throws IOException, SQLException {
+            if (newOrder) {
+                endOrder();
+                generator.writeStartObject();
+                generator.writeNumberField("id", row.getInt(1));
+                generator.writeStringField("customerName", row.getString(2));
+                generator.writeStringField("address", row.getString(3));
+                generator.writeNumberField("totalAmount", row.getDouble(4));
+                generator.writeStringField("status", row.getString(5));
+                generator.writeStringField("rejectionReason", row.getString(6));
+                Timestamp placedAt = row.getTimestamp(7);
+                generator.writeStringField("placedAt", placedAt != null ? placedAt.toInstant().toString() : null);
+                generator.writeArrayFieldStart("bookDetails");
+            }
+            int fid = row.getInt(8);
+            if (!row.wasNull()) {
+                generator.writeStartObject();
+                generator.writeNumberField("fid", fid);
+                generator.writeNumberField("bookId", row.getInt(9));
+                generator.writeNumberField("orderedQuantity", row.getInt(10));
+                generator.writeEndObject();
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            endOrder();
+            generator.close();
+        }
+
+        private void endOrder() throws IOException {
+            if (generator.getOutputContext().inArray()) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    /**
+     * One line per book detail, and one with empty book detail columns for an order without any.
+     */
+    private static final class CsvWriter implements RowWriter {
+
+        private final OutputStream out;
+
+        private final StringBuilder line = new StringBuilder(256);
+
+        CsvWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void start() throws IOException {
+            for (String column : CSV_HEADER) {
+                append(column);
+            }
+            endLine();
+        }
+
+        @Override
+        public void write(ResultSet row, boolean newOrder) throws IOException, SQLException {
+            append(Integer.toString(row.getInt(1)));
+            append(row.getString(2));
+            append(row.getString(3));
+            append(Double.toString(row.getDouble(4)));
+            append(row.getString(5));
+            append(row.getString(6));
+            Timestamp placedAt = row.getTimestamp(7);
+            append(placedAt != null ? placedAt.toInstant().toString() : null);
+            append(row.getString(8));
+            append(row.getString(9));
+            append(row.getString(10));
+            endLine();
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        /**
+         * Appends a field, quoted if it contains a separator, quote or line break.
+         */
+        private void append(String value) {
+            if (line.length() > 0) {
+                line.append(',');
+            }
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                line.append(value);
+                return;
+            }
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+
+        private void endLine() throws IOException {
+            line.append("\r\n");
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            line.setLength(0);
+        }
+    }
+
+    /**
+     * Keeps the gzip stream from closing the caller's channel.
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+
+        UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.bookstore.ordermanagement.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Order level meters. Endpoint, book-service and repository latencies are recorded by Spring Boot
+ * as {@code http.server.requests}, {@code http.client.requests} and
+ * {@code spring.data.repository.invocations}.
+ */
+@Component
+public class OrderMetrics {
+
+    private final Counter placed;
+
+    private final Counter failed;
+
+    private final Counter cancelled;
+
+    private final Counter accepted;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OrderMetrics(MeterRegistry meterRegistry) {
+        placed = Counter.builder("orders.placed")
+                .description("Orders placed")
+                .register(meterRegistry);
+        failed = Counter.builder("orders.failed")
+                .description("Orders that could not be placed")
+                .register(meterRegistry);
+        cancelled = Counter.builder("orders.cancelled")
+                .description("Orders cancelled")
+                .register(meterRegistry);
+        accepted = Counter.builder("orders.accepted")
+                .description("Orders accepted for background placement")
+                .register(meterRegistry);
+        Gauge.builder("orders.in.flight", inFlight, AtomicInteger::get)
+                .description("Orders being placed")
+                .register(meterRegistry);
+    }
+
+    public void placementStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void placementFinished(boolean success) {
+        inFlight.decrementAndGet();
+        (success ? placed : failed).increment();
+    }
+
+    public void ordersPlaced(int placedCount, int failedCount) {
+        placed.increment(placedCount);
+        failed.increment(failedCount);
+    }
+
+    public void orderAccepted() {
+        accepted.increment();
+    }
+
+    public void orderCancelled() {
+        cancelled.increment();
+    }
+}
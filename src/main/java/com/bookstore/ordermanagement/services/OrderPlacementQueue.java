@@ -0,0 +1,93 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded worker pool placing the orders accepted for background placement.
+ * <p>
+ * Accepted orders are saved {@link OrderStatus#PENDING} before they are submitted, so the order table
+ * is the durable queue and this pool only holds the IDs being worked on. At most {@code capacity}
+ * orders wait for one of the {@code workers}; beyond that {@link #submit} rejects them and
+ * {@code POST /orders} answers 503, so clients back off instead of the backlog growing without bound.
+ * An order is queued at most once at a time, so {@link OrderService#resumePendingOrders()} can
+ * resubmit every pending order without placing one twice.
+ */
+@Component
+@Slf4j
+public class OrderPlacementQueue {
+
+    private final ThreadPoolExecutor executor;
+
+    private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+
+    public OrderPlacementQueue(MeterRegistry meterRegistry,
+                               @Value("${orders.placement.queue.workers:8}") int workers,
+                               @Value("${orders.placement.queue.capacity:1000}") int capacity) {
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), new CustomizableThreadFactory("order-placement-"));
+        Gauge.builder("orders.placement.queued", queued, Set::size)
+                .description("Accepted orders waiting for or being placed by a worker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the placement of an order, unless it is queued already.
+     *
+     * @param orderId the ID of the pending order
+     * @param placement places the order
+     * @return true if queued, false if the order is already queued or being placed
+     * @throws RejectedExecutionException if the queue is full or shut down
+     */
+    public boolean submit(int orderId, Runnable placement) {
+        if (!queued.add(orderId)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    placement.run();
+                } catch (RuntimeException e) {
+                    log.error("Failed to place pending order {}: {}", orderId, e.getMessage());
+                } finally {
+                    queued.remove(orderId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.remove(orderId);
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if another order can be queued right now
+     */
+    public boolean hasCapacity() {
+        return !executor.isShutdown() && executor.getQueue().remainingCapacity() > 0;
+    }
+
+    /**
+     * Lets the placements in progress finish. Queued orders stay pending in the database and are
+     * resumed after the restart.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.getQueue().clear();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -3,31 +3,67 @@ package com.bookstore.ordermanagement.services;
 import com.bookstore.ordermanagement.dao.OrderRepository;
 import com.bookstore.ordermanagement.entities.BookDetail;
 import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BatchItemResult;
+import com.bookstore.ordermanagement.models.BatchItemStatus;
 import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.BookReservation;
+import com.bookstore.ordermanagement.models.BookReservationResult;
+import com.bookstore.ordermanagement.models.OrderStatusResult;
 import com.bookstore.ordermanagement.models.OrderSummary;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.bookstore.ordermanagement.models.SerializedOrder;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 @Component
 public class OrderService {
 
+    private static final String BOOK_ORDER_URL = "http://book-service/books/order";
+
+    static final int PENDING_ORDERS_PAGE_SIZE = 100;
+
+
     @Autowired
     private OrderRepository orderRepository;
 
@@ -37,24 +73,154 @@ public class OrderService {
     @Autowired
     ObjectMapper objectMapper;
 
+    @Autowired(required = false)
+    private BookReservationBatcher reservationBatcher;
+
+    @Autowired(required = false)
+    private StockLedger stockLedger;
+
+    @Autowired
+    private BookReservationClient bookReservationClient;
+
+    @Autowired
+    private BookServiceGuard bookServiceGuard;
+
+    @Autowired
+    private OrderCache orderCache;
+
+    @Autowired
+    private OrderSummaryProjection orderSummaryProjection;
+
+    @Autowired
+    private BookCatalogue bookCatalogue;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private OrderMetrics orderMetrics;
+
+    @Autowired
+    private OrderAnalytics orderAnalytics;
+
+    @Autowired
+    private OrderArchive orderArchive;
+
+    @Autowired
+    private InventoryReturnOutbox inventoryReturnOutbox;
+
+    @Autowired
+    private OrderPlacementQueue orderPlacementQueue;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private WebClient webClient;
+
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private Executor taskExecutor;
+
+    @Value("${orders.placement.async:false}")
+    private boolean asyncPlacement;
+
     /**
-     * Retrieves all orders.
+     * Retrieves a page of order summaries from the {@link OrderSummaryProjection} using keyset pagination.
      *
-     * @return the list of orders
+     * @param after the ID of the last order of the previous page, 0 for the first page
+     * @param limit the maximum number of orders to return
+     * @return the summaries of the orders with an ID greater than {@code after}, in ascending ID order
      */
-    public List<Order> getAllOrders() {
-        return (List<Order>) orderRepository.findAll();
+    public List<OrderSummary> getOrders(int after, int limit) {
+        return orderSummaryProjection.getPage(after, limit);
     }
 
     /**
-     * Retrieves an order by its ID.
+     * Retrieves a page of the orders of a customer, see {@link #getOrders(int, int)}.
+     *
+     * @param customerName the exact customer name
+     * @param after the ID of the last order of the previous page, 0 for the first page
+     * @param limit the maximum number of orders to return
+     * @return the customer's orders with an ID greater than {@code after}, in ascending ID order
+     */
+    public List<Order> findOrdersByCustomer(String customerName, int after, int limit) {
+        return orderRepository.findByCustomerNameAndIdGreaterThanOrderByIdAsc(customerName, after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Retrieves a page of the orders containing a book, see {@link #getOrders(int, int)}.
+     *
+     * @param bookId the ID of the book
+     * @param after the ID of the last order of the previous page, 0 for the first page
+     * @param limit the maximum number of orders to return
+     * @return the orders containing the book with an ID greater than {@code after}, in ascending ID order
+     */
+    public List<Order> findOrdersByBook(int bookId, int after, int limit) {
+        return orderRepository.findByBookIdAndIdGreaterThan(bookId, after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Retrieves a page of the orders with a total amount in a range, ordered by total amount and ID.
+     *
+     * @param min the minimum total amount, inclusive
+     * @param max the maximum total amount, inclusive
+     * @param afterAmount the total amount of the last order of the previous page, null for the first page
+     * @param after the ID of the last order of the previous page, 0 for the first page
+     * @param limit the maximum number of orders to return
+     * @return the orders in the range following the given cursor
+     */
+    public List<Order> findOrdersByAmount(double min, double max, Double afterAmount, int after, int limit) {
+        if (afterAmount == null || afterAmount < min) {
+            return orderRepository.findByTotalAmountAfter(min, 0, max, PageRequest.of(0, limit));
+        }
+        return orderRepository.findByTotalAmountAfter(afterAmount, after, max, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Writes the summaries of all orders after the given ID as newline delimited JSON, the same
+     * summaries {@link #getOrders(int, int)} pages through, read from a database cursor over the
+     * {@link OrderSummaryProjection} so memory stays flat regardless of table size.
+     *
+     * @param after the ID to start after, 0 for all orders
+     * @param out the stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    @Transactional(readOnly = true)
+    public void streamOrders(int after, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try (Stream<OrderSummary> orderSummaries = orderSummaryProjection.stream(after)) {
+            Iterator<OrderSummary> iterator = orderSummaries.iterator();
+            while (iterator.hasNext()) {
+                generator.writeObject(iterator.next());
+                generator.writeRaw('\n');
+            }
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Retrieves an order by its ID, from the {@link OrderArchive} if it was archived.
      *
      * @param id the ID of the order to retrieve
      * @return the order if found, or null if not found
      */
     public Order getOrderById(int id) {
         Optional<Order> optionalOrder = orderRepository.findById(id);
-        return optionalOrder.orElse(null);
+        return optionalOrder.orElseGet(() -> orderArchive.find(id));
+    }
+
+    /**
+     * Retrieves the summary of an order by its ID as JSON, from the {@link OrderCache} if possible and
+     * from the {@link OrderSummaryProjection} otherwise.
+     *
+     * @param id the ID of the order to retrieve
+     * @return the serialized order summary if found, or null if not found
+     */
+    public SerializedOrder getSerializedOrder(int id) {
+        return orderCache.get(id, orderSummaryProjection::getJson);
     }
 
     /**
@@ -62,84 +228,674 @@ public class OrderService {
      *
      * @param order the order to create
      * @return the created order
-     * @throws IllegalArgumentException if any book in the order is not in stock
+     * @throws IllegalArgumentException if any book in the order is not in stock, checked against the
+     * {@link BookCatalogue} first
+     */
+    public OrderSummary placeOrder(Order order) throws IllegalArgumentException {
+        return placeOrder(order, null);
+    }
+
+    private OrderSummary placeOrder(Order order, IdempotentRequest request) throws IllegalArgumentException {
+        bookCatalogue.validate(order.getBookDetails());
+        List<Book> books = reserveBooks(order.getBookDetails());
+        return saveOrder(order, books, request);
+    }
+
+    /**
+     * Creates a new order without blocking the caller. When {@code orders.placement.async} is enabled,
+     * the books are reserved through the non-blocking {@link WebClient} and the order is saved on the
+     * application task executor; otherwise this runs {@link #placeOrder(Order)} on the calling thread.
+     *
+     * @param order the order to create
+     * @return a future completed with the created order, or with an {@link IllegalArgumentException}
+     * if any book in the order is not in stock
+     */
+    public CompletableFuture<OrderSummary> placeOrderAsync(Order order) {
+        return placeOrderAsync(order, (IdempotentRequest) null);
+    }
+
+    private CompletableFuture<OrderSummary> placeOrderAsync(Order order, IdempotentRequest request) {
+        orderMetrics.placementStarted();
+        CompletableFuture<OrderSummary> placement;
+        if (!asyncPlacement) {
+            try {
+                placement = CompletableFuture.completedFuture(placeOrder(order, request));
+            } catch (Exception e) {
+                placement = CompletableFuture.failedFuture(e);
+            }
+        } else {
+            try {
+                bookCatalogue.validate(order.getBookDetails());
+                placement = reserveBooksAsync(order.getBookDetails())
+                        .thenApplyAsync(books -> saveOrder(order, books, request), taskExecutor);
+            } catch (RuntimeException e) {
+                placement = CompletableFuture.failedFuture(e);
+            }
+        }
+        return placement.whenComplete((orderSummary, e) -> orderMetrics.placementFinished(e == null));
+    }
+
+    /**
+     * Creates a new order at most once per client and idempotency key, see {@link IdempotencyStore}.
+     *
+     * @param order the order to create
+     * @param clientId the client sending the order
+     * @param idempotencyKey the client supplied key, or null to always place the order
+     * @return a future completed with the created order, with the order created for an earlier
+     * request with the same key, or with an {@link IdempotencyKeyReusedException} if that request
+     * was for a different order
+     */
+    public CompletableFuture<OrderSummary> placeOrderAsync(Order order, String clientId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return placeOrderAsync(order);
+        }
+        IdempotentRequest request = idempotencyStore.request(clientId, idempotencyKey, order);
+        return idempotencyStore.execute(request, () -> placeOrderAsync(order, request));
+    }
+
+    /**
+     * Accepts an order for placement in the background. The order is checked against the
+     * {@link BookCatalogue}, saved {@link OrderStatus#PENDING} and queued in the
+     * {@link OrderPlacementQueue}, whose workers place it with {@link #placePendingOrder(int)}.
+     * Poll {@link #getOrderStatus(int)} for the outcome.
+     *
+     * @param order the order to accept
+     * @return the pending order, without total amount and books
+     * @throws IllegalArgumentException if any book in the order is not in stock according to the
+     * {@link BookCatalogue}
+     * @throws RejectedExecutionException if the placement queue is full
+     */
+    public OrderSummary acceptOrder(Order order) throws IllegalArgumentException, RejectedExecutionException {
+        return acceptOrder(order, null);
+    }
+
+    private OrderSummary acceptOrder(Order order, IdempotentRequest request) throws IllegalArgumentException, RejectedExecutionException {
+        bookCatalogue.validate(order.getBookDetails());
+        if (!orderPlacementQueue.hasCapacity()) {
+            throw new RejectedExecutionException("Order placement queue is full");
+        }
+
+        order.setStatus(OrderStatus.PENDING);
+        order.setRejectionReason(null);
+        order.setTotalAmount(0);
+        OrderSummary orderSummary = transactionTemplate.execute(status -> {
+            OrderSummary pendingOrder = summarize(orderRepository.save(order), null);
+            orderSummaryProjection.put(pendingOrder);
+            if (request != null) {
+                idempotencyStore.record(request, pendingOrder);
+            }
+            return pendingOrder;
+        });
+        int id = Objects.requireNonNull(orderSummary).getId();
+        orderCache.invalidate(id);
+        orderMetrics.orderAccepted();
+        try {
+            orderPlacementQueue.submit(id, () -> placePendingOrder(id));
+        } catch (RejectedExecutionException e) {
+            // saved already, so it is picked up by resumePendingOrders
+            log.warn("Order {} accepted while placement queue is full", id);
+        }
+
+        return orderSummary;
+    }
+
+    /**
+     * Accepts an order for placement in the background at most once per client and idempotency key,
+     * see {@link #acceptOrder(Order)} and {@link IdempotencyStore}.
+     *
+     * @param order the order to accept
+     * @param clientId the client sending the order
+     * @param idempotencyKey the client supplied key, or null to always accept the order
+     * @return a future completed with the pending order, with the order accepted or created for an
+     * earlier request with the same key, or with an {@link IdempotencyKeyReusedException} if that
+     * request was for a different order
+     */
+    public CompletableFuture<OrderSummary> acceptOrderAsync(Order order, String clientId, String idempotencyKey) {
+        IdempotentRequest request = idempotencyKey != null ? idempotencyStore.request(clientId, idempotencyKey, order) : null;
+        Supplier<CompletableFuture<OrderSummary>> acceptance = () -> {
+            try {
+                return CompletableFuture.completedFuture(acceptOrder(order, request));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+        if (request == null) {
+            return acceptance.get();
+        }
+        return idempotencyStore.execute(request, acceptance);
+    }
+
+    /**
+     * Places an order accepted by {@link #acceptOrder(Order)}: reserves its books and saves it
+     * {@link OrderStatus#CONFIRMED} with its total amount, or {@link OrderStatus#REJECTED} if the book
+     * service refuses the books with a client error. If the book service cannot be reached or fails
+     * with a server error, or the order cannot be saved, the order stays pending and is tried again by
+     * {@link #resumePendingOrders()}.
+     * <p>
+     * The outcome is only written while the order is still pending, see
+     * {@link OrderRepository#completePendingOrder(Order)}; if it no longer is, the reserved books are
+     * returned.
+     *
+     * @param id the ID of the pending order
+     */
+    void placePendingOrder(int id) {
+        Order order = getOrderById(id);
+        if (order == null || order.getStatus() != OrderStatus.PENDING) {
+            return;
+        }
+
+        orderMetrics.placementStarted();
+        boolean confirmed = false;
+        try {
+            List<Book> books;
+            try {
+                books = reserveBooks(order.getBookDetails());
+            } catch (IllegalArgumentException e) {
+                log.info("Order {} rejected: {}", id, e.getMessage());
+                order.setStatus(OrderStatus.REJECTED);
+                order.setRejectionReason(rejectionReason(e));
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (orderRepository.completePendingOrder(order) > 0) {
+                        orderSummaryProjection.put(summarize(order, null));
+                    }
+                });
+                orderCache.invalidate(id);
+                return;
+            }
+
+            try {
+                confirmed = confirmPendingOrder(order, books);
+                if (!confirmed) {
+                    log.warn("Order {} is no longer pending, returning its books", id);
+                    returnBooks(order);
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to confirm order {}, returning its books: {}", id, e.getMessage());
+                returnBooks(order);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Order {} stays pending: {}", id, e.getMessage());
+        } finally {
+            orderMetrics.placementFinished(confirmed);
+        }
+    }
+
+    /**
+     * Saves a pending order {@link OrderStatus#CONFIRMED} with the books reserved for it, like
+     * {@link #saveOrder(Order, List, IdempotentRequest)} does for a new order, unless it is no longer pending.
+     *
+     * @return true if the order is confirmed, false if it is no longer pending
+     */
+    private boolean confirmPendingOrder(Order order, List<Book> books) {
+        bookCatalogue.putAll(books);
+
+        List<Book> pricedBooks = new ArrayList<>(books.size());
+        double totalAmount = priceBooks(OrderedQuantities.of(order.getBookDetails()), books, pricedBooks);
+
+        order.setTotalAmount(totalAmount);
+        order.setStatus(OrderStatus.CONFIRMED);
+        order.setRejectionReason(null);
+        order.setPlacedAt(Instant.now());
+        Boolean updated = transactionTemplate.execute(status -> {
+            if (orderRepository.completePendingOrder(order) == 0) {
+                return false;
+            }
+            orderSummaryProjection.put(summarize(order, pricedBooks));
+            return true;
+        });
+        orderCache.invalidate(order.getId());
+        if (!Boolean.TRUE.equals(updated)) {
+            return false;
+        }
+        log.info("Order executed successfully");
+        orderAnalytics.orderPlaced(order);
+        return true;
+    }
+
+    /**
+     * Gives back the books reserved for an order that is not saved: to the {@link StockLedger} if it
+     * is enabled, otherwise through the {@link InventoryReturnOutbox}.
+     */
+    private void returnBooks(Order order) {
+        if (stockLedger != null) {
+            stockLedger.release(order.getBookDetails());
+        } else {
+            transactionTemplate.executeWithoutResult(status -> inventoryReturnOutbox.enqueue(order));
+        }
+    }
+
+    /**
+     * Gives back the books reserved for several orders that are not saved, see {@link #returnBooks(Order)}.
      */
-    public OrderSummary placeOrder(Order order) throws IllegalArgumentException, IOException {
+    private void returnBooks(List<Order> orders) {
+        if (stockLedger != null) {
+            orders.forEach(order -> stockLedger.release(order.getBookDetails()));
+        } else {
+            transactionTemplate.executeWithoutResult(status -> inventoryReturnOutbox.enqueueAll(orders));
+        }
+    }
+
+    private static String rejectionReason(IllegalArgumentException e) {
+        String reason = e.getMessage() != null ? e.getMessage() : "Books could not be reserved";
+        return reason.length() > Order.MAX_REJECTION_REASON_LENGTH
+                ? reason.substring(0, Order.MAX_REJECTION_REASON_LENGTH) : reason;
+    }
 
-        List<BookDetail> orderedBooks = order.getBookDetails();
+    /**
+     * Queues the pending orders that are not queued already, oldest first, until the
+     * {@link OrderPlacementQueue} is full. Picks up the orders accepted before a restart or while the
+     * queue was full, and retries those whose books could not be reserved.
+     */
+    @Scheduled(fixedDelayString = "${orders.placement.queue.resume-interval:PT1M}")
+    public void resumePendingOrders() {
+        int after = 0;
+        List<Integer> ids;
+        do {
+            ids = orderRepository.findIdsByStatus(OrderStatus.PENDING, after, PageRequest.of(0, PENDING_ORDERS_PAGE_SIZE));
+            for (int id : ids) {
+                if (!orderPlacementQueue.hasCapacity()) {
+                    return;
+                }
+                try {
+                    orderPlacementQueue.submit(id, () -> placePendingOrder(id));
+                } catch (RejectedExecutionException e) {
+                    return;
+                }
+                after = id;
+            }
+        } while (ids.size() == PENDING_ORDERS_PAGE_SIZE);
+    }
+
+    /**
+     * Retrieves the placement status of an order, from the {@link OrderArchive} if it was archived.
+     *
+     * @param id the ID of the order
+     * @return the status if found, or null if not found
+     */
+    public OrderStatusResult getOrderStatus(int id) {
+        return orderRepository.findStatusById(id).orElseGet(() -> {
+            Order archived = orderArchive.find(id);
+            return archived != null ? OrderStatusResult.builder().orderId(id).status(archived.getStatus()).build() : null;
+        });
+    }
+
+    /**
+     * Saves a new order {@link OrderStatus#CONFIRMED} with the books reserved for it, and records its
+     * idempotent request in the same transaction. If the transaction fails, e.g. because another
+     * instance recorded the same key first, the books are returned.
+     */
+    private OrderSummary saveOrder(Order order, List<Book> books, IdempotentRequest request) {
+        bookCatalogue.putAll(books);
+
+        List<Book> pricedBooks = new ArrayList<>(books.size());
+        double totalAmount = priceBooks(OrderedQuantities.of(order.getBookDetails()), books, pricedBooks);
+
+        order.setTotalAmount(totalAmount);
+        order.setStatus(OrderStatus.CONFIRMED);
+        order.setRejectionReason(null);
+        order.setPlacedAt(Instant.now());
+        log.info("Order executed successfully");
+        OrderSummary orderSummary;
+        try {
+            orderSummary = transactionTemplate.execute(status -> {
+                OrderSummary savedOrder = summarize(orderRepository.save(order), pricedBooks);
+                orderSummaryProjection.put(savedOrder);
+                if (request != null) {
+                    idempotencyStore.record(request, savedOrder);
+                }
+                return savedOrder;
+            });
+        } catch (RuntimeException e) {
+            returnBooks(order);
+            throw e;
+        }
+        orderCache.invalidate(Objects.requireNonNull(orderSummary).getId());
+        orderAnalytics.orderPlaced(order);
+        return orderSummary;
+    }
+
+    /**
+     * @param pricedBooks the priced books of a confirmed order, null while not known
+     * @return the summary of a saved order, as stored in the {@link OrderSummaryProjection}
+     */
+    private static OrderSummary summarize(Order order, List<Book> pricedBooks) {
+        return OrderSummary.builder()
+                .id(order.getId())
+                .customerName(order.getCustomerName())
+                .address(order.getAddress())
+                .totalAmount(order.getTotalAmount())
+                .books(pricedBooks)
+                .status(order.getStatus())
+                .build();
+    }
+
+    /**
+     * Sets the quantity of each reserved book to its ordered quantity and adds it to the priced books.
+     * Books the book service returned without them being ordered are skipped.
+     *
+     * @return the total amount of the priced books
+     */
+    static double priceBooks(OrderedQuantities orderedQuantities, List<Book> books, List<Book> pricedBooks) {
         double totalAmount = 0;
+        for (Book book : books) {
+            int orderedQuantity = orderedQuantities.get(book.getId());
+            if (orderedQuantity == OrderedQuantities.ABSENT) {
+                log.warn("Book service returned book with ID {} which was not ordered", book.getId());
+                continue;
+            }
+            totalAmount = totalAmount + book.getPrice()*orderedQuantity;
+            book.setQuantity(orderedQuantity);
+            pricedBooks.add(book);
+        }
+        return totalAmount;
+    }
+
+    /**
+     * Creates several orders at once: all of them are reserved with a single batched book-service
+     * call, or from the {@link StockLedger} when it is enabled, and saved in one transaction with JDBC
+     * batched inserts. An order that is rejected does not affect the others.
+     *
+     * @param orders the orders to create
+     * @return the outcome per order, in request order
+     */
+    public List<BatchItemResult> placeOrders(List<Order> orders) {
+        BatchItemResult[] results = new BatchItemResult[orders.size()];
+        List<BookReservation> reservations = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            try {
+                bookCatalogue.validate(orders.get(i).getBookDetails());
+                reservations.add(new BookReservation(i, orders.get(i).getBookDetails()));
+            } catch (IllegalArgumentException e) {
+                results[i] = itemResult(i, BatchItemStatus.REJECTED, e.getMessage());
+            }
+        }
+
+        Map<Long, BookReservationResult> reserved = Collections.emptyMap();
+        if (!reservations.isEmpty()) {
+            try {
+                reserved = reserveAll(reservations);
+            } catch (RuntimeException e) {
+                log.error("Failed to reserve books of {} orders: {}", reservations.size(), e.getMessage());
+            }
+        }
+
+        Instant placedAt = Instant.now();
+        List<Order> reservedOrders = new ArrayList<>(reservations.size());
+        List<BatchItemResult> createdResults = new ArrayList<>(reservations.size());
+        for (BookReservation reservation : reservations) {
+            int index = (int) reservation.getReservationId();
+            BookReservationResult result = reserved.get(reservation.getReservationId());
+            if (result == null) {
+                results[index] = itemResult(index, BatchItemStatus.FAILED, "Books could not be reserved");
+            } else if (result.getError() != null) {
+                results[index] = itemResult(index, BatchItemStatus.REJECTED, result.getError());
+            } else {
+                Order order = orders.get(index);
+                List<Book> pricedBooks = new ArrayList<>(result.getBooks().size());
+                bookCatalogue.putAll(result.getBooks());
+                order.setTotalAmount(priceBooks(OrderedQuantities.of(order.getBookDetails()), result.getBooks(), pricedBooks));
+                order.setStatus(OrderStatus.CONFIRMED);
+                order.setRejectionReason(null);
+                order.setPlacedAt(placedAt);
+                results[index] = itemResult(index, BatchItemStatus.CREATED, null);
+                results[index].setOrder(summarize(order, pricedBooks));
+                reservedOrders.add(order);
+                createdResults.add(results[index]);
+            }
+        }
+
+        int created = 0;
+        if (!reservedOrders.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    orderRepository.saveAll(reservedOrders);
+                    List<OrderSummary> orderSummaries = new ArrayList<>(reservedOrders.size());
+                    for (int i = 0; i < reservedOrders.size(); i++) {
+                        OrderSummary orderSummary = createdResults.get(i).getOrder();
+                        orderSummary.setId(reservedOrders.get(i).getId());
+                        orderSummaries.add(orderSummary);
+                    }
+                    orderSummaryProjection.putAll(orderSummaries);
+                });
+                for (BatchItemResult result : createdResults) {
+                    result.setOrderId(result.getOrder().getId());
+                    orderCache.invalidate(result.getOrderId());
+                }
+                reservedOrders.forEach(orderAnalytics::orderPlaced);
+                created = reservedOrders.size();
+            } catch (RuntimeException e) {
+                log.error("Failed to save {} orders, returning their books: {}", reservedOrders.size(), e.getMessage());
+                returnBooks(reservedOrders);
+                for (BatchItemResult result : createdResults) {
+                    result.setStatus(BatchItemStatus.FAILED);
+                    result.setOrder(null);
+                    result.setError("Order could not be saved");
+                }
+            }
+        }
+
+        orderMetrics.ordersPlaced(created, orders.size() - created);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Reserves the books of several orders from the {@link StockLedger} when it is enabled, one order
+     * at a time, so that they are given back to it like those of single orders; otherwise with one
+     * batched book-service call, see {@link BookReservationClient#reserveAll(List)}.
+     *
+     * @return the result per reservation ID; a reservation that could not be made is missing
+     */
+    private Map<Long, BookReservationResult> reserveAll(List<BookReservation> reservations) {
+        if (stockLedger == null) {
+            return bookReservationClient.reserveAll(reservations);
+        }
+        Map<Long, BookReservationResult> reserved = new HashMap<>(reservations.size() * 2);
+        for (BookReservation reservation : reservations) {
+            BookReservationResult result = new BookReservationResult();
+            result.setReservationId(reservation.getReservationId());
+            try {
+                result.setBooks(stockLedger.reserve(reservation.getBookDetails()));
+            } catch (IllegalArgumentException e) {
+                result.setError(rejectionReason(e));
+            } catch (RuntimeException e) {
+                log.error("Failed to reserve books of order {} of the batch: {}", reservation.getReservationId(), e.getMessage());
+                continue;
+            }
+            reserved.put(reservation.getReservationId(), result);
+        }
+        return reserved;
+    }
+
+    private static BatchItemResult itemResult(int index, BatchItemStatus status, String error) {
+        return BatchItemResult.builder().index(index).status(status).error(error).build();
+    }
+
+    /**
+     * Reserves the ordered books from the {@link StockLedger} when it is enabled, otherwise in the book
+     * service, through the {@link BookReservationBatcher} when batching is enabled.
+     *
+     * @param orderedBooks the ordered books
+     * @return the reserved books with their details
+     * @throws IllegalArgumentException if any book is not in stock
+     */
+    private List<Book> reserveBooks(List<BookDetail> orderedBooks) throws IllegalArgumentException {
+        if (stockLedger != null) {
+            return stockLedger.reserve(orderedBooks);
+        }
+        if (reservationBatcher != null) {
+            return reservationBatcher.reserve(orderedBooks);
+        }
 
         // Make PUT API call to Book service to update and get book details
-        String url = "http://book-service/books/order";
-        ResponseEntity<JsonNode> responseEntity = restTemplate.exchange(
-                url,
-                HttpMethod.PUT,
-                new HttpEntity<>(orderedBooks),
-                JsonNode.class
-        );
+        ResponseEntity<Book[]> responseEntity;
+        try {
+            responseEntity = bookServiceGuard.call(() -> restTemplate.exchange(
+                    BOOK_ORDER_URL,
+                    HttpMethod.PUT,
+                    new HttpEntity<>(orderedBooks),
+                    Book[].class
+            ));
+        } catch (HttpClientErrorException e) {
+            throw new IllegalArgumentException(e.getResponseBodyAsString(), e);
+        }
 
         if (responseEntity.getStatusCode() == HttpStatus.OK) {
-            JsonNode jsonNode = objectMapper.readTree(Objects.requireNonNull(responseEntity.getBody()).toString());
-            List<Book> books = objectMapper.convertValue(jsonNode, new TypeReference<List<Book>>() {});
-
-            for(Book book : books) {
-                int orderedQuantity = orderedBooks.stream()
-                        .filter(bookDetails -> bookDetails.getBookId() == book.getId())
-                        .findFirst()
-                        .get()
-                        .getOrderedQuantity();
-                totalAmount = totalAmount + book.getPrice()*orderedQuantity;
-                book.setQuantity(orderedQuantity);
-            }
-
-            order.setTotalAmount(totalAmount);
-            log.info("Order executed successfully");
-            Order savedOrder = orderRepository.save(order);
-
-            OrderSummary orderSummary = OrderSummary.builder()
-                    .id(savedOrder.getId())
-                    .customerName(savedOrder.getCustomerName())
-                    .address(savedOrder.getAddress())
-                    .totalAmount(savedOrder.getTotalAmount())
-                    .books(books)
-                    .build();
-            return orderSummary;
+            return Arrays.asList(Objects.requireNonNull(responseEntity.getBody()));
         } else {
-            String errorMessage = Objects.requireNonNull(responseEntity.getBody()).toString();
-            throw new IllegalArgumentException(errorMessage);
+            throw new IllegalArgumentException("Book service responded with status " + responseEntity.getStatusCode());
+        }
+    }
+
+    private CompletableFuture<List<Book>> reserveBooksAsync(List<BookDetail> orderedBooks) {
+        if (stockLedger != null) {
+            // local unless a lease is needed, which then blocks the calling thread
+            try {
+                return CompletableFuture.completedFuture(stockLedger.reserve(orderedBooks));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (reservationBatcher != null) {
+            return reservationBatcher.reserveAsync(orderedBooks);
         }
+
+        return bookServiceGuard.callAsync(() -> webClient.put()
+                .uri(BOOK_ORDER_URL)
+                .bodyValue(orderedBooks)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, response -> response.bodyToMono(String.class)
+                        .map(IllegalArgumentException::new))
+                .bodyToMono(Book[].class)
+                .map(Arrays::asList)
+                .toFuture());
     }
 
     /**
-     * Deletes an order and adds the books back to inventory
+     * Deletes an order and, if it was confirmed, adds the books back to inventory. The return of the
+     * books is recorded in the {@link InventoryReturnOutbox} in the same transaction as the deletion
+     * and sent to the book service in the background. With the {@link StockLedger} enabled, the books
+     * go back to the locally held stock once the deletion is committed instead. Rejected orders hold
+     * no books, and pending orders cannot be deleted while a worker may be placing them: their status
+     * only changes once, from pending, so the status read here is final for the orders deleted.
+     * Archived orders cannot be deleted either, see {@link OrderArchive}.
      *
      * @param id the ID of the order to delete
      * @return true if the order is deleted, false if not found
+     * @throws IllegalStateException if the order is still pending or archived
      */
-    public boolean deleteOrder(int id) {
-        Optional<Order> optionalOrder = orderRepository.findById(id);
+    public boolean deleteOrder(int id) throws IllegalStateException {
+        Optional<Order> deletedOrder = transactionTemplate.execute(status -> {
+            Optional<Order> optionalOrder = orderRepository.findById(id);
+            if (optionalOrder.isEmpty() && !orderArchive.findArchivedIds(Collections.singletonList(id)).isEmpty()) {
+                throw new IllegalStateException("Order " + id + " is archived");
+            }
+            optionalOrder.ifPresent(order -> {
+                if (order.getStatus() == OrderStatus.PENDING) {
+                    throw new IllegalStateException("Order " + id + " is still being placed");
+                }
+                orderRepository.deleteById(id);
+                orderSummaryProjection.removeAll(Collections.singletonList(id));
+                if (stockLedger == null && order.getStatus() == OrderStatus.CONFIRMED) {
+                    inventoryReturnOutbox.enqueue(order);
+                }
+            });
+            return optionalOrder;
+        });
+        orderCache.invalidate(id);
 
-        if (optionalOrder.isPresent()) {
-            orderRepository.deleteById(id);
+        if (deletedOrder != null && deletedOrder.isPresent()) {
+            Order order = deletedOrder.get();
+            if (order.getStatus() == OrderStatus.CONFIRMED) {
+                if (stockLedger != null) {
+                    stockLedger.release(order.getBookDetails());
+                }
+                bookCatalogue.invalidateAll(order.getBookDetails());
+                orderAnalytics.orderCancelled(order);
+            }
+            orderMetrics.orderCancelled();
+            return true;
+        } else {
+            return false;
+        }
+    }
 
-            Order deletedOrder = optionalOrder.get();
+    /**
+     * Deletes an order and adds the books back to inventory without blocking the caller, see
+     * {@link #placeOrderAsync(Order)}.
+     *
+     * @param id the ID of the order to delete
+     * @return a future completed with true if the order is deleted, false if not found
+     */
+    public CompletableFuture<Boolean> deleteOrderAsync(int id) {
+        if (!asyncPlacement) {
+            try {
+                return CompletableFuture.completedFuture(deleteOrder(id));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
 
-            // add books back in book inventory
-            List<BookDetail> orderedBooks = deletedOrder.getBookDetails();
+        return CompletableFuture.supplyAsync(() -> deleteOrder(id), taskExecutor);
+    }
 
-            // Make PUT API call to Book service to update and get book details
-            String url = "http://book-service/books/return";
-            ResponseEntity<Boolean> responseEntity = restTemplate.exchange(
-                    url,
-                    HttpMethod.PUT,
-                    new HttpEntity<>(orderedBooks),
-                    boolean.class
-            );
+    /**
+     * Deletes several orders in one transaction and adds the books of the confirmed ones back to
+     * inventory, see {@link #deleteOrder(int)}. Pending and archived orders are left alone and reported
+     * as {@link BatchItemStatus#CONFLICT}.
+     *
+     * @param ids the IDs of the orders to delete
+     * @return the outcome per ID, in request order
+     */
+    public List<BatchItemResult> deleteOrders(List<Integer> ids) {
+        Set<Integer> pendingIds = new HashSet<>();
+        Set<Integer> archivedIds = new HashSet<>();
+        List<Order> deletedOrders = transactionTemplate.execute(status -> {
+            List<Order> orders = new ArrayList<>();
+            Set<Integer> missingIds = new HashSet<>(ids);
+            for (Order order : orderRepository.findDistinctByIdIn(new HashSet<>(ids))) {
+                missingIds.remove(order.getId());
+                if (order.getStatus() == OrderStatus.PENDING) {
+                    pendingIds.add(order.getId());
+                } else {
+                    orders.add(order);
+                }
+            }
+            archivedIds.addAll(orderArchive.findArchivedIds(missingIds));
+            orderRepository.deleteAll(orders);
+            orderSummaryProjection.removeAll(orders.stream().map(Order::getId).collect(Collectors.toList()));
+            if (stockLedger == null) {
+                inventoryReturnOutbox.enqueueAll(orders.stream()
+                        .filter(order -> order.getStatus() == OrderStatus.CONFIRMED)
+                        .collect(Collectors.toList()));
+            }
+            return orders;
+        });
+        orderCache.invalidateAll(ids);
 
-            return responseEntity.getStatusCode() == HttpStatus.OK;
-        } else {
-            return false;
+        Set<Integer> deletedIds = new HashSet<>();
+        for (Order order : Objects.requireNonNull(deletedOrders)) {
+            deletedIds.add(order.getId());
+            if (order.getStatus() == OrderStatus.CONFIRMED) {
+                if (stockLedger != null) {
+                    stockLedger.release(order.getBookDetails());
+                }
+                bookCatalogue.invalidateAll(order.getBookDetails());
+                orderAnalytics.orderCancelled(order);
+            }
+            orderMetrics.orderCancelled();
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Integer id = ids.get(i);
+            BatchItemStatus itemStatus = deletedIds.remove(id) ? BatchItemStatus.CANCELLED
+                    : pendingIds.contains(id) || archivedIds.contains(id) ? BatchItemStatus.CONFLICT : BatchItemStatus.NOT_FOUND;
+            BatchItemResult result = itemResult(i, itemStatus, itemStatus != BatchItemStatus.CONFLICT ? null
+                    : pendingIds.contains(id) ? "Order " + id + " is still being placed" : "Order " + id + " is archived");
+            result.setOrderId(id);
+            results.add(result);
         }
+        return results;
     }
 
 }
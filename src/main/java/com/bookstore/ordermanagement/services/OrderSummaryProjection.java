@@ -0,0 +1,133 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.OrderSummaryRecordRepository;
+import com.bookstore.ordermanagement.entities.OrderSummaryRecord;
+import com.bookstore.ordermanagement.models.OrderSummary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Read model of the orders, serving {@code GET /orders} and {@code GET /orders/{id}}.
+ * <p>
+ * Every write of an order puts its {@link OrderSummary}, with the books as priced when the order was
+ * placed, into the {@code order_summary} table in the same transaction, see {@link #put(OrderSummary)}.
+ * Reads are then a primary key lookup or range scan of that table, instead of loading the order with
+ * its book details, and return the same summary the order was placed with.
+ */
+@Component
+public class OrderSummaryProjection {
+
+    private final OrderSummaryRecordRepository orderSummaryRecordRepository;
+
+    private final ObjectMapper objectMapper;
+
+    public OrderSummaryProjection(OrderSummaryRecordRepository orderSummaryRecordRepository, ObjectMapper objectMapper) {
+        this.orderSummaryRecordRepository = orderSummaryRecordRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Stores the summary of an order, replacing the previous one. Must be called in the transaction
+     * that saves the order.
+     *
+     * @param orderSummary the summary of the saved order, with its ID
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void put(OrderSummary orderSummary) {
+        orderSummaryRecordRepository.save(toRecord(orderSummary));
+    }
+
+    /**
+     * Stores the summaries of several orders, see {@link #put(OrderSummary)}.
+     *
+     * @param orderSummaries the summaries of the saved orders, with their IDs
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void putAll(Collection<OrderSummary> orderSummaries) {
+        List<OrderSummaryRecord> records = new ArrayList<>(orderSummaries.size());
+        for (OrderSummary orderSummary : orderSummaries) {
+            records.add(toRecord(orderSummary));
+        }
+        orderSummaryRecordRepository.saveAll(records);
+    }
+
+    /**
+     * Removes the summaries of orders. Must be called in the transaction that deletes the orders.
+     *
+     * @param orderIds the IDs of the deleted orders
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeAll(Collection<Integer> orderIds) {
+        if (!orderIds.isEmpty()) {
+            orderSummaryRecordRepository.deleteByOrderIds(orderIds);
+        }
+    }
+
+    /**
+     * Retrieves the summary of an order as stored.
+     *
+     * @param orderId the ID of the order
+     * @return the summary as JSON, or null if the order does not exist
+     */
+    public byte[] getJson(int orderId) {
+        return orderSummaryRecordRepository.findById(orderId)
+                .map(record -> record.getSummary().getBytes(StandardCharsets.UTF_8))
+                .orElse(null);
+    }
+
+    /**
+     * Retrieves a page of summaries using keyset pagination.
+     *
+     * @param after the ID of the last order of the previous page, 0 for the first page
+     * @param limit the maximum number of summaries to return
+     * @return the summaries of the orders with an ID greater than {@code after}, in ascending ID order
+     */
+    public List<OrderSummary> getPage(int after, int limit) {
+        List<OrderSummaryRecord> records = orderSummaryRecordRepository
+                .findByOrderIdGreaterThanOrderByOrderIdAsc(after, PageRequest.of(0, limit));
+        List<OrderSummary> orderSummaries = new ArrayList<>(records.size());
+        for (OrderSummaryRecord record : records) {
+            try {
+                orderSummaries.add(objectMapper.readValue(record.getSummary(), OrderSummary.class));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to deserialize summary of order " + record.getOrderId(), e);
+            }
+        }
+        return orderSummaries;
+    }
+
+    /**
+     * Streams the summaries from a database cursor, in constant memory. Must be consumed inside a
+     * transaction and closed afterwards.
+     *
+     * @param after the ID to start after, 0 for all orders
+     * @return the summaries of the orders with an ID greater than {@code after}, in ascending ID order
+     */
+    public Stream<OrderSummary> stream(int after) {
+        return orderSummaryRecordRepository.streamSummariesAfter(after).map(summary -> {
+            try {
+                return objectMapper.readValue(summary, OrderSummary.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to deserialize streamed order summary", e);
+            }
+        });
+    }
+
+    private OrderSummaryRecord toRecord(OrderSummary orderSummary) {
+        try {
+            return new OrderSummaryRecord(orderSummary.getId(), objectMapper.writeValueAsString(orderSummary));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize summary of order " + orderSummary.getId(), e);
+        }
+    }
+}
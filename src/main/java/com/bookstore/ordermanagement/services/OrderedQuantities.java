@@ -0,0 +1,71 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+
+import java.util.List;
+
+/**
+ * Ordered quantity per book ID of one order, indexed once so that pricing the books returned by the
+ * book service is linear in the basket size. Open addressing over primitive arrays, no boxing.
+ * If a book is ordered on several lines, its first line wins.
+ */
+final class OrderedQuantities {
+
+    static final int ABSENT = -1;
+
+    private final int[] bookIds;
+
+    private final int[] quantities;
+
+    private final boolean[] used;
+
+    private final int mask;
+
+    private OrderedQuantities(int capacity) {
+        bookIds = new int[capacity];
+        quantities = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    static OrderedQuantities of(List<BookDetail> orderedBooks) {
+        // power of two at least twice the basket size keeps probe sequences short
+        int capacity = Integer.highestOneBit(Math.max(orderedBooks.size(), 1) * 2 - 1) << 1;
+        OrderedQuantities orderedQuantities = new OrderedQuantities(capacity);
+        for (BookDetail bookDetail : orderedBooks) {
+            orderedQuantities.putIfAbsent(bookDetail.getBookId(), bookDetail.getOrderedQuantity());
+        }
+        return orderedQuantities;
+    }
+
+    /**
+     * Returns the ordered quantity of the book, or {@link #ABSENT} if it was not ordered.
+     */
+    int get(int bookId) {
+        for (int slot = slot(bookId); used[slot]; slot = (slot + 1) & mask) {
+            if (bookIds[slot] == bookId) {
+                return quantities[slot];
+            }
+        }
+        return ABSENT;
+    }
+
+    private void putIfAbsent(int bookId, int quantity) {
+        int slot = slot(bookId);
+        while (used[slot]) {
+            if (bookIds[slot] == bookId) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        bookIds[slot] = bookId;
+        quantities[slot] = quantity;
+    }
+
+    private int slot(int bookId) {
+        // Fibonacci hashing spreads sequential IDs across the table
+        int hash = bookId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
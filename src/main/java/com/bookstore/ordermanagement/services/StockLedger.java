@@ -0,0 +1,353 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local stock of the books being ordered, leased from the book service in bulk so that most orders
+ * are reserved without a remote call.
+ * <p>
+ * When an order needs more copies of a book than are held, {@code lease-size} copies (at least the
+ * ordered quantity) are reserved with one {@code PUT /books/order}, as if for an order of their own,
+ * and the response's price is used for the orders served from the lease. Held copies live in a
+ * {@link StripedStock} per book, so concurrent orders for a hot book don't serialize on one lock or
+ * counter; the per-book lock is only taken briefly to gather copies spread over stripes, and never
+ * across a call to the book service. At most one lease per book is in flight: orders that find the
+ * stock short meanwhile wait for it without holding the lock, while orders the stripes can still serve
+ * go on being reserved. Cancelled orders give their copies back to the held stock.
+ * <p>
+ * Every {@code reconcile-interval}, held copies beyond {@code max-held} per book, and all copies of
+ * leases older than {@code lease-ttl}, are returned to the book service with {@code PUT /books/return},
+ * which also bounds how long a leased price is used. Copies still held when the service stops are
+ * returned too.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "orders.stock-ledger.enabled", havingValue = "true")
+public class StockLedger {
+
+    static final String BOOK_ORDER_URL = "http://book-service/books/order";
+
+    static final String BOOK_RETURN_URL = "http://book-service/books/return";
+
+    private final RestTemplate restTemplate;
+
+    private final BookServiceGuard bookServiceGuard;
+
+    private final int leaseSize;
+
+    private final int maxHeld;
+
+    private final Duration leaseTtl;
+
+    private final Map<Integer, Quota> quotas = new ConcurrentHashMap<>();
+
+    private final Counter localReservations;
+
+    private final Counter leases;
+
+    public StockLedger(RestTemplate restTemplate,
+                       BookServiceGuard bookServiceGuard,
+                       MeterRegistry meterRegistry,
+                       @Value("${orders.stock-ledger.lease-size:20}") int leaseSize,
+                       @Value("${orders.stock-ledger.max-held:100}") int maxHeld,
+                       @Value("${orders.stock-ledger.lease-ttl:5m}") Duration leaseTtl) {
+        this.restTemplate = restTemplate;
+        this.bookServiceGuard = bookServiceGuard;
+        this.leaseSize = leaseSize;
+        this.maxHeld = maxHeld;
+        this.leaseTtl = leaseTtl;
+        this.localReservations = Counter.builder("orders.stock.ledger.reservations")
+                .description("Book lines reserved from locally held stock")
+                .register(meterRegistry);
+        this.leases = Counter.builder("orders.stock.ledger.leases")
+                .description("Stock leases taken from the book service")
+                .register(meterRegistry);
+        Gauge.builder("orders.stock.ledger.held", quotas, StockLedger::held)
+                .description("Copies of books held locally")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserves the ordered books from the held stock, leasing more from the book service for the
+     * books that are short. Either all lines are reserved or none.
+     *
+     * @param orderedBooks the ordered books
+     * @return a copy of each reserved book as last returned by the book service, with its price
+     * @throws IllegalArgumentException if the book service has not enough copies of a book
+     */
+    public List<Book> reserve(List<BookDetail> orderedBooks) throws IllegalArgumentException {
+        List<Book> books = new ArrayList<>(orderedBooks.size());
+        List<BookDetail> reserved = new ArrayList<>(orderedBooks.size());
+        try {
+            for (BookDetail bookDetail : orderedBooks) {
+                if (bookDetail.getOrderedQuantity() < 1) {
+                    throw new IllegalArgumentException("Ordered quantity of book " + bookDetail.getBookId() + " must be positive");
+                }
+                Quota quota = quotas.computeIfAbsent(bookDetail.getBookId(), Quota::new);
+                books.add(take(quota, bookDetail.getOrderedQuantity()));
+                reserved.add(bookDetail);
+            }
+        } catch (RuntimeException e) {
+            release(reserved);
+            throw e;
+        }
+        return books;
+    }
+
+    /**
+     * Gives the books of a cancelled order back to the held stock.
+     *
+     * @param bookDetails the books of the cancelled order
+     */
+    public void release(List<BookDetail> bookDetails) {
+        for (BookDetail bookDetail : bookDetails) {
+            quotas.computeIfAbsent(bookDetail.getBookId(), Quota::new).stock.add(bookDetail.getOrderedQuantity());
+        }
+    }
+
+    /**
+     * @return the copies of a book held locally
+     */
+    public long getHeld(int bookId) {
+        Quota quota = quotas.get(bookId);
+        return quota == null ? 0 : quota.stock.sum();
+    }
+
+    private Book take(Quota quota, int quantity) {
+        while (true) {
+            Book book = quota.book;
+            if (book != null && quota.stock.tryTake(quantity)) {
+                localReservations.increment();
+                return copy(book);
+            }
+
+            CompletableFuture<Void> leasing;
+            quota.lock.lock();
+            try {
+                // the copies may be spread over stripes none of which holds enough
+                long held = quota.stock.drain();
+                book = quota.book;
+                // a book without a lease has no price yet, even if cancelled orders gave copies back
+                if (book != null && held >= quantity) {
+                    quota.stock.add(held - quantity);
+                    localReservations.increment();
+                    return copy(book);
+                }
+                quota.stock.add(held);
+                leasing = quota.leasing;
+                if (leasing == null) {
+                    quota.leasing = new CompletableFuture<>();
+                }
+            } finally {
+                quota.lock.unlock();
+            }
+
+            if (leasing != null) {
+                // another order is leasing this book, try again once it is done
+                leasing.join();
+            } else {
+                return leaseAndTake(quota, quantity);
+            }
+        }
+    }
+
+    /**
+     * Leases copies of a book for an order, outside the per-book lock, and adds the copies it does
+     * not need to the held stock.
+     */
+    private Book leaseAndTake(Quota quota, int quantity) {
+        try {
+            Lease lease = lease(quota, Math.max(leaseSize, quantity), quantity);
+            quota.stock.add(lease.copies - quantity);
+            return copy(lease.book);
+        } finally {
+            CompletableFuture<Void> leasing = quota.leasing;
+            quota.leasing = null;
+            leasing.complete(null);
+        }
+    }
+
+    /**
+     * Leases copies of a book, falling back to the copies needed when the book service refuses a
+     * whole lease with a client error, as it does when it has fewer copies in stock. Server errors
+     * and timeouts are not retried with a smaller lease.
+     */
+    private Lease lease(Quota quota, long preferred, long needed) {
+        try {
+            return lease(quota, preferred);
+        } catch (IllegalArgumentException e) {
+            if (preferred <= needed || !(e.getCause() instanceof HttpClientErrorException)) {
+                throw e;
+            }
+            return lease(quota, needed);
+        }
+    }
+
+    private Lease lease(Quota quota, long quantity) {
+        ResponseEntity<Book[]> responseEntity;
+        try {
+            responseEntity = bookServiceGuard.call(() -> restTemplate.exchange(
+                    BOOK_ORDER_URL,
+                    HttpMethod.PUT,
+                    new HttpEntity<>(Collections.singletonList(new BookDetail(0, quota.bookId, (int) quantity))),
+                    Book[].class
+            ));
+        } catch (HttpClientErrorException e) {
+            throw new IllegalArgumentException(e.getResponseBodyAsString(), e);
+        }
+        Book[] books = responseEntity.getBody();
+        if (!responseEntity.getStatusCode().is2xxSuccessful() || books == null || books.length == 0) {
+            throw new IllegalArgumentException("Book service responded with status " + responseEntity.getStatusCode());
+        }
+        quota.leasedAt = System.nanoTime();
+        quota.book = books[0];
+        leases.increment();
+        return new Lease(books[0], quantity);
+    }
+
+    /**
+     * Returns held copies beyond {@code max-held}, and all copies of leases older than
+     * {@code lease-ttl}, to the book service. Copies that cannot be returned are kept.
+     */
+    @Scheduled(fixedDelayString = "${orders.stock-ledger.reconcile-interval:PT30S}")
+    public void reconcile() {
+        long now = System.nanoTime();
+        for (Quota quota : quotas.values()) {
+            boolean expired = quota.book == null || now - quota.leasedAt > leaseTtl.toNanos();
+            if (expired || quota.stock.sum() > maxHeld) {
+                giveBack(quota, expired ? 0 : maxHeld);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void returnAll() {
+        for (Quota quota : quotas.values()) {
+            giveBack(quota, 0);
+        }
+    }
+
+    /**
+     * Returns the held copies beyond {@code keep}. The copies are taken out of the held stock while
+     * they are sent, without holding the per-book lock, and put back if the book service cannot take
+     * them.
+     */
+    private void giveBack(Quota quota, long keep) {
+        long excess;
+        long leasedAt;
+        quota.lock.lock();
+        try {
+            long held = quota.stock.drain();
+            excess = held - keep;
+            quota.stock.add(Math.min(held, keep));
+            leasedAt = quota.leasedAt;
+        } finally {
+            quota.lock.unlock();
+        }
+        if (excess <= 0) {
+            return;
+        }
+        if (send(quota.bookId, excess)) {
+            // unless leased again meanwhile, the price of the returned lease is not used any more
+            if (keep == 0 && quota.leasedAt == leasedAt) {
+                quota.book = null;
+            }
+        } else {
+            quota.stock.add(excess);
+        }
+    }
+
+    private boolean send(int bookId, long quantity) {
+        try {
+            ResponseEntity<Boolean> responseEntity = bookServiceGuard.call(() -> restTemplate.exchange(
+                    BOOK_RETURN_URL,
+                    HttpMethod.PUT,
+                    new HttpEntity<>(Collections.singletonList(new BookDetail(0, bookId, (int) quantity))),
+                    boolean.class
+            ));
+            return responseEntity.getStatusCode().is2xxSuccessful();
+        } catch (RestClientException | BookServiceUnavailableException e) {
+            log.warn("Failed to return {} held copies of book {}: {}", quantity, bookId, e.getMessage());
+            return false;
+        }
+    }
+
+    private static Book copy(Book book) {
+        return new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getDescription(),
+                book.getPrice(), book.getQuantity());
+    }
+
+    private static double held(Map<Integer, Quota> quotas) {
+        long held = 0;
+        for (Quota quota : quotas.values()) {
+            held += quota.stock.sum();
+        }
+        return held;
+    }
+
+    private static final class Lease {
+
+        final Book book;
+
+        final long copies;
+
+        Lease(Book book, long copies) {
+            this.book = book;
+            this.copies = copies;
+        }
+    }
+
+    private static final class Quota {
+
+        final int bookId;
+
+        final StripedStock stock = new StripedStock();
+
+        /**
+         * Only taken to gather stripes, start a lease or take copies to give back, never on the fast
+         * path nor across a call to the book service.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Completed when the lease in flight is done, null while there is none. Set under the lock.
+         */
+        volatile CompletableFuture<Void> leasing;
+
+        /**
+         * The book as returned by the last lease, null until the first one.
+         */
+        volatile Book book;
+
+        volatile long leasedAt;
+
+        Quota(int bookId) {
+            this.bookId = bookId;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.bookstore.ordermanagement.services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copies of one book held locally, spread over several independently updated stripes so that
+ * concurrent orders for the same book don't all compare-and-swap on one memory location. A thread
+ * takes from and gives back to its own stripe first; only when that stripe is short does it look at
+ * the others. Stripes are padded to separate cache lines.
+ */
+final class StripedStock {
+
+    /**
+     * Longs per stripe: a stripe's counter sits alone on a 64 byte cache line.
+     */
+    private static final int PADDING = 8;
+
+    static final int STRIPES = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1, 64);
+
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Takes copies from a single stripe, starting with the calling thread's own.
+     *
+     * @return true if taken, false if no single stripe holds enough copies
+     */
+    boolean tryTake(int quantity) {
+        int home = homeStripe();
+        for (int i = 0; i < STRIPES; i++) {
+            int index = ((home + i) & (STRIPES - 1)) * PADDING;
+            long available = stripes.get(index);
+            while (available >= quantity) {
+                long witness = stripes.compareAndExchange(index, available, available - quantity);
+                if (witness == available) {
+                    return true;
+                }
+                available = witness;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds copies to the calling thread's own stripe.
+     */
+    void add(long quantity) {
+        stripes.getAndAdd(homeStripe() * PADDING, quantity);
+    }
+
+    /**
+     * Empties every stripe.
+     *
+     * @return the copies the stripes held
+     */
+    long drain() {
+        long total = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            total += stripes.getAndSet(i * PADDING, 0);
+        }
+        return total;
+    }
+
+    /**
+     * @return the copies held, a moment's estimate while other threads take and add
+     */
+    long sum() {
+        long total = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            total += stripes.get(i * PADDING);
+        }
+        return total;
+    }
+
+    private static int homeStripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,52 @@
+package com.bookstore.ordermanagement.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket refilled at {@code rate} tokens per second and holding at most
+ * {@code burst} tokens. The whole state is one timestamp, the time the bucket will be full again in
+ * the manner of the generic cell rate algorithm, so taking a token is a single compare-and-set.
+ */
+final class TokenBucket {
+
+    /**
+     * Nanoseconds to refill one token.
+     */
+    private final long interval;
+
+    /**
+     * Nanoseconds to refill an empty bucket.
+     */
+    private final long capacity;
+
+    /**
+     * The time at which the bucket is full again; the bucket is full whenever this is in the past.
+     */
+    private final AtomicLong fullAt;
+
+    TokenBucket(double rate, int burst, long now) {
+        this.interval = Math.max(1, (long) (1_000_000_000L / rate));
+        this.capacity = burst * interval;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token if there is one.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next token
+     */
+    long tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            long wait = next - now - capacity;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.bookstore.ordermanagement.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded set of the best selling book candidates, a heavy hitters sketch in the manner of
+ * Space-Saving: at most {@code capacity} books are tracked, and an untracked book only enters by
+ * selling more copies than the weakest tracked one, which it then replaces. Updates of books that
+ * neither are tracked nor beat the weakest one take no lock.
+ * <p>
+ * The copies recorded here only decide which books are kept; the figures reported come from the
+ * exact counters. As cancellations lower counts, a book that fell out can be outsold by one left in
+ * until the next rebuild re-seeds the set.
+ */
+final class TopBooks {
+
+    private final int capacity;
+
+    private final Map<Integer, Long> tracked = new ConcurrentHashMap<>();
+
+    /**
+     * Copies of the weakest tracked book, 0 while the set is not full.
+     */
+    private volatile long threshold;
+
+    TopBooks(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records the copies a book has sold now.
+     */
+    void update(int bookId, long copies) {
+        if (tracked.computeIfPresent(bookId, (id, previous) -> copies) != null) {
+            if (copies < threshold) {
+                synchronized (this) {
+                    threshold = weakest();
+                }
+            }
+            return;
+        }
+        if (copies <= threshold) {
+            return;
+        }
+        synchronized (this) {
+            if (!tracked.containsKey(bookId) && tracked.size() >= capacity) {
+                Map.Entry<Integer, Long> weakest = null;
+                for (Map.Entry<Integer, Long> entry : tracked.entrySet()) {
+                    if (weakest == null || entry.getValue() < weakest.getValue()) {
+                        weakest = entry;
+                    }
+                }
+                if (weakest.getValue() >= copies) {
+                    return;
+                }
+                tracked.remove(weakest.getKey());
+            }
+            tracked.merge(bookId, copies, Math::max);
+            threshold = weakest();
+        }
+    }
+
+    /**
+     * @return the IDs of the tracked books, in no particular order
+     */
+    List<Integer> candidates() {
+        return new ArrayList<>(tracked.keySet());
+    }
+
+    private long weakest() {
+        if (tracked.size() < capacity) {
+            return 0;
+        }
+        long weakest = Long.MAX_VALUE;
+        for (long copies : tracked.values()) {
+            weakest = Math.min(weakest, copies);
+        }
+        return weakest;
+    }
+}
@@ -0,0 +1,55 @@
+-- Schema of the order service. Hibernate only validates it (spring.jpa.hibernate.ddl-auto), so
+-- entity changes need a new migration next to this one.
+
+create sequence "order_seq" start with 1 increment by 50;
+create sequence "book_detail_seq" start with 1 increment by 100;
+create sequence "hibernate_sequence" start with 1 increment by 1;
+
+create table "order" (
+    "id" integer not null,
+    "address" varchar(255),
+    "customer_name" varchar(255),
+    "total_amount" double not null,
+    primary key ("id")
+);
+
+-- keyset pages of GET /orders/search/by-customer and /by-amount
+create index "order_customer_name_idx" on "order" ("customer_name", "id");
+create index "order_total_amount_idx" on "order" ("total_amount", "id");
+
+create table "book_detail" (
+    "fid" integer not null,
+    "book_id" integer not null,
+    "ordered_quantity" integer not null,
+    "order_id" integer not null,
+    primary key ("fid"),
+    constraint "book_detail_order_id_fk" foreign key ("order_id") references "order" ("id")
+);
+
+-- batch fetches of the book details of a page of orders, and GET /orders/search/by-book
+create index "book_detail_order_id_idx" on "book_detail" ("order_id");
+create index "book_detail_book_id_idx" on "book_detail" ("book_id", "order_id");
+
+create table "idempotency_record" (
+    "idempotency_key" varchar(100) not null,
+    "order_id" integer not null,
+    "response" clob,
+    "created_at" timestamp,
+    primary key ("idempotency_key")
+);
+
+-- purge of expired keys
+create index "idempotency_record_created_at_idx" on "idempotency_record" ("created_at");
+
+create table "inventory_return" (
+    "id" bigint not null,
+    "order_id" integer not null,
+    "book_details" clob,
+    "created_at" timestamp,
+    "attempts" integer not null,
+    "next_attempt_at" timestamp,
+    primary key ("id")
+);
+
+-- due returns of the outbox dispatcher
+create index "inventory_return_next_attempt_at_idx" on "inventory_return" ("next_attempt_at");
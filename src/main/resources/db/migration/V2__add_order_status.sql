@@ -0,0 +1,6 @@
+-- placement status of orders, see entities.OrderStatus; existing orders were placed synchronously
+alter table "order" add column "status" varchar(16) default 'CONFIRMED' not null;
+alter table "order" add column "rejection_reason" varchar(255);
+
+-- pending orders to resume after a restart
+create index "order_status_idx" on "order" ("status", "id");
@@ -0,0 +1,21 @@
+-- read model of GET /orders and GET /orders/{id}, see entities.OrderSummaryRecord
+create table "order_summary" (
+    "order_id" integer not null,
+    "summary" clob,
+    primary key ("order_id")
+);
+
+-- existing orders; their book prices were never stored, so their books carry ID and quantity only
+insert into "order_summary" ("order_id", "summary")
+select o."id", cast(json_object(
+        'id': o."id",
+        'customerName': o."customer_name",
+        'address': o."address",
+        'totalAmount': o."total_amount",
+        'books': case when o."status" = 'CONFIRMED' then (
+            select json_arrayagg(json_object('id': b."book_id", 'quantity': b."ordered_quantity") order by b."fid")
+            from "book_detail" b
+            where b."order_id" = o."id") end,
+        'status': o."status"
+        null on null) as varchar)
+from "order" o;
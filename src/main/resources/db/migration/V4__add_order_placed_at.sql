@@ -0,0 +1,2 @@
+-- confirmation time of orders, see entities.Order; unknown for the orders confirmed before
+alter table "order" add column "placed_at" timestamp;
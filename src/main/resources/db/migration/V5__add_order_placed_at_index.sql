@@ -0,0 +1,2 @@
+-- incremental exports of the orders placed since a time, see services.OrderExporter
+create index "order_placed_at_idx" on "order" ("placed_at", "id");
@@ -0,0 +1,25 @@
+-- orders moved out of "order" and "book_detail" once older than orders.archive.age, see
+-- services.OrderArchive; same columns, plus the time each order was archived
+create table "archived_order" (
+    "id" integer not null,
+    "address" varchar(255),
+    "customer_name" varchar(255),
+    "total_amount" double not null,
+    "status" varchar(16) not null,
+    "rejection_reason" varchar(255),
+    "placed_at" timestamp,
+    "archived_at" timestamp not null,
+    primary key ("id")
+);
+
+create table "archived_book_detail" (
+    "fid" integer not null,
+    "book_id" integer not null,
+    "ordered_quantity" integer not null,
+    "order_id" integer not null,
+    primary key ("fid"),
+    constraint "archived_book_detail_order_id_fk" foreign key ("order_id") references "archived_order" ("id")
+);
+
+-- book details of an archived order, for lookups falling through to the archive
+create index "archived_book_detail_order_id_idx" on "archived_book_detail" ("order_id");
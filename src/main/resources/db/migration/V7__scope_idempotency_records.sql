@@ -0,0 +1,7 @@
+-- idempotency keys are scoped per client, see services.IdempotencyStore, and remember a hash of the
+-- request they were first used with; records created before belong to no client and have no hash,
+-- so they no longer match and are purged after orders.idempotency.retention
+alter table "idempotency_record" add column "client_id" varchar(255) default '' not null;
+alter table "idempotency_record" add column "request_hash" varchar(64);
+alter table "idempotency_record" drop primary key;
+alter table "idempotency_record" add primary key ("client_id", "idempotency_key");
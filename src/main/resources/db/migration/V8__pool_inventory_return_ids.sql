@@ -0,0 +1,8 @@
+-- inventory returns draw their IDs from a pooled sequence of their own, like orders and book details,
+-- so the returns of a batch cancellation are inserted as JDBC batches. Hibernate hands out the 50 IDs
+-- up to each sequence value, so the first value leaves room above the IDs already in use.
+create sequence "inventory_return_seq" start with 50 increment by 50;
+alter sequence "inventory_return_seq" restart with (select coalesce(max("id"), 0) + 50 from "inventory_return");
+
+-- only inventory returns used it
+drop sequence "hibernate_sequence";
@@ -0,0 +1,52 @@
+package com.bookstore.ordermanagement.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClientIdentityTest {
+
+    private final ClientIdentity clientIdentity = new ClientIdentity(Set.of("10.0.0.1", "10.0.0.2"), "X-Forwarded-For");
+
+    @Test
+    public void resolve_AuthenticatedRequest_UsesPrincipal() {
+        MockHttpServletRequest request = request("192.168.1.5");
+        request.setUserPrincipal(() -> "alice");
+
+        assertEquals("user:alice", clientIdentity.resolve(request));
+    }
+
+    @Test
+    public void resolve_ForwardedHeaderFromUntrustedPeer_IsIgnored() {
+        MockHttpServletRequest request = request("192.168.1.5");
+        request.addHeader("X-Forwarded-For", "203.0.113.7");
+
+        assertEquals("address:192.168.1.5", clientIdentity.resolve(request));
+    }
+
+    @Test
+    public void resolve_ForwardedByTrustedProxies_UsesLastUntrustedHop() {
+        MockHttpServletRequest request = request("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "198.51.100.1, 203.0.113.7, 10.0.0.2");
+
+        assertEquals("address:203.0.113.7", clientIdentity.resolve(request));
+    }
+
+    @Test
+    public void resolve_NoTrustedProxies_UsesRemoteAddress() {
+        MockHttpServletRequest request = request("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "203.0.113.7");
+
+        assertEquals("address:10.0.0.1", new ClientIdentity(Collections.emptySet(), "X-Forwarded-For").resolve(request));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders");
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+}
@@ -0,0 +1,120 @@
+package com.bookstore.ordermanagement.controllers;
+
+import com.bookstore.ordermanagement.services.OrderAdmission;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderAdmissionFilterTest {
+
+    @Mock
+    private OrderAdmission orderAdmission;
+
+    @InjectMocks
+    private OrderAdmissionFilter orderAdmissionFilter;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(orderAdmissionFilter, "clientIdentity",
+                new ClientIdentity(Collections.emptySet(), "X-Forwarded-For"));
+    }
+
+    @Test
+    public void placement_Admitted_IsPassedOnAndEnded() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders");
+        request.setUserPrincipal(() -> "shop");
+        MockFilterChain chain = new MockFilterChain();
+        when(orderAdmission.tryAcquire("user:shop")).thenReturn(0L);
+        when(orderAdmission.tryStartPlacement()).thenReturn(true);
+
+        orderAdmissionFilter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        verify(orderAdmission).placementFinished(anyLong());
+    }
+
+    @Test
+    public void clientOverRate_IsRejectedWithoutReadingTheRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders/batch");
+        request.setRemoteAddr("10.0.0.1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        when(orderAdmission.tryAcquire("address:10.0.0.1")).thenReturn(TimeUnit.MILLISECONDS.toNanos(1500));
+
+        orderAdmissionFilter.doFilter(request, response, chain);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+        assertNull(chain.getRequest());
+        verify(orderAdmission, never()).tryStartPlacement();
+    }
+
+    @Test
+    public void placementOverConcurrencyLimit_IsRejected() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        when(orderAdmission.tryAcquire(anyString())).thenReturn(0L);
+        when(orderAdmission.tryStartPlacement()).thenReturn(false);
+
+        orderAdmissionFilter.doFilter(request, response, chain);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertNull(chain.getRequest());
+        verify(orderAdmission, never()).placementFinished(anyLong());
+    }
+
+    @Test
+    public void otherWrites_SkipTheConcurrencyLimit() throws Exception {
+        MockHttpServletRequest accepted = new MockHttpServletRequest("POST", "/orders");
+        accepted.addHeader(OrderController.PREFER_HEADER, OrderController.RESPOND_ASYNC);
+        when(orderAdmission.tryAcquire(anyString())).thenReturn(0L);
+
+        orderAdmissionFilter.doFilter(accepted, new MockHttpServletResponse(), new MockFilterChain());
+        orderAdmissionFilter.doFilter(new MockHttpServletRequest("DELETE", "/orders/1"), new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(orderAdmission, times(2)).tryAcquire(anyString());
+        verify(orderAdmission, never()).tryStartPlacement();
+    }
+
+    @Test
+    public void reads_AreNotLimited() throws Exception {
+        for (String path : new String[]{"/orders", "/orders/1", "/orders/1/status", "/orders/analytics/revenue",
+                "/orders/export", "/actuator/health"}) {
+            MockFilterChain chain = new MockFilterChain();
+
+            orderAdmissionFilter.doFilter(new MockHttpServletRequest("GET", path), new MockHttpServletResponse(), chain);
+
+            assertNotNull(chain.getRequest(), path);
+        }
+        verifyNoInteractions(orderAdmission);
+    }
+
+    @Test
+    public void clientIdHeader_DoesNotChooseTheBucket() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders/batch");
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Client-Id", "someone-else");
+        request.addHeader("X-Forwarded-For", "203.0.113.7");
+        when(orderAdmission.tryAcquire(anyString())).thenReturn(0L);
+
+        orderAdmissionFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(orderAdmission).tryAcquire("address:10.0.0.1");
+    }
+}
@@ -0,0 +1,65 @@
+package com.bookstore.ordermanagement.controllers;
+
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+import com.bookstore.ordermanagement.services.OrderAnalytics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class OrderAnalyticsControllerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 3, 31);
+
+    @Mock
+    private OrderAnalytics orderAnalytics;
+
+    @InjectMocks
+    private OrderAnalyticsController orderAnalyticsController;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(orderAnalytics.today()).thenReturn(TODAY);
+    }
+
+    @Test
+    public void testGetRevenue_DefaultsToLastDays() {
+        List<DailyRevenue> revenue = Collections.singletonList(new DailyRevenue(TODAY, 2, 40.0));
+        when(orderAnalytics.getRevenue(TODAY.minusDays(OrderAnalyticsController.DEFAULT_REVENUE_DAYS - 1), TODAY)).thenReturn(revenue);
+
+        ResponseEntity<List<DailyRevenue>> response = orderAnalyticsController.getRevenue(null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(revenue, response.getBody());
+    }
+
+    @Test
+    public void testGetRevenue_InvalidRange() {
+        assertEquals(HttpStatus.BAD_REQUEST, orderAnalyticsController.getRevenue(TODAY, TODAY.minusDays(1)).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, orderAnalyticsController.getRevenue(
+                TODAY.minusDays(OrderAnalyticsController.MAX_REVENUE_DAYS), TODAY).getStatusCode());
+        verify(orderAnalytics, never()).getRevenue(any(), any());
+    }
+
+    @Test
+    public void testGetTopBooks() {
+        List<BookSales> topBooks = Collections.singletonList(new BookSales(7, 12));
+        when(orderAnalytics.getTopBooks(5)).thenReturn(topBooks);
+
+        assertEquals(topBooks, orderAnalyticsController.getTopBooks(5).getBody());
+        assertEquals(HttpStatus.BAD_REQUEST, orderAnalyticsController.getTopBooks(0).getStatusCode());
+    }
+}
@@ -1,21 +1,42 @@
 package com.bookstore.ordermanagement.controllers;
 
 import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BatchItemResult;
+import com.bookstore.ordermanagement.models.BatchItemStatus;
+import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.ExportFormat;
+import com.bookstore.ordermanagement.models.OrderStatusResult;
 import com.bookstore.ordermanagement.models.OrderSummary;
+import com.bookstore.ordermanagement.models.SerializedOrder;
+import com.bookstore.ordermanagement.services.BookServiceUnavailableException;
+import com.bookstore.ordermanagement.services.IdempotencyKeyReusedException;
+import com.bookstore.ordermanagement.services.OrderExporter;
 import com.bookstore.ordermanagement.services.OrderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 public class OrderControllerTest {
@@ -23,72 +44,248 @@ public class OrderControllerTest {
     @Mock
     private OrderService orderService;
 
+    @Mock
+    private OrderExporter orderExporter;
+
+    @Mock
+    private ClientIdentity clientIdentity;
+
     @InjectMocks
     private OrderController orderController;
 
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
     }
 
     @Test
-    public void testGetAllOrders() {
-        // Mocking the orderService.getAllOrders() method
-        Order order1 = new Order();
-        Order order2 = new Order();
-        List<Order> orders = Arrays.asList(order1, order2);
-        when(orderService.getAllOrders()).thenReturn(orders);
+    public void testGetOrders() {
+        // Mocking the orderService.getOrders() method
+        OrderSummary order1 = new OrderSummary();
+        OrderSummary order2 = new OrderSummary();
+        List<OrderSummary> orders = Arrays.asList(order1, order2);
+        when(orderService.getOrders(10, 20)).thenReturn(orders);
 
-        // Calling the getAllOrders() method of the orderController
-        ResponseEntity<List<Order>> response = orderController.getAllOrders();
+        // Calling the getOrders() method of the orderController
+        ResponseEntity<List<OrderSummary>> response = orderController.getOrders(10, 20);
 
         // Verifying the result
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(orders, response.getBody());
     }
 
+    @Test
+    public void testGetOrders_LimitIsCapped() {
+        when(orderService.getOrders(0, OrderController.MAX_PAGE_SIZE)).thenReturn(Collections.emptyList());
+
+        ResponseEntity<List<OrderSummary>> response = orderController.getOrders(0, OrderController.MAX_PAGE_SIZE + 1);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(orderService).getOrders(0, OrderController.MAX_PAGE_SIZE);
+    }
+
+    @Test
+    public void testGetOrders_InvalidLimit() {
+        ResponseEntity<List<OrderSummary>> response = orderController.getOrders(0, 0);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    public void testFindOrdersByCustomer_LimitIsCapped() {
+        List<Order> orders = Collections.singletonList(new Order());
+        when(orderService.findOrdersByCustomer("John Doe", 0, OrderController.MAX_PAGE_SIZE)).thenReturn(orders);
+
+        ResponseEntity<List<Order>> response = orderController.findOrdersByCustomer("John Doe", 0, OrderController.MAX_PAGE_SIZE + 1);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(orders, response.getBody());
+    }
+
+    @Test
+    public void testFindOrdersByBook() {
+        List<Order> orders = Collections.singletonList(new Order());
+        when(orderService.findOrdersByBook(7, 10, 20)).thenReturn(orders);
+
+        ResponseEntity<List<Order>> response = orderController.findOrdersByBook(7, 10, 20);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(orders, response.getBody());
+    }
+
+    @Test
+    public void testFindOrdersByAmount_InvalidRange() {
+        ResponseEntity<List<Order>> response = orderController.findOrdersByAmount(100.0, 50.0, null, 0, 20);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(orderService);
+    }
+
     @Test
     public void testGetOrderById_ExistingOrder() {
         int orderId = 1;
-        Order order = new Order();
-        when(orderService.getOrderById(orderId)).thenReturn(order);
+        SerializedOrder order = new SerializedOrder("{\"id\":1}".getBytes(), "\"abc\"");
+        when(orderService.getSerializedOrder(orderId)).thenReturn(order);
+
+        ResponseEntity<byte[]> response = orderController.getOrderById(orderId, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(order.getJson(), response.getBody());
+        assertEquals("\"abc\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    public void testGetOrderById_MatchingEtag() {
+        int orderId = 1;
+        when(orderService.getSerializedOrder(orderId)).thenReturn(new SerializedOrder("{\"id\":1}".getBytes(), "\"abc\""));
+
+        ResponseEntity<byte[]> response = orderController.getOrderById(orderId, "\"xyz\", W/\"abc\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
 
-        ResponseEntity<Order> response = orderController.getOrderById(orderId);
+    @Test
+    public void testGetOrderById_StaleEtag() {
+        int orderId = 1;
+        when(orderService.getSerializedOrder(orderId)).thenReturn(new SerializedOrder("{\"id\":1}".getBytes(), "\"abc\""));
+
+        ResponseEntity<byte[]> response = orderController.getOrderById(orderId, "\"xyz\"");
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(order, response.getBody());
     }
 
     @Test
     public void testGetOrderById_NonExistingOrder() {
         int orderId = 1;
-        when(orderService.getOrderById(orderId)).thenReturn(null);
+        when(orderService.getSerializedOrder(orderId)).thenReturn(null);
 
-        ResponseEntity<Order> response = orderController.getOrderById(orderId);
+        ResponseEntity<byte[]> response = orderController.getOrderById(orderId, null);
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
     @Test
-    public void testCreateOrder_Success() throws IOException {
+    public void testCreateOrder_Success() {
         Order order = new Order();
         OrderSummary orderSummary = new OrderSummary();
 
-        when(orderService.placeOrder(order)).thenReturn(orderSummary);
+        when(orderService.placeOrderAsync(order, null, null)).thenReturn(CompletableFuture.completedFuture(orderSummary));
 
-        ResponseEntity<Object> response = orderController.createOrder(order);
+        ResponseEntity<Object> response = orderController.createOrder(null, null, null, order, request).join();
 
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
         assertEquals(orderSummary, response.getBody());
     }
 
+    @Test
+    public void testCreateOrder_BookNotInStock() {
+        Order order = new Order();
+
+        when(orderService.placeOrderAsync(order, null, null))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalArgumentException("Book 1 is out of stock")));
+
+        ResponseEntity<Object> response = orderController.createOrder(null, null, null, order, request).join();
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals("Book 1 is out of stock", response.getBody());
+    }
+
+    @Test
+    public void testCreateOrder_WithIdempotencyKey() {
+        Order order = new Order();
+        OrderSummary orderSummary = new OrderSummary();
+
+        when(clientIdentity.resolve(request)).thenReturn("address:127.0.0.1");
+        when(orderService.placeOrderAsync(order, "address:127.0.0.1", "key-1")).thenReturn(CompletableFuture.completedFuture(orderSummary));
+
+        ResponseEntity<Object> response = orderController.createOrder("key-1", null, null, order, request).join();
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(orderSummary, response.getBody());
+    }
+
+    @Test
+    public void testCreateOrder_IdempotencyKeyReusedForDifferentOrder() {
+        Order order = new Order();
+
+        when(clientIdentity.resolve(request)).thenReturn("address:127.0.0.1");
+        when(orderService.placeOrderAsync(order, "address:127.0.0.1", "key-1")).thenReturn(CompletableFuture.failedFuture(
+                new IdempotencyKeyReusedException("Idempotency-Key key-1 was already used for a different order")));
+
+        ResponseEntity<Object> response = orderController.createOrder("key-1", null, null, order, request).join();
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+    }
+
+    @Test
+    public void testCreateOrder_RespondAsync_AcceptsOrder() {
+        Order order = new Order();
+        OrderSummary orderSummary = OrderSummary.builder().id(7).status(OrderStatus.PENDING).build();
+
+        when(orderService.acceptOrderAsync(order, null, null)).thenReturn(CompletableFuture.completedFuture(orderSummary));
+
+        ResponseEntity<Object> response = orderController.createOrder(null, OrderController.RESPOND_ASYNC, null, order, request).join();
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(orderSummary, response.getBody());
+        assertEquals("/orders/7/status", response.getHeaders().getLocation().toString());
+        assertEquals(OrderController.RESPOND_ASYNC, response.getHeaders().getFirst(OrderController.PREFERENCE_APPLIED_HEADER));
+        verify(orderService, never()).placeOrderAsync(any(), any(), any());
+    }
+
+    @Test
+    public void testCreateOrder_RespondAsync_QueueFull() {
+        Order order = new Order();
+
+        when(orderService.acceptOrderAsync(order, null, null))
+                .thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("Order placement queue is full")));
+
+        ResponseEntity<Object> response = orderController.createOrder(null, OrderController.RESPOND_ASYNC, null, order, request).join();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    }
+
+    @Test
+    public void testGetOrderStatus_Found() {
+        OrderStatusResult status = new OrderStatusResult(7, OrderStatus.REJECTED, "Book 1 is out of stock");
+        when(orderService.getOrderStatus(7)).thenReturn(status);
+
+        ResponseEntity<OrderStatusResult> response = orderController.getOrderStatus(7);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(status, response.getBody());
+    }
+
+    @Test
+    public void testGetOrderStatus_NotFound() {
+        when(orderService.getOrderStatus(7)).thenReturn(null);
+
+        ResponseEntity<OrderStatusResult> response = orderController.getOrderStatus(7);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void testCreateOrder_IdempotencyKeyTooLong() {
+        String idempotencyKey = "k".repeat(101);
+
+        ResponseEntity<Object> response = orderController.createOrder(idempotencyKey, null, null, new Order(), request).join();
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(orderService);
+    }
+
     @Test
     public void testCancelOrder_ExistingOrder() {
         int orderId = 1;
 
-        when(orderService.deleteOrder(orderId)).thenReturn(true);
+        when(orderService.deleteOrderAsync(orderId)).thenReturn(CompletableFuture.completedFuture(true));
 
-        ResponseEntity<Void> response = orderController.cancelOrder(orderId);
+        ResponseEntity<Void> response = orderController.cancelOrder(orderId).join();
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertNull(response.getBody());
@@ -98,12 +295,117 @@ public class OrderControllerTest {
     public void testCancelOrder_NonExistingOrder() {
         int orderId = 1;
 
-        when(orderService.deleteOrder(orderId)).thenReturn(false);
+        when(orderService.deleteOrderAsync(orderId)).thenReturn(CompletableFuture.completedFuture(false));
 
-        ResponseEntity<Void> response = orderController.cancelOrder(orderId);
+        ResponseEntity<Void> response = orderController.cancelOrder(orderId).join();
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
         assertNull(response.getBody());
     }
 
+    @Test
+    public void testCancelOrder_PendingOrder_ReturnsConflict() {
+        int orderId = 1;
+
+        when(orderService.deleteOrderAsync(orderId))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Order 1 is still being placed")));
+
+        ResponseEntity<Void> response = orderController.cancelOrder(orderId).join();
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    }
+
+    @Test
+    public void testCreateOrder_SummaryViewLeavesOutDescriptions() throws Exception {
+        Order order = new Order();
+        OrderSummary orderSummary = new OrderSummary(1, "John Doe", "123 Street", 10.0,
+                Collections.singletonList(new Book(1, "Title", "Author", "A long description", 10.0, 1)), OrderStatus.CONFIRMED);
+        when(orderService.placeOrderAsync(order, null, null)).thenReturn(CompletableFuture.completedFuture(orderSummary));
+
+        ResponseEntity<Object> response = orderController.createOrder(null, null, OrderController.SUMMARY_VIEW, order, request).join();
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        MappingJacksonValue body = (MappingJacksonValue) response.getBody();
+        String json = new ObjectMapper().writerWithView(body.getSerializationView()).writeValueAsString(body.getValue());
+        assertTrue(json.contains("\"title\":\"Title\""));
+        assertFalse(json.contains("description"));
+    }
+
+    @Test
+    public void testCreateOrder_BookServiceUnavailable() {
+        Order order = new Order();
+        when(orderService.placeOrderAsync(order, null, null)).thenReturn(CompletableFuture.failedFuture(
+                new BookServiceUnavailableException("Book service unavailable", null)));
+
+        ResponseEntity<Object> response = orderController.createOrder(null, null, null, order, request).join();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    }
+
+    @Test
+    public void testCreateOrders_Success() {
+        List<Order> orders = Arrays.asList(new Order(), new Order());
+        List<BatchItemResult> results = Arrays.asList(
+                BatchItemResult.builder().index(0).orderId(1).status(BatchItemStatus.CREATED).build(),
+                BatchItemResult.builder().index(1).status(BatchItemStatus.REJECTED).error("Book 1 is out of stock").build());
+        when(orderService.placeOrders(orders)).thenReturn(results);
+
+        ResponseEntity<Object> response = orderController.createOrders(null, orders);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(results, response.getBody());
+    }
+
+    @Test
+    public void testCreateOrders_BatchTooLarge() {
+        List<Order> orders = Collections.nCopies(OrderController.MAX_BATCH_SIZE + 1, new Order());
+
+        ResponseEntity<Object> response = orderController.createOrders(null, orders);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    public void testCancelOrders_Success() {
+        List<Integer> ids = Arrays.asList(1, 2);
+        List<BatchItemResult> results = Arrays.asList(
+                BatchItemResult.builder().index(0).orderId(1).status(BatchItemStatus.CANCELLED).build(),
+                BatchItemResult.builder().index(1).orderId(2).status(BatchItemStatus.NOT_FOUND).build());
+        when(orderService.deleteOrders(ids)).thenReturn(results);
+
+        ResponseEntity<Object> response = orderController.cancelOrders(ids);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(results, response.getBody());
+    }
+
+    @Test
+    public void testCancelOrders_EmptyBatch() {
+        ResponseEntity<Object> response = orderController.cancelOrders(Collections.emptyList());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    public void testExportOrders_StreamsCompressedFile() throws Exception {
+        Instant since = Instant.parse("2026-03-01T00:00:00Z");
+
+        ResponseEntity<StreamingResponseBody> response = orderController.exportOrders("CSV", 10, since);
+        response.getBody().writeTo(new ByteArrayOutputStream());
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("attachment; filename=\"orders.csv.gz\"", response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+        verify(orderExporter).export(eq(ExportFormat.CSV), eq(10), eq(since), isNull(), any(WritableByteChannel.class));
+    }
+
+    @Test
+    public void testExportOrders_UnknownFormat() {
+        ResponseEntity<StreamingResponseBody> response = orderController.exportOrders("xml", 0, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(orderExporter);
+    }
+
 }
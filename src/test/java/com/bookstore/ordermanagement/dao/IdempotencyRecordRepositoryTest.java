@@ -0,0 +1,57 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import javax.persistence.PersistenceException;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class IdempotencyRecordRepositoryTest {
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Test
+    public void save_SameKeyOtherClient_KeepsBoth() {
+        idempotencyRecordRepository.save(record("address:127.0.0.1", 1));
+        idempotencyRecordRepository.save(record("address:10.0.0.1", 2));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        assertEquals(1, idempotencyRecordRepository.findById(new IdempotencyRecord.Key("address:127.0.0.1", "key-1"))
+                .orElseThrow().getOrderId());
+        assertEquals(2, idempotencyRecordRepository.findById(new IdempotencyRecord.Key("address:10.0.0.1", "key-1"))
+                .orElseThrow().getOrderId());
+    }
+
+    @Test
+    public void save_KeyRecordedBefore_FailsInsteadOfOverwriting() {
+        idempotencyRecordRepository.save(record("address:127.0.0.1", 1));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        idempotencyRecordRepository.save(record("address:127.0.0.1", 2));
+
+        assertThrows(PersistenceException.class, testEntityManager::flush);
+    }
+
+    private static IdempotencyRecord record(String clientId, int orderId) {
+        return IdempotencyRecord.builder()
+                .clientId(clientId)
+                .idempotencyKey("key-1")
+                .requestHash("0".repeat(64))
+                .orderId(orderId)
+                .response("{}")
+                .createdAt(Instant.now())
+                .build();
+    }
+}
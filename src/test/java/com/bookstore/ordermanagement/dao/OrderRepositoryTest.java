@@ -0,0 +1,228 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+import com.bookstore.ordermanagement.models.OrderStatusResult;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class OrderRepositoryTest {
+
+    private static final int ORDER_COUNT = 30;
+
+    private static final int BOOK_LINES = 20;
+
+    /**
+     * Order insert and book detail insert batch, which writes the order ID too.
+     */
+    private static final int PREPARED_STATEMENTS_PER_ORDER = 2;
+
+    /**
+     * One call per pooled sequence at most: whether the IDs handed out to earlier tests still cover
+     * the order depends on how many orders those saved.
+     */
+    private static final int MAX_SEQUENCE_CALLS = 2;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    private Statistics statistics;
+
+    private int firstId;
+
+    @BeforeEach
+    public void setup() {
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            Order order = Order.builder()
+                    .customerName("customer " + i)
+                    .address("address " + i)
+                    .totalAmount(10.0 * i)
+                    .bookDetails(Arrays.asList(new BookDetail(0, i, 1), new BookDetail(0, i + 1, 2)))
+                    .build();
+            Order saved = orderRepository.save(order);
+            if (i == 0) {
+                firstId = saved.getId();
+            }
+        }
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        statistics = testEntityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void findById_LoadsBookDetailsInOneStatement() {
+        Optional<Order> order = orderRepository.findById(firstId);
+
+        assertTrue(order.isPresent());
+        assertEquals(2, order.get().getBookDetails().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void findByIdGreaterThan_LoadsPageWithBookDetailsInTwoStatements() {
+        List<Order> page = orderRepository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, ORDER_COUNT));
+        page.forEach(order -> assertEquals(2, order.getBookDetails().size()));
+
+        assertEquals(ORDER_COUNT, page.size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void save_OrderWithManyBookDetails_InsertsInJdbcBatches() {
+        List<BookDetail> bookDetails = IntStream.rangeClosed(1, BOOK_LINES)
+                .mapToObj(bookId -> new BookDetail(0, bookId, 1))
+                .collect(Collectors.toList());
+
+        orderRepository.save(Order.builder().customerName("customer").address("address").bookDetails(bookDetails).build());
+        testEntityManager.flush();
+
+        assertEquals(BOOK_LINES + 1, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= PREPARED_STATEMENTS_PER_ORDER + MAX_SEQUENCE_CALLS);
+    }
+
+    @Test
+    public void findByCustomerName_ReturnsKeysetPagesOfCustomer() {
+        List<Order> firstPage = orderRepository.findByCustomerNameAndIdGreaterThanOrderByIdAsc(
+                "customer 3", 0, PageRequest.of(0, 1));
+        List<Order> nextPage = orderRepository.findByCustomerNameAndIdGreaterThanOrderByIdAsc(
+                "customer 3", firstPage.get(0).getId(), PageRequest.of(0, 1));
+
+        assertEquals(1, firstPage.size());
+        assertEquals("customer 3", firstPage.get(0).getCustomerName());
+        assertTrue(nextPage.isEmpty());
+    }
+
+    @Test
+    public void findByBookId_ReturnsEachOrderContainingBookOnce() {
+        Order order = orderRepository.findById(firstId).orElseThrow();
+        order.getBookDetails().add(new BookDetail(0, 1, 5));
+        orderRepository.save(order);
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        List<Order> orders = orderRepository.findByBookIdAndIdGreaterThan(1, 0, PageRequest.of(0, ORDER_COUNT));
+
+        // book 1 is in the first two orders, and twice in the first one
+        assertEquals(Arrays.asList(firstId, firstId + 1), orders.stream().map(Order::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findByTotalAmountAfter_PagesThroughRangeByAmountAndId() {
+        List<Order> firstPage = orderRepository.findByTotalAmountAfter(50.0, 0, 100.0, PageRequest.of(0, 4));
+        Order last = firstPage.get(firstPage.size() - 1);
+        List<Order> nextPage = orderRepository.findByTotalAmountAfter(last.getTotalAmount(), last.getId(), 100.0,
+                PageRequest.of(0, 4));
+
+        assertEquals(Arrays.asList(50.0, 60.0, 70.0, 80.0),
+                firstPage.stream().map(Order::getTotalAmount).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(90.0, 100.0),
+                nextPage.stream().map(Order::getTotalAmount).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findIdsByStatus_ReturnsPendingOrdersAndTheirStatus() {
+        Order pending = orderRepository.findById(firstId + 2).orElseThrow(AssertionError::new);
+        pending.setStatus(OrderStatus.PENDING);
+        testEntityManager.flush();
+
+        assertEquals(Collections.singletonList(pending.getId()),
+                orderRepository.findIdsByStatus(OrderStatus.PENDING, 0, PageRequest.of(0, 10)));
+        assertEquals(OrderStatus.PENDING, orderRepository.findStatusById(pending.getId())
+                .map(OrderStatusResult::getStatus).orElse(null));
+        assertEquals(OrderStatus.CONFIRMED, orderRepository.findStatusById(firstId)
+                .map(OrderStatusResult::getStatus).orElse(null));
+    }
+
+    @Test
+    public void completePendingOrder_OnlyUpdatesOrdersStillPending() {
+        Order pending = orderRepository.findById(firstId + 2).orElseThrow(AssertionError::new);
+        pending.setStatus(OrderStatus.PENDING);
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        Order confirmed = Order.builder().id(firstId + 2).totalAmount(25.0).status(OrderStatus.CONFIRMED).build();
+        assertEquals(1, orderRepository.completePendingOrder(confirmed));
+        assertEquals(0, orderRepository.completePendingOrder(confirmed));
+        orderRepository.deleteById(firstId + 3);
+        testEntityManager.flush();
+        assertEquals(0, orderRepository.completePendingOrder(
+                Order.builder().id(firstId + 3).status(OrderStatus.CONFIRMED).build()));
+
+        testEntityManager.clear();
+        Order reloaded = orderRepository.findById(firstId + 2).orElseThrow(AssertionError::new);
+        assertEquals(OrderStatus.CONFIRMED, reloaded.getStatus());
+        assertEquals(25.0, reloaded.getTotalAmount(), 0.01);
+        assertFalse(orderRepository.findById(firstId + 3).isPresent());
+    }
+
+    @Test
+    public void sumByBookAndDay_AggregatesConfirmedOrdersOfIdRange() {
+        LocalDate day = LocalDate.of(2026, 3, 1);
+        List<Order> orders = orderRepository.findDistinctByIdIn(Arrays.asList(firstId, firstId + 1, firstId + 2, firstId + 4));
+        orders.forEach(order -> order.setPlacedAt(day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant()));
+        orders.stream().filter(order -> order.getId() == firstId + 2).forEach(order -> order.setPlacedAt(order.getPlacedAt().plus(Duration.ofDays(1))));
+        orders.stream().filter(order -> order.getId() == firstId + 4).forEach(order -> order.setStatus(OrderStatus.PENDING));
+        testEntityManager.flush();
+
+        Map<Integer, Long> copies = orderRepository.sumCopiesByBook(OrderStatus.CONFIRMED, firstId, firstId + 4).stream()
+                .collect(Collectors.toMap(BookSales::getBookId, BookSales::getCopies));
+        Map<LocalDate, DailyRevenue> days = new HashMap<>();
+        orderRepository.sumRevenueByDay(OrderStatus.CONFIRMED, firstId, firstId + 4).forEach(revenue -> days.put(revenue.getDate(), revenue));
+
+        assertEquals(Arrays.asList(1L, 3L, 3L, 3L, 2L), IntStream.range(0, 5).mapToObj(copies::get).collect(Collectors.toList()));
+        assertEquals(new DailyRevenue(day, 2, 10.0), days.get(day));
+        assertEquals(new DailyRevenue(day.plusDays(1), 1, 20.0), days.get(day.plusDays(1)));
+        assertEquals(new DailyRevenue(null, 1, 30.0), days.get(null));
+        assertEquals(3, days.size());
+    }
+
+    @Test
+    public void searchQueries_UseIndexes() {
+        assertUsesIndex("order_customer_name_idx",
+                "select * from \"order\" where \"customer_name\" = 'customer 3' and \"id\" > 0 order by \"id\"");
+        assertUsesIndex("book_detail_book_id_idx",
+                "select * from \"book_detail\" where \"book_id\" = 1 and \"order_id\" > 0 order by \"order_id\"");
+        assertUsesIndex("order_total_amount_idx",
+                "select * from \"order\" where \"total_amount\" >= 50 and \"total_amount\" <= 100"
+                        + " order by \"total_amount\", \"id\"");
+        assertUsesIndex("order_status_idx",
+                "select \"id\" from \"order\" where \"status\" = 'PENDING' and \"id\" > 0 order by \"id\"");
+    }
+
+    private void assertUsesIndex(String index, String sql) {
+        String plan = String.valueOf(testEntityManager.getEntityManager()
+                .createNativeQuery("explain " + sql).getSingleResult());
+        assertTrue(plan.contains(index), plan);
+    }
+
+}
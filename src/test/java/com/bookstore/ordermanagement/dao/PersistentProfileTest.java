@@ -0,0 +1,77 @@
+package com.bookstore.ordermanagement.dao;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the repositories against the H2 database file of the {@code persistent} profile.
+ */
+@DataJpaTest(properties = "orders.data-dir=./target/persistent-profile-test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("persistent")
+public class PersistentProfileTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Test
+    public void dataSource_IsFileBackedFixedSizePool() {
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+
+        assertTrue(hikari.getJdbcUrl().startsWith("jdbc:h2:file:./target/persistent-profile-test/"));
+        assertEquals("orders", hikari.getPoolName());
+        assertEquals(20, hikari.getMaximumPoolSize());
+        assertEquals(hikari.getMaximumPoolSize(), hikari.getMinimumIdle());
+    }
+
+    @Test
+    public void flyway_CreatesSchemaWithIndexes() {
+        assertNotNull(flyway.info().current());
+        assertEquals(0, flyway.info().pending().length);
+
+        Integer indexes = new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from information_schema.indexes where index_name in ("
+                        + "'order_customer_name_idx', 'order_total_amount_idx', "
+                        + "'book_detail_order_id_idx', 'book_detail_book_id_idx')", Integer.class);
+        assertEquals(4, indexes);
+    }
+
+    @Test
+    public void save_OrderWithBookDetails_IsReadBack() {
+        Order saved = orderRepository.save(Order.builder()
+                .customerName("customer")
+                .address("address")
+                .totalAmount(10.0)
+                .bookDetails(Collections.singletonList(new BookDetail(0, 1, 2)))
+                .build());
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        Order order = orderRepository.findById(saved.getId()).orElseThrow(AssertionError::new);
+        assertEquals("customer", order.getCustomerName());
+        assertEquals(1, order.getBookDetails().size());
+    }
+}
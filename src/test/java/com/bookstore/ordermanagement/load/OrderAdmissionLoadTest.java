@@ -0,0 +1,185 @@
+package com.bookstore.ordermanagement.load;
+
+import com.bookstore.ordermanagement.OrderManagementApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Places orders at a steady rate for a well-behaved client, alone and while another client floods
+ * {@code POST /orders}, with admission control enabled and disabled, and logs the latency
+ * percentiles of the well-behaved client and the responses of the flooding one. The book service
+ * answers after 50ms and the Tomcat pool is deliberately small.
+ * <p>
+ * The well-behaved client must place all its orders within {@value #MAX_P99_MILLIS}ms at the 99th
+ * percentile whenever admission control is enabled, flooded or not, and faster than without it under
+ * the flood. Only the runs with admission control may answer 429 Too Many Requests.
+ * <p>
+ * Excluded from the default build, run with {@code mvn test -P load-test}.
+ */
+@Tag("load")
+@Slf4j
+public class OrderAdmissionLoadTest {
+
+    private static final int TOMCAT_THREADS = 50;
+
+    private static final Duration DURATION = Duration.ofSeconds(10);
+
+    private static final int CLIENT_RATE = 10;
+
+    /**
+     * Admitted requests per second and client, so that the flooding client alone stays within what
+     * the service can place.
+     */
+    private static final int ADMITTED_RATE = 15;
+
+    /**
+     * Requests per second of the flooding client, which does not slow down when rejected.
+     */
+    private static final int FLOOD_RATE = 200;
+
+    private static final Duration FLOOD_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final long MAX_P99_MILLIS = 1000;
+
+    private static final String WELL_BEHAVED_ADDRESS = "192.0.2.1";
+
+    private static final String FLOODING_ADDRESS = "192.0.2.2";
+
+    private static final String ORDER_JSON =
+            "{\"customerName\":\"load test\",\"address\":\"somewhere\",\"bookDetails\":[{\"bookId\":1,\"orderedQuantity\":2}]}";
+
+    @Test
+    public void wellBehavedClientUnderAbuse() throws Exception {
+        try (StubBookService bookService = new StubBookService(Duration.ofMillis(50))) {
+            Result alone = run(bookService, true, false);
+            Result admitted = run(bookService, true, true);
+            Result unprotected = run(bookService, false, true);
+
+            log.info("{}", alone);
+            log.info("{}", admitted);
+            log.info("{}", unprotected);
+            assertEquals(alone.latencies.length, alone.succeeded, alone.toString());
+            assertEquals(admitted.latencies.length, admitted.succeeded, admitted.toString());
+            assertTrue(alone.percentileMillis(0.99) <= MAX_P99_MILLIS, alone.toString());
+            assertTrue(admitted.percentileMillis(0.99) <= MAX_P99_MILLIS, admitted.toString());
+            assertTrue(admitted.percentileMillis(0.99) < unprotected.percentileMillis(0.99), unprotected.toString());
+            assertTrue(admitted.floodStatuses.getOrDefault(429, 0) > 0, admitted.toString());
+            assertFalse(unprotected.floodStatuses.containsKey(429), unprotected.toString());
+        }
+    }
+
+    private Result run(StubBookService bookService, boolean admission, boolean flood) throws Exception {
+        String name = (admission ? "admission" : "no-admission") + (flood ? "-flood" : "-alone");
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(OrderManagementApplication.class)
+                // arguments, as they take precedence over application.yml unlike default properties
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--eureka.client.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.bookstore.ordermanagement.load=INFO",
+                        "--spring.cloud.discovery.client.simple.instances.book-service[0].uri=" + bookService.getUri(),
+                        "--spring.datasource.url=jdbc:h2:mem:" + name,
+                        "--orders.admission.enabled=" + admission,
+                        // both clients send from this machine, and are told apart by the address they forward
+                        "--orders.clients.trusted-proxies=127.0.0.1,0:0:0:0:0:0:0:1",
+                        "--orders.admission.client.rate=" + ADMITTED_RATE,
+                        "--orders.admission.client.burst=" + ADMITTED_RATE)) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/orders");
+            HttpClient client = HttpClient.newHttpClient();
+
+            // warm up
+            for (int i = 0; i < 50; i++) {
+                client.send(request(uri, WELL_BEHAVED_ADDRESS), HttpResponse.BodyHandlers.discarding());
+            }
+
+            ConcurrentHashMap<Integer, Integer> floodStatuses = new ConcurrentHashMap<>();
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            ConcurrentLinkedQueue<CompletableFuture<?>> responses = new ConcurrentLinkedQueue<>();
+            AtomicInteger succeeded = new AtomicInteger();
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+            if (flood) {
+                // a client of its own, so the flood does not queue up the well-behaved requests client side
+                HttpClient floodClient = HttpClient.newHttpClient();
+                HttpRequest floodRequest = HttpRequest.newBuilder(request(uri, FLOODING_ADDRESS), (header, value) -> true)
+                        .timeout(FLOOD_TIMEOUT)
+                        .build();
+                scheduler.scheduleAtFixedRate(() -> floodClient.sendAsync(floodRequest, HttpResponse.BodyHandlers.discarding())
+                                .whenComplete((response, e) -> floodStatuses.merge(e == null ? response.statusCode() : -1, 1, Integer::sum)),
+                        0, 1_000_000 / FLOOD_RATE, TimeUnit.MICROSECONDS);
+            }
+            HttpRequest request = request(uri, WELL_BEHAVED_ADDRESS);
+            scheduler.scheduleAtFixedRate(() -> {
+                long sent = System.nanoTime();
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, e) -> {
+                            latencies.add(System.nanoTime() - sent);
+                            if (e == null && response.statusCode() == 201) {
+                                succeeded.incrementAndGet();
+                            }
+                        }));
+            }, 0, 1000 / CLIENT_RATE, TimeUnit.MILLISECONDS);
+            scheduler.awaitTermination(DURATION.toMillis(), TimeUnit.MILLISECONDS);
+            scheduler.shutdownNow();
+            CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+            return new Result(name, succeeded.get(), latencies, floodStatuses);
+        }
+    }
+
+    private static HttpRequest request(URI uri, String clientAddress) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .header("X-Forwarded-For", clientAddress)
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER_JSON))
+                .build();
+    }
+
+    private static final class Result {
+
+        final String name;
+
+        final int succeeded;
+
+        final long[] latencies;
+
+        final ConcurrentHashMap<Integer, Integer> floodStatuses;
+
+        Result(String name, int succeeded, ConcurrentLinkedQueue<Long> latencies, ConcurrentHashMap<Integer, Integer> floodStatuses) {
+            this.name = name;
+            this.succeeded = succeeded;
+            this.latencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            this.floodStatuses = floodStatuses;
+        }
+
+        long percentileMillis(double percentile) {
+            return latencies[(int) Math.ceil(percentile * latencies.length) - 1] / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("run=%s requests=%d succeeded=%d p50=%dms p99=%dms max=%dms flood=%s",
+                    name, latencies.length, succeeded, percentileMillis(0.5), percentileMillis(0.99),
+                    percentileMillis(1.0), floodStatuses);
+        }
+    }
+}
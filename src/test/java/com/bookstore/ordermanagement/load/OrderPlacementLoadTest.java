@@ -0,0 +1,204 @@
+package com.bookstore.ordermanagement.load;
+
+import com.bookstore.ordermanagement.OrderManagementApplication;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Places the same load of orders against the blocking {@code RestTemplate} path and the
+ * non-blocking {@code orders.placement.async} path, with a book service that answers after 50ms
+ * and a deliberately small Tomcat pool, and logs throughput and latency percentiles of both.
+ * <p>
+ * Both bulkheads are sized to the request threads, so every blocking placement gets a permit and
+ * every order must be placed. Non-blocking placements are not bounded by threads: beyond
+ * {@code async-max-concurrent-calls} they are shed with 503 rather than queued, so that the calls
+ * admitted stay fast. The slow-call duration of the circuit breaker is raised for a machine that
+ * also runs the load and the book service. Both runs must keep the circuit breaker closed and answer
+ * within {@value #MAX_P99_MILLIS}ms at the 99th percentile, the non-blocking one faster than the
+ * blocking one, and each checks from the {@code User-Agent} of the calls the book service received
+ * that the mode under test actually placed the orders.
+ * <p>
+ * Excluded from the default build, run with {@code mvn test -P load-test}.
+ */
+@Tag("load")
+@Slf4j
+public class OrderPlacementLoadTest {
+
+    private static final int TOMCAT_THREADS = 50;
+
+    private static final int REQUESTS = 2000;
+
+    private static final int CONCURRENCY = 400;
+
+    /**
+     * The client, the application and the book service share the CPUs of one machine, so under this
+     * load a 50ms call is regularly slower than the 2s the production circuit breaker allows.
+     */
+    private static final String SLOW_CALL_DURATION = "10s";
+
+    /**
+     * Generous, as {@value #CONCURRENCY} requests queue for {@value #TOMCAT_THREADS} threads on a machine
+     * that also runs the load and the book service: a slower run has requests stuck, not queued.
+     */
+    private static final long MAX_P99_MILLIS = 15000;
+
+    private static final String REACTOR_NETTY = "ReactorNetty";
+
+    private static final String APACHE_HTTP_CLIENT = "Apache-HttpClient";
+
+    private static final String ORDER_JSON =
+            "{\"customerName\":\"load test\",\"address\":\"somewhere\",\"bookDetails\":[{\"bookId\":1,\"orderedQuantity\":2}]}";
+
+    @Test
+    public void compareBlockingAndAsyncPlacement() throws Exception {
+        try (StubBookService bookService = new StubBookService(Duration.ofMillis(50))) {
+            Result blocking = run(bookService, false);
+            Result async = run(bookService, true);
+
+            log.info("{}", blocking);
+            log.info("{}", async);
+            assertEquals(0, blocking.reactorNettyCalls, "blocking placements called the book service through the WebClient");
+            assertTrue(blocking.apacheHttpClientCalls >= REQUESTS, "blocking placements did not call the book service");
+            assertEquals(0, async.apacheHttpClientCalls, "async placements called the book service through the RestTemplate");
+            assertTrue(async.reactorNettyCalls >= async.succeeded, "async placements did not call the book service");
+            assertEquals(0, blocking.notPermittedCalls, "the circuit breaker opened during the blocking run");
+            assertEquals(0, async.notPermittedCalls, "the circuit breaker opened during the async run");
+            assertEquals(REQUESTS, blocking.succeeded);
+            assertEquals(REQUESTS, async.succeeded + async.shed, "async placements failed other than by being shed");
+            assertTrue(async.succeeded >= REQUESTS / 2, "async placements shed more than they placed");
+            assertTrue(blocking.percentileMillis(0.99) <= MAX_P99_MILLIS, blocking.toString());
+            assertTrue(async.percentileMillis(0.99) < blocking.percentileMillis(0.99), async.toString());
+        }
+    }
+
+    private Result run(StubBookService bookService, boolean async) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(OrderManagementApplication.class)
+                // arguments, as they take precedence over application.yml unlike default properties
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--eureka.client.enabled=false",
+                        "--spring.cloud.discovery.client.simple.instances.book-service[0].uri=" + bookService.getUri(),
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + async,
+                        "--orders.placement.async=" + async,
+                        "--orders.book-service.bulkhead.max-concurrent-calls=" + TOMCAT_THREADS,
+                        "--orders.book-service.bulkhead.async-max-concurrent-calls=" + TOMCAT_THREADS,
+                        "--orders.book-service.circuit-breaker.slow-call-duration=" + SLOW_CALL_DURATION,
+                        "--orders.admission.enabled=false")) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/orders");
+            HttpClient client = HttpClient.newHttpClient();
+            Counter notPermitted = context.getBean(MeterRegistry.class).find("resilience4j.circuitbreaker.not.permitted.calls")
+                    .tag("name", "book-service").counter();
+            assertNotNull(notPermitted);
+
+            // warm up, below both bulkheads
+            send(client, uri, 500, TOMCAT_THREADS, new long[500]);
+
+            int reactorNettyCalls = bookService.getRequestCount(REACTOR_NETTY);
+            int apacheHttpClientCalls = bookService.getRequestCount(APACHE_HTTP_CLIENT);
+            double notPermittedCalls = notPermitted.count();
+            long[] latencies = new long[REQUESTS];
+            long start = System.nanoTime();
+            int[] statuses = send(client, uri, REQUESTS, CONCURRENCY, latencies);
+            long elapsed = System.nanoTime() - start;
+            return new Result(async ? "async" : "blocking", statuses[0], statuses[1], elapsed, latencies,
+                    bookService.getRequestCount(REACTOR_NETTY) - reactorNettyCalls,
+                    bookService.getRequestCount(APACHE_HTTP_CLIENT) - apacheHttpClientCalls,
+                    (long) (notPermitted.count() - notPermittedCalls));
+        }
+    }
+
+    /**
+     * @return the number of 201 Created and of 503 Service Unavailable responses
+     */
+    private int[] send(HttpClient client, URI uri, int requests, int concurrency, long[] latencies) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger shed = new AtomicInteger();
+        CompletableFuture<?>[] responses = new CompletableFuture[requests];
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER_JSON))
+                .build();
+
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        latencies[index] = System.nanoTime() - sent;
+                        if (e == null && response.statusCode() == 201) {
+                            succeeded.incrementAndGet();
+                        } else if (e == null && response.statusCode() == 503) {
+                            shed.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        CompletableFuture.allOf(responses).exceptionally(e -> null).join();
+        return new int[]{succeeded.get(), shed.get()};
+    }
+
+    private static final class Result {
+
+        final String mode;
+
+        final int succeeded;
+
+        final int shed;
+
+        final long elapsedNanos;
+
+        final long[] latencies;
+
+        final int reactorNettyCalls;
+
+        final int apacheHttpClientCalls;
+
+        final long notPermittedCalls;
+
+        Result(String mode, int succeeded, int shed, long elapsedNanos, long[] latencies,
+               int reactorNettyCalls, int apacheHttpClientCalls, long notPermittedCalls) {
+            this.mode = mode;
+            this.succeeded = succeeded;
+            this.shed = shed;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.reactorNettyCalls = reactorNettyCalls;
+            this.apacheHttpClientCalls = apacheHttpClientCalls;
+            this.notPermittedCalls = notPermittedCalls;
+        }
+
+        long percentileMillis(double percentile) {
+            return latencies[(int) Math.ceil(percentile * latencies.length) - 1] / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mode=%s requests=%d succeeded=%d shed=%d throughput=%.0f/s p50=%dms p99=%dms max=%dms",
+                    mode, latencies.length, succeeded, shed, latencies.length / (elapsedNanos / 1e9),
+                    percentileMillis(0.5), percentileMillis(0.99), percentileMillis(1.0));
+        }
+    }
+}
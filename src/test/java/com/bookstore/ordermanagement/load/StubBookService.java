@@ -0,0 +1,121 @@
+package com.bookstore.ordermanagement.load;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the book service that answers {@code PUT /books/order} and
+ * {@code PUT /books/return} after a fixed latency, or after an injected one, see
+ * {@link #delayRequests(int, Duration)}. Every book is in stock at a price of 10.
+ */
+public class StubBookService implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Duration latency;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger delayedRequests = new AtomicInteger();
+
+    private final Map<String, AtomicInteger> requestsByClient = new ConcurrentHashMap<>();
+
+    private volatile Duration injectedLatency = Duration.ZERO;
+
+    public StubBookService(Duration latency) throws IOException {
+        // without it, Nagle's algorithm and delayed ACKs add ~40ms to every response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.latency = latency;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        server.createContext("/books/order", this::order);
+        server.createContext("/books/return", this::returnBooks);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getUri() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Answers the next {@code count} requests after {@code latency} instead of the fixed latency.
+     */
+    public void delayRequests(int count, Duration latency) {
+        injectedLatency = latency;
+        delayedRequests.set(count);
+    }
+
+    /**
+     * The number of requests received so far.
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * The number of requests received so far from HTTP clients whose {@code User-Agent} starts with
+     * the given product, e.g. {@code ReactorNetty} or {@code Apache-HttpClient}.
+     */
+    public int getRequestCount(String userAgent) {
+        return requestsByClient.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(userAgent))
+                .mapToInt(entry -> entry.getValue().get())
+                .sum();
+    }
+
+    private void order(HttpExchange exchange) throws IOException {
+        BookDetail[] bookDetails = objectMapper.readValue(exchange.getRequestBody(), BookDetail[].class);
+        List<Book> books = new ArrayList<>(bookDetails.length);
+        for (BookDetail bookDetail : bookDetails) {
+            books.add(new Book(bookDetail.getBookId(), "Book " + bookDetail.getBookId(), "Author", "Description", 10.0, 100));
+        }
+        respond(exchange, objectMapper.writeValueAsBytes(books));
+    }
+
+    private void returnBooks(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        respond(exchange, "true".getBytes());
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        requests.incrementAndGet();
+        String userAgent = exchange.getRequestHeaders().getFirst("User-Agent");
+        requestsByClient.computeIfAbsent(userAgent != null ? userAgent : "", key -> new AtomicInteger()).incrementAndGet();
+        Duration delay = delayedRequests.getAndUpdate(count -> Math.max(count - 1, 0)) > 0 ? injectedLatency : latency;
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
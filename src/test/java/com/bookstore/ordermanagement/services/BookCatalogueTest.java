@@ -0,0 +1,104 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BookCatalogueTest {
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BookCatalogue bookCatalogue;
+
+    @BeforeEach
+    public void setup() {
+        bookCatalogue = new BookCatalogue(restTemplate, BookServiceGuardTest.newGuard(meterRegistry), meterRegistry, 100, Duration.ofMinutes(5), false, null);
+    }
+
+    @Test
+    public void validate_UncachedBook_IsAccepted() {
+        assertDoesNotThrow(() -> bookCatalogue.validate(Collections.singletonList(new BookDetail(0, 1, 3))));
+    }
+
+    @Test
+    public void validate_InsufficientCachedStock_IsRejected() {
+        bookCatalogue.putAll(Collections.singletonList(new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 2)));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> bookCatalogue.validate(Collections.singletonList(new BookDetail(0, 1, 3))));
+        assertEquals("Book with ID 1 has only 2 copies in stock", exception.getMessage());
+    }
+
+    @Test
+    public void validate_CopiesHeldByStockLedger_CountAsInStock() {
+        StockLedger stockLedger = mock(StockLedger.class);
+        when(stockLedger.getHeld(1)).thenReturn(4L);
+        bookCatalogue = new BookCatalogue(restTemplate, BookServiceGuardTest.newGuard(meterRegistry), meterRegistry, 100,
+                Duration.ofMinutes(5), false, stockLedger);
+        // the book service's quantity after leasing, without the copies leased to this instance
+        bookCatalogue.putAll(Collections.singletonList(new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 2)));
+
+        assertDoesNotThrow(() -> bookCatalogue.validate(Collections.singletonList(new BookDetail(0, 1, 6))));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> bookCatalogue.validate(Collections.singletonList(new BookDetail(0, 1, 7))));
+        assertEquals("Book with ID 1 has only 6 copies in stock", exception.getMessage());
+    }
+
+    @Test
+    public void validate_BookMissingFromRefreshedCatalogue_IsRejected() {
+        Book[] allBooks = {
+                new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 5),
+                new Book(2, "Book 2", "Author 2", "Description 2", 12.0, 5)
+        };
+        when(restTemplate.getForEntity(BookCatalogue.BOOKS_URL, Book[].class)).thenReturn(new ResponseEntity<>(allBooks, HttpStatus.OK));
+        bookCatalogue.refresh();
+
+        assertDoesNotThrow(() -> bookCatalogue.validate(Arrays.asList(new BookDetail(0, 1, 1), new BookDetail(0, 2, 1))));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> bookCatalogue.validate(Collections.singletonList(new BookDetail(0, 3, 1))));
+        assertEquals("Book not found with ID: 3", exception.getMessage());
+    }
+
+    @Test
+    public void putAll_CachesCopyOfBook() {
+        Book book = new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 5);
+        bookCatalogue.putAll(Collections.singletonList(book));
+        book.setQuantity(1);
+
+        assertEquals(5, bookCatalogue.get(1).getQuantity());
+    }
+
+    @Test
+    public void invalidateAll_DropsReturnedBooks() {
+        bookCatalogue.putAll(Collections.singletonList(new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 0)));
+
+        bookCatalogue.invalidateAll(Collections.singletonList(new BookDetail(0, 1, 1)));
+
+        assertNull(bookCatalogue.get(1));
+    }
+
+    @Test
+    public void get_RecordsHitsAndMisses() {
+        bookCatalogue.putAll(Collections.singletonList(new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 5)));
+
+        bookCatalogue.get(1);
+        bookCatalogue.get(2);
+
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "bookCatalogue").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "bookCatalogue").tag("result", "miss").functionCounter().count());
+    }
+}
@@ -0,0 +1,161 @@
+package com.bookstore.ordermanagement.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.BookReservation;
+import com.bookstore.ordermanagement.models.BookReservationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BookReservationBatcherTest {
+
+    private static final int OUT_OF_STOCK_BOOK_ID = 99;
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+    private BookReservationBatcher batcher;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        batcher.stop();
+    }
+
+    @Test
+    public void reserveAsync_ConcurrentReservations_AreSentInOneBatch() throws Exception {
+        startBatcher(50, Duration.ofMillis(200));
+        stubBookService();
+
+        List<CompletableFuture<List<Book>>> results = new ArrayList<>();
+        for (int bookId = 1; bookId <= 20; bookId++) {
+            results.add(batcher.reserveAsync(Collections.singletonList(new BookDetail(0, bookId, 1))));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            List<Book> books = results.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(1, books.size());
+            assertEquals(i + 1, books.get(0).getId());
+        }
+        verify(restTemplate, times(1)).exchange(eq(BookReservationClient.BATCH_URL), eq(HttpMethod.PUT),
+                any(HttpEntity.class), eq(BookReservationResult[].class));
+    }
+
+    @Test
+    public void reserveAsync_MoreThanMaxBatchSize_IsSplitIntoBatches() throws Exception {
+        startBatcher(5, Duration.ofMillis(200));
+        stubBookService();
+
+        List<CompletableFuture<List<Book>>> results = new ArrayList<>();
+        for (int bookId = 1; bookId <= 12; bookId++) {
+            results.add(batcher.reserveAsync(Collections.singletonList(new BookDetail(0, bookId, 1))));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        verify(restTemplate, times(3)).exchange(eq(BookReservationClient.BATCH_URL), eq(HttpMethod.PUT),
+                any(HttpEntity.class), eq(BookReservationResult[].class));
+    }
+
+    @Test
+    public void reserve_RejectedOrder_DoesNotFailOtherOrdersOfBatch() throws Exception {
+        startBatcher(50, Duration.ofMillis(200));
+        stubBookService();
+
+        CompletableFuture<List<Book>> accepted =
+                batcher.reserveAsync(Collections.singletonList(new BookDetail(0, 1, 1)));
+        CompletableFuture<List<Book>> rejected =
+                batcher.reserveAsync(Collections.singletonList(new BookDetail(0, OUT_OF_STOCK_BOOK_ID, 1)));
+
+        assertEquals(1, accepted.get(5, TimeUnit.SECONDS).get(0).getId());
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        assertEquals("Book 99 is out of stock", exception.getCause().getMessage());
+    }
+
+    @Test
+    public void reserve_BookServiceUnavailable_FailsWholeBatch() {
+        startBatcher(50, Duration.ofMillis(10));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(BookReservationResult[].class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        assertThrows(ResourceAccessException.class,
+                () -> batcher.reserve(Collections.singletonList(new BookDetail(0, 1, 1))));
+    }
+
+    @Test
+    public void reserve_QueuedBehindSlowBatch_GivesUpWithoutSending() throws Exception {
+        startBatcher(1, Duration.ofMillis(1));
+        CountDownLatch slowBatchSent = new CountDownLatch(1);
+        CountDownLatch bookServiceAnswers = new CountDownLatch(1);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(BookReservationResult[].class)))
+                .thenAnswer(invocation -> {
+                    slowBatchSent.countDown();
+                    bookServiceAnswers.await(5, TimeUnit.SECONDS);
+                    return answerBatch(invocation);
+                });
+
+        CompletableFuture<List<Book>> slow = batcher.reserveAsync(Collections.singletonList(new BookDetail(0, 1, 1)));
+        assertTrue(slowBatchSent.await(5, TimeUnit.SECONDS));
+        assertThrows(BookServiceUnavailableException.class,
+                () -> batcher.reserve(Collections.singletonList(new BookDetail(0, 2, 1))));
+        bookServiceAnswers.countDown();
+
+        assertEquals(1, slow.get(5, TimeUnit.SECONDS).get(0).getId());
+        verify(restTemplate, after(200).times(1)).exchange(anyString(), eq(HttpMethod.PUT),
+                any(HttpEntity.class), eq(BookReservationResult[].class));
+    }
+
+    private void startBatcher(int maxBatchSize, Duration maxWait) {
+        BookReservationClient client = new BookReservationClient(restTemplate, BookServiceGuardTest.newGuard(new SimpleMeterRegistry()));
+        batcher = new BookReservationBatcher(client, maxBatchSize, maxWait, 1000, Duration.ofMillis(200));
+        batcher.start();
+    }
+
+    /**
+     * Stubs the batch endpoint of the book service: every book is in stock at a price of 10,
+     * except {@link #OUT_OF_STOCK_BOOK_ID}.
+     */
+    private void stubBookService() {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(BookReservationResult[].class)))
+                .thenAnswer(this::answerBatch);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResponseEntity<BookReservationResult[]> answerBatch(InvocationOnMock invocation) {
+        HttpEntity<List<BookReservation>> request = invocation.getArgument(2);
+        List<BookReservation> reservations = request.getBody();
+        BookReservationResult[] results = new BookReservationResult[reservations.size()];
+        for (int i = 0; i < results.length; i++) {
+            BookReservation reservation = reservations.get(i);
+            List<Book> books = new ArrayList<>();
+            String error = null;
+            for (BookDetail bookDetail : reservation.getBookDetails()) {
+                if (bookDetail.getBookId() == OUT_OF_STOCK_BOOK_ID) {
+                    error = "Book " + OUT_OF_STOCK_BOOK_ID + " is out of stock";
+                }
+                books.add(new Book(bookDetail.getBookId(), "Book " + bookDetail.getBookId(), "Author", "Description", 10.0, 5));
+            }
+            results[i] = new BookReservationResult(reservation.getReservationId(), error == null ? books : null, error);
+        }
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+}
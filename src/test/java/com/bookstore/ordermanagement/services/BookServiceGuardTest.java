@@ -0,0 +1,182 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.load.StubBookService;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the guarded calls against a local stub of the book service with injected latency.
+ */
+public class BookServiceGuardTest {
+
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final int MAX_CONCURRENT_CALLS = 2;
+
+    private static final int MINIMUM_CALLS = 4;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private StubBookService bookService;
+
+    private RestTemplate restTemplate;
+
+    private BookServiceGuard guard;
+
+    /**
+     * A guard with the defaults of application.yml.
+     */
+    static BookServiceGuard newGuard(MeterRegistry meterRegistry) {
+        return new BookServiceGuard(meterRegistry, 50, Duration.ofSeconds(2), 80, 20, 10,
+                Duration.ofSeconds(10), 32, Duration.ZERO, 100);
+    }
+
+    @BeforeEach
+    public void setup() throws IOException {
+        bookService = new StubBookService(Duration.ZERO);
+        restTemplate = new RestTemplateBuilder()
+                .rootUri(bookService.getUri())
+                .setReadTimeout(READ_TIMEOUT)
+                .build();
+        guard = new BookServiceGuard(meterRegistry, 50, Duration.ofSeconds(2), 80, MINIMUM_CALLS, MINIMUM_CALLS,
+                Duration.ofMinutes(1), MAX_CONCURRENT_CALLS, Duration.ZERO, MAX_CONCURRENT_CALLS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        bookService.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void call_SlowBookService_FailsAtReadTimeout() {
+        bookService.delayRequests(1, Duration.ofSeconds(3));
+
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> guard.call(this::orderBook));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(3)) < 0);
+    }
+
+    @Test
+    public void call_RepeatedTimeouts_OpensCircuitAndFailsFast() {
+        bookService.delayRequests(MINIMUM_CALLS, Duration.ofSeconds(2));
+        for (int i = 0; i < MINIMUM_CALLS; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.call(this::orderBook));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, guard.getState());
+        assertThrows(BookServiceUnavailableException.class, () -> guard.call(this::orderBook));
+        assertEquals(MINIMUM_CALLS, bookService.getRequestCount());
+        assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", BookServiceGuard.NAME).tag("state", "open").gauge().value());
+    }
+
+    @Test
+    public void call_ClientErrors_DoNotOpenCircuit() {
+        for (int i = 0; i < MINIMUM_CALLS; i++) {
+            assertThrows(HttpClientErrorException.class, () -> guard.call(() -> {
+                throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Book 1 is out of stock", null, null, null);
+            }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, guard.getState());
+        assertEquals(HttpStatus.OK, guard.call(this::orderBook).getStatusCode());
+    }
+
+    @Test
+    public void call_TooManyConcurrentCalls_AreRejectedByBulkhead() throws Exception {
+        bookService.delayRequests(MAX_CONCURRENT_CALLS, Duration.ofMillis(300));
+        CompletableFuture<?>[] inFlight = new CompletableFuture<?>[MAX_CONCURRENT_CALLS];
+        for (int i = 0; i < MAX_CONCURRENT_CALLS; i++) {
+            inFlight[i] = CompletableFuture.supplyAsync(() -> guard.call(this::orderBook), executor);
+        }
+        while (bookService.getRequestCount() < MAX_CONCURRENT_CALLS) {
+            Thread.sleep(5);
+        }
+
+        assertThrows(BookServiceUnavailableException.class, () -> guard.call(this::orderBook));
+        assertEquals(0.0, meterRegistry.get("resilience4j.bulkhead.available.concurrent.calls")
+                .tag("name", BookServiceGuard.NAME).gauge().value());
+        CompletableFuture.allOf(inFlight).join();
+        assertEquals(MAX_CONCURRENT_CALLS, bookService.getRequestCount());
+    }
+
+    @Test
+    public void callAsync_BlockingBulkheadFull_UsesOwnBulkhead() throws Exception {
+        bookService.delayRequests(MAX_CONCURRENT_CALLS * 2, Duration.ofMillis(300));
+        CompletableFuture<?>[] inFlight = new CompletableFuture<?>[MAX_CONCURRENT_CALLS * 2];
+        for (int i = 0; i < MAX_CONCURRENT_CALLS; i++) {
+            inFlight[i] = CompletableFuture.supplyAsync(() -> guard.call(this::orderBook), executor);
+        }
+        while (bookService.getRequestCount() < MAX_CONCURRENT_CALLS) {
+            Thread.sleep(5);
+        }
+        for (int i = MAX_CONCURRENT_CALLS; i < inFlight.length; i++) {
+            inFlight[i] = guard.callAsync(() -> CompletableFuture.supplyAsync(this::orderBook, executor));
+        }
+
+        CompletableFuture<ResponseEntity<String>> rejected = guard.callAsync(() -> CompletableFuture.supplyAsync(this::orderBook, executor));
+        ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(e.getCause() instanceof BookServiceUnavailableException);
+        CompletableFuture.allOf(inFlight).join();
+        assertEquals(MAX_CONCURRENT_CALLS * 2, bookService.getRequestCount());
+    }
+
+    @Test
+    public void hedgedCall_SlowFirstAttempt_ReturnsAnswerOfSecondAttempt() {
+        bookService.delayRequests(1, Duration.ofSeconds(2));
+
+        long start = System.nanoTime();
+        ResponseEntity<Boolean> response = guard.hedgedCall(this::returnBook, Duration.ofMillis(50), executor);
+
+        assertEquals(Boolean.TRUE, response.getBody());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+        assertEquals(2, bookService.getRequestCount());
+        assertEquals(1.0, meterRegistry.get("orders.book.service.hedged").counter().count());
+    }
+
+    @Test
+    public void hedgedCall_FastFirstAttempt_IsNotHedged() {
+        ResponseEntity<Boolean> response = guard.hedgedCall(this::returnBook, Duration.ofSeconds(1), executor);
+
+        assertEquals(Boolean.TRUE, response.getBody());
+        assertEquals(1, bookService.getRequestCount());
+        assertEquals(0.0, meterRegistry.get("orders.book.service.hedged").counter().count());
+    }
+
+    private ResponseEntity<String> orderBook() {
+        return restTemplate.exchange("/books/order", HttpMethod.PUT,
+                new HttpEntity<>(Collections.singletonList(new BookDetail(0, 1, 1))), String.class);
+    }
+
+    private ResponseEntity<Boolean> returnBook() {
+        return restTemplate.exchange("/books/return", HttpMethod.PUT,
+                new HttpEntity<>(Collections.singletonList(new BookDetail(0, 1, 1))), Boolean.class);
+    }
+}
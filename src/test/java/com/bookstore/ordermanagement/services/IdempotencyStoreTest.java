@@ -0,0 +1,202 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.IdempotencyRecordRepository;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.OrderSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class IdempotencyStoreTest {
+
+    private static final String CLIENT = "address:127.0.0.1";
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository = mock(IdempotencyRecordRepository.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private IdempotencyStore idempotencyStore;
+
+    private final AtomicInteger placements = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() {
+        idempotencyStore = newStore();
+        when(idempotencyRecordRepository.findById(any())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    public void execute_SameKey_PlacesOrderOnce() {
+        OrderSummary first = idempotencyStore.execute(request(CLIENT, "key-1", order(2)), this::place).join();
+        OrderSummary replay = idempotencyStore.execute(request(CLIENT, "key-1", order(2)), this::place).join();
+
+        assertEquals(1, placements.get());
+        assertSame(first, replay);
+    }
+
+    @Test
+    public void execute_SameKeyOtherClient_PlacesOrderAgain() {
+        OrderSummary first = idempotencyStore.execute(request(CLIENT, "key-1", order(2)), this::place).join();
+        OrderSummary other = idempotencyStore.execute(request("address:10.0.0.1", "key-1", order(2)), this::place).join();
+
+        assertEquals(2, placements.get());
+        assertNotEquals(first.getId(), other.getId());
+    }
+
+    @Test
+    public void execute_SameKeyDifferentOrder_FailsWithoutPlacing() {
+        idempotencyStore.execute(request(CLIENT, "key-1", order(2)), this::place).join();
+
+        CompletableFuture<OrderSummary> reused = idempotencyStore.execute(request(CLIENT, "key-1", order(3)), this::place);
+
+        CompletionException exception = assertThrows(CompletionException.class, reused::join);
+        assertTrue(exception.getCause() instanceof IdempotencyKeyReusedException);
+        assertEquals(1, placements.get());
+    }
+
+    @Test
+    public void execute_RetryWhileInFlight_WaitsForOriginal() {
+        CompletableFuture<OrderSummary> inFlight = new CompletableFuture<>();
+
+        CompletableFuture<OrderSummary> original = idempotencyStore.execute(request(CLIENT, "key-1", order(2)), () -> inFlight);
+        CompletableFuture<OrderSummary> retry = idempotencyStore.execute(request(CLIENT, "key-1", order(2)), this::place);
+        assertFalse(retry.isDone());
+
+        OrderSummary orderSummary = summary(7);
+        inFlight.complete(orderSummary);
+
+        assertSame(orderSummary, original.join());
+        assertSame(orderSummary, retry.join());
+        assertEquals(0, placements.get());
+    }
+
+    @Test
+    public void execute_FailedPlacement_CanBeRetried() {
+        CompletableFuture<OrderSummary> failed = idempotencyStore.execute(request(CLIENT, "key-1", order(2)),
+                () -> CompletableFuture.failedFuture(new IllegalArgumentException("Book 1 is out of stock")));
+        assertThrows(CompletionException.class, failed::join);
+
+        OrderSummary retried = idempotencyStore.execute(request(CLIENT, "key-1", order(2)), this::place).join();
+
+        assertEquals(1, placements.get());
+        assertEquals(1, retried.getId());
+    }
+
+    @Test
+    public void execute_PersistedKey_IsReplayedAfterRestart() {
+        IdempotentRequest request = request(CLIENT, "key-1", order(2));
+        OrderSummary original = idempotencyStore.execute(request, () -> place().thenApply(orderSummary -> {
+            idempotencyStore.record(request, orderSummary);
+            return orderSummary;
+        })).join();
+        IdempotencyRecord record = savedRecord();
+        when(idempotencyRecordRepository.findById(request.getKey())).thenReturn(Optional.of(record));
+
+        OrderSummary replay = newStore().execute(request(CLIENT, "key-1", order(2)), this::place).join();
+
+        assertEquals(1, placements.get());
+        assertEquals(original, replay);
+    }
+
+    @Test
+    public void execute_PersistedKeyDifferentOrder_FailsWithoutPlacing() {
+        IdempotentRequest request = request(CLIENT, "key-1", order(2));
+        idempotencyStore.record(request, summary(1));
+        IdempotencyRecord record = savedRecord();
+        when(idempotencyRecordRepository.findById(request.getKey())).thenReturn(Optional.of(record));
+
+        CompletableFuture<OrderSummary> reused = newStore().execute(request(CLIENT, "key-1", order(3)), this::place);
+
+        CompletionException exception = assertThrows(CompletionException.class, reused::join);
+        assertTrue(exception.getCause() instanceof IdempotencyKeyReusedException);
+        assertEquals(0, placements.get());
+    }
+
+    @Test
+    public void execute_KeyRecordedByAnotherInstance_ReplaysItsOrder() {
+        IdempotentRequest request = request(CLIENT, "key-1", order(2));
+        idempotencyStore.record(request, summary(5));
+        IdempotencyRecord recordedMeanwhile = savedRecord();
+
+        OrderSummary replay = idempotencyStore.execute(request, () -> {
+            when(idempotencyRecordRepository.findById(request.getKey())).thenReturn(Optional.of(recordedMeanwhile));
+            return CompletableFuture.failedFuture(new DataIntegrityViolationException("duplicate key"));
+        }).join();
+
+        assertEquals(5, replay.getId());
+    }
+
+    @Test
+    public void record_KeepsClientKeyAndRequestHash() {
+        IdempotentRequest request = request(CLIENT, "key-1", order(2));
+
+        idempotencyStore.record(request, summary(1));
+
+        IdempotencyRecord record = savedRecord();
+        assertEquals(CLIENT, record.getClientId());
+        assertEquals("key-1", record.getIdempotencyKey());
+        assertEquals(request.getRequestHash(), record.getRequestHash());
+        assertEquals(64, record.getRequestHash().length());
+        assertEquals(1, record.getOrderId());
+    }
+
+    @Test
+    public void purgeExpiredRecords_DeletesRecordsOlderThanRetention() {
+        idempotencyStore.purgeExpiredRecords();
+
+        ArgumentCaptor<Instant> createdBefore = ArgumentCaptor.forClass(Instant.class);
+        verify(idempotencyRecordRepository).deleteCreatedBefore(createdBefore.capture());
+        assertTrue(createdBefore.getValue().isBefore(Instant.now().minus(Duration.ofHours(23))));
+    }
+
+    private IdempotencyStore newStore() {
+        return new IdempotencyStore(idempotencyRecordRepository, objectMapper, new SimpleMeterRegistry(),
+                100, Duration.ofHours(1), Duration.ofDays(1));
+    }
+
+    private IdempotentRequest request(String clientId, String idempotencyKey, Order order) {
+        return idempotencyStore.request(clientId, idempotencyKey, order);
+    }
+
+    private IdempotencyRecord savedRecord() {
+        ArgumentCaptor<IdempotencyRecord> saved = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(idempotencyRecordRepository).save(saved.capture());
+        return saved.getValue();
+    }
+
+    private CompletableFuture<OrderSummary> place() {
+        return CompletableFuture.completedFuture(summary(placements.incrementAndGet()));
+    }
+
+    private static Order order(int orderedQuantity) {
+        return Order.builder()
+                .customerName("John Doe")
+                .address("123 Street")
+                .bookDetails(Collections.singletonList(new BookDetail(0, 1, orderedQuantity)))
+                .build();
+    }
+
+    private static OrderSummary summary(int id) {
+        return new OrderSummary(id, "John Doe", "123 Street", 20.0,
+                Collections.singletonList(new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 2)), OrderStatus.CONFIRMED);
+    }
+}
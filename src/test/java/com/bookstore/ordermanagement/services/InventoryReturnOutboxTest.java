@@ -0,0 +1,283 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.InventoryReturnRepository;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.InventoryReturn;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class InventoryReturnOutboxTest {
+
+    private final InventoryReturnRepository inventoryReturnRepository = mock(InventoryReturnRepository.class);
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private InventoryReturnOutbox outbox;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    @BeforeEach
+    public void setup() {
+        outbox = new InventoryReturnOutbox(inventoryReturnRepository, restTemplate, objectMapper, meterRegistry,
+                100, Duration.ofSeconds(1), Duration.ofMinutes(5), BookServiceGuardTest.newGuard(meterRegistry),
+                Duration.ZERO, Runnable::run, Duration.ofMinutes(1), transactionTemplate);
+        when(inventoryReturnRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.empty());
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> inTransaction(() ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null)));
+        doAnswer(invocation -> inTransaction(() -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        })).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    public void enqueue_RecordsBookDetailsOfOrder() throws Exception {
+        Order order = new Order(7, "John Doe", "123 Street", 20.0, Collections.singletonList(new BookDetail(1, 3, 2)), OrderStatus.CONFIRMED, null, null);
+
+        outbox.enqueue(order);
+
+        ArgumentCaptor<InventoryReturn> saved = ArgumentCaptor.forClass(InventoryReturn.class);
+        verify(inventoryReturnRepository).save(saved.capture());
+        assertEquals(7, saved.getValue().getOrderId());
+        BookDetail[] bookDetails = objectMapper.readValue(saved.getValue().getBookDetails(), BookDetail[].class);
+        assertEquals(3, bookDetails[0].getBookId());
+        assertEquals(2, bookDetails[0].getOrderedQuantity());
+    }
+
+    @Test
+    public void dispatch_SendsDueReturnsInOneCallAndDeletesThem() throws Exception {
+        List<InventoryReturn> due = Arrays.asList(inventoryReturn(1, 10), inventoryReturn(2, 20));
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class))).thenReturn(due);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenReturn(new ResponseEntity<>(true, HttpStatus.OK));
+
+        outbox.dispatch();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<HttpEntity<List<BookDetail>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restTemplate, times(1)).exchange(eq(InventoryReturnOutbox.BOOK_RETURN_URL), eq(HttpMethod.PUT),
+                request.capture(), eq(boolean.class));
+        assertEquals(2, request.getValue().getBody().size());
+        assertEquals(InventoryReturnOutbox.idempotencyKey(due),
+                request.getValue().getHeaders().getFirst(InventoryReturnOutbox.IDEMPOTENCY_KEY_HEADER));
+        verify(inventoryReturnRepository).postpone(eq(Arrays.asList(1L, 2L)), any(Instant.class));
+        verify(inventoryReturnRepository).deleteByIds(Arrays.asList(1L, 2L));
+        assertEquals(2.0, meterRegistry.get("orders.outbox.dispatched").counter().count());
+    }
+
+    @Test
+    public void dispatch_CallsBookServiceBetweenClaimAndCompletionTransactions() throws Exception {
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(inventoryReturn(1, 10)));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenAnswer(invocation -> {
+                    assertFalse(inTransaction.get(), "book service called in a transaction");
+                    assertEquals(1, transactions.get(), "book service called before the claim or after the completion");
+                    return new ResponseEntity<>(true, HttpStatus.OK);
+                });
+
+        Instant before = Instant.now();
+        outbox.dispatch();
+
+        assertEquals(2, transactions.get());
+        verify(restTemplate).exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class));
+        ArgumentCaptor<Instant> leaseUntil = ArgumentCaptor.forClass(Instant.class);
+        verify(inventoryReturnRepository).postpone(eq(Collections.singletonList(1L)), leaseUntil.capture());
+        assertFalse(leaseUntil.getValue().isBefore(before.plus(Duration.ofMinutes(1))));
+    }
+
+    @Test
+    public void dispatch_RefusedBatch_RetriesReturnsIndividually() throws Exception {
+        InventoryReturn good = inventoryReturn(1, 10);
+        InventoryReturn bad = inventoryReturn(2, 20);
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(good, bad));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenAnswer(invocation -> {
+                    List<BookDetail> bookDetails = invocation.<HttpEntity<List<BookDetail>>>getArgument(2).getBody();
+                    if (bookDetails.stream().anyMatch(bookDetail -> bookDetail.getBookId() == 20)) {
+                        throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                                "Book 20 does not exist".getBytes(), null);
+                    }
+                    return new ResponseEntity<>(true, HttpStatus.OK);
+                });
+
+        outbox.dispatch();
+
+        verify(inventoryReturnRepository).deleteByIds(Collections.singletonList(1L));
+        verify(inventoryReturnRepository).reschedule(eq(2L), eq(1), any(Instant.class));
+        assertEquals(1, bad.getAttempts());
+        assertTrue(bad.getNextAttemptAt().isAfter(Instant.now()));
+        assertEquals(1.0, meterRegistry.get("orders.outbox.failures").counter().count());
+    }
+
+    @Test
+    public void dispatch_TimedOutBatch_ReschedulesWholeBatchWithoutSplitting() throws Exception {
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(inventoryReturn(1, 10), inventoryReturn(2, 20)));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenThrow(new ResourceAccessException("Read timed out"));
+
+        outbox.dispatch();
+
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class));
+        verify(inventoryReturnRepository, never()).deleteByIds(any());
+        verify(inventoryReturnRepository).reschedule(eq(1L), eq(1), any(Instant.class));
+        verify(inventoryReturnRepository).reschedule(eq(2L), eq(1), any(Instant.class));
+    }
+
+    @Test
+    public void dispatch_RefusedBatchAfterLeaseExpired_LeavesReturnsToNextClaim() throws Exception {
+        outbox = new InventoryReturnOutbox(inventoryReturnRepository, restTemplate, objectMapper, meterRegistry,
+                100, Duration.ofSeconds(1), Duration.ofMinutes(5), BookServiceGuardTest.newGuard(meterRegistry),
+                Duration.ZERO, Runnable::run, Duration.ZERO, transactionTemplate);
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(inventoryReturn(1, 10), inventoryReturn(2, 20)));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                        new byte[0], null));
+
+        outbox.dispatch();
+
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class));
+        verify(inventoryReturnRepository, never()).deleteByIds(any());
+        verify(inventoryReturnRepository, never()).reschedule(anyLong(), anyInt(), any(Instant.class));
+    }
+
+    @Test
+    public void dispatch_HedgedReturn_SendsSameIdempotencyKeyTwice() throws Exception {
+        ExecutorService hedgeExecutor = Executors.newCachedThreadPool();
+        outbox = new InventoryReturnOutbox(inventoryReturnRepository, restTemplate, objectMapper, meterRegistry,
+                100, Duration.ofSeconds(1), Duration.ofMinutes(5), BookServiceGuardTest.newGuard(meterRegistry),
+                Duration.ofMillis(10), hedgeExecutor, Duration.ofMinutes(1), transactionTemplate);
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(inventoryReturn(7, 10)));
+        CountDownLatch hedged = new CountDownLatch(2);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenAnswer(invocation -> {
+                    hedged.countDown();
+                    hedged.await(5, TimeUnit.SECONDS);
+                    return new ResponseEntity<>(true, HttpStatus.OK);
+                });
+
+        try {
+            outbox.dispatch();
+        } finally {
+            hedgeExecutor.shutdown();
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<HttpEntity<List<BookDetail>>> requests = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restTemplate, times(2)).exchange(anyString(), eq(HttpMethod.PUT), requests.capture(), eq(boolean.class));
+        for (HttpEntity<List<BookDetail>> request : requests.getAllValues()) {
+            assertEquals("inventory-return-7", request.getHeaders().getFirst(InventoryReturnOutbox.IDEMPOTENCY_KEY_HEADER));
+        }
+    }
+
+    @Test
+    public void idempotencyKey_DependsOnlyOnTheReturnsOfTheRequest() throws Exception {
+        List<InventoryReturn> batch = Arrays.asList(inventoryReturn(1, 10), inventoryReturn(2, 20));
+
+        assertEquals(InventoryReturnOutbox.idempotencyKey(batch),
+                InventoryReturnOutbox.idempotencyKey(Arrays.asList(inventoryReturn(1, 10), inventoryReturn(2, 20))));
+        assertNotEquals(InventoryReturnOutbox.idempotencyKey(batch),
+                InventoryReturnOutbox.idempotencyKey(Arrays.asList(inventoryReturn(1, 10), inventoryReturn(3, 20))));
+        assertNotEquals(InventoryReturnOutbox.idempotencyKey(batch),
+                InventoryReturnOutbox.idempotencyKey(Collections.singletonList(inventoryReturn(1, 10))));
+    }
+
+    @Test
+    public void dispatch_RepeatedFailures_BackOffExponentiallyUpToMax() throws Exception {
+        InventoryReturn inventoryReturn = inventoryReturn(1, 10);
+        inventoryReturn.setAttempts(20);
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(inventoryReturn));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+
+        Instant before = Instant.now();
+        outbox.dispatch();
+
+        assertEquals(21, inventoryReturn.getAttempts());
+        assertFalse(inventoryReturn.getNextAttemptAt().isAfter(before.plus(Duration.ofMinutes(5)).plusSeconds(1)));
+        assertTrue(inventoryReturn.getNextAttemptAt().isAfter(before.plus(Duration.ofMinutes(4))));
+    }
+
+    @Test
+    public void dispatch_ReportsPendingReturnsAndLag() {
+        when(inventoryReturnRepository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(Instant.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        when(inventoryReturnRepository.count()).thenReturn(3L);
+        InventoryReturn oldest = InventoryReturn.builder().createdAt(Instant.now().minusSeconds(60)).build();
+        when(inventoryReturnRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.of(oldest));
+
+        outbox.dispatch();
+
+        assertEquals(3.0, meterRegistry.get("orders.outbox.pending").gauge().value());
+        assertTrue(meterRegistry.get("orders.outbox.lag").gauge().value() >= 60.0);
+    }
+
+    private <T> T inTransaction(Supplier<T> callback) {
+        transactions.incrementAndGet();
+        inTransaction.set(true);
+        try {
+            return callback.get();
+        } finally {
+            inTransaction.set(false);
+        }
+    }
+
+    private InventoryReturn inventoryReturn(int orderId, int bookId) throws Exception {
+        return InventoryReturn.builder()
+                .id(orderId)
+                .orderId(orderId)
+                .bookDetails(objectMapper.writeValueAsString(Collections.singletonList(new BookDetail(0, bookId, 1))))
+                .createdAt(Instant.now())
+                .nextAttemptAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,87 @@
+package com.bookstore.ordermanagement.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderAdmissionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong clock = new AtomicLong(-TimeUnit.SECONDS.toNanos(100));
+
+    @Test
+    public void tryAcquire_ClientOverItsRate_IsRejectedAlone() {
+        OrderAdmission orderAdmission = admission(10, 5, 1000, 1000, new ConcurrencyLimit(10, 1, 10));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, orderAdmission.tryAcquire("flooding"));
+        }
+        long wait = orderAdmission.tryAcquire("flooding");
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait);
+        assertEquals(0, orderAdmission.tryAcquire("polite"));
+        clock.addAndGet(wait);
+        assertEquals(0, orderAdmission.tryAcquire("flooding"));
+        assertTrue(orderAdmission.tryAcquire("flooding") > 0);
+        assertEquals(2, meterRegistry.get("orders.admission.rejected").tag("reason", "client").counter().count());
+        assertEquals(2, meterRegistry.get("orders.admission.clients").gauge().value());
+    }
+
+    @Test
+    public void tryAcquire_AllClientsOverGlobalRate_AreRejected() {
+        OrderAdmission orderAdmission = admission(10, 5, 1, 3, new ConcurrencyLimit(10, 1, 10));
+
+        assertEquals(0, orderAdmission.tryAcquire("a"));
+        assertEquals(0, orderAdmission.tryAcquire("b"));
+        assertEquals(0, orderAdmission.tryAcquire("c"));
+
+        assertEquals(TimeUnit.SECONDS.toNanos(1), orderAdmission.tryAcquire("d"));
+        assertEquals(1, meterRegistry.get("orders.admission.rejected").tag("reason", "global").counter().count());
+    }
+
+    @Test
+    public void concurrencyLimit_GrowsWhileLatencyIsSteady_AndShrinksWhenItRises() {
+        ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(10, 2, 100);
+        OrderAdmission orderAdmission = admission(10, 5, 10, 5, concurrencyLimit);
+
+        for (int i = 0; i < 200; i++) {
+            fill(orderAdmission, 20);
+        }
+        int grown = concurrencyLimit.getLimit();
+        for (int i = 0; i < 3; i++) {
+            fill(orderAdmission, 200);
+        }
+
+        assertTrue(grown > 30, "limit " + grown);
+        assertTrue(concurrencyLimit.getLimit() < grown / 2, "limit " + concurrencyLimit.getLimit());
+        assertTrue(orderAdmission.tryStartPlacement());
+        assertEquals(1, meterRegistry.get("orders.admission.in.flight").gauge().value());
+        assertEquals(concurrencyLimit.getLimit(), meterRegistry.get("orders.admission.limit").gauge().value());
+        assertTrue(meterRegistry.get("orders.admission.rejected").tag("reason", "concurrency").counter().count() > 0);
+    }
+
+    /**
+     * Starts as many placements as the limit allows, and ends them after {@code latencyMillis}.
+     */
+    private static void fill(OrderAdmission orderAdmission, long latencyMillis) {
+        int started = 0;
+        while (orderAdmission.tryStartPlacement()) {
+            started++;
+        }
+        for (int i = 0; i < started; i++) {
+            orderAdmission.placementFinished(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private OrderAdmission admission(double clientRate, int clientBurst, double globalRate, int globalBurst,
+                                     ConcurrencyLimit concurrencyLimit) {
+        return new OrderAdmission(meterRegistry, clientRate, clientBurst, globalRate, globalBurst, 100,
+                Duration.ofMinutes(10), concurrencyLimit, clock::get);
+    }
+}
@@ -0,0 +1,172 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.OrderRepository;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BasketStatistics;
+import com.bookstore.ordermanagement.models.BookSales;
+import com.bookstore.ordermanagement.models.DailyRevenue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderAnalyticsTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 1);
+
+    private static final int RANGE_SIZE = 10;
+
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * The confirmed orders in the order table.
+     */
+    private final List<Order> table = new CopyOnWriteArrayList<>();
+
+    private OrderAnalytics orderAnalytics;
+
+    @BeforeEach
+    public void setup() {
+        orderAnalytics = new OrderAnalytics(orderRepository, meterRegistry, Runnable::run, 2, RANGE_SIZE, 2);
+        when(orderRepository.findMinId()).thenAnswer(invocation -> table.stream().map(Order::getId).min(Integer::compare));
+        when(orderRepository.findMaxId()).thenAnswer(invocation -> table.stream().map(Order::getId).max(Integer::compare));
+        when(orderRepository.sumCopiesByBook(eq(OrderStatus.CONFIRMED), anyInt(), anyInt()))
+                .thenAnswer(invocation -> sumCopiesByBook(invocation.getArgument(1), invocation.getArgument(2)));
+        when(orderRepository.sumRevenueByDay(eq(OrderStatus.CONFIRMED), anyInt(), anyInt()))
+                .thenAnswer(invocation -> sumRevenueByDay(invocation.getArgument(1), invocation.getArgument(2)));
+    }
+
+    @Test
+    public void orderPlacedAndCancelled_UpdateFigures() {
+        Order first = order(1, DAY, 20.0, new BookDetail(0, 7, 2));
+        Order second = order(2, DAY.plusDays(1), 30.0, new BookDetail(0, 7, 1), new BookDetail(0, 8, 2));
+
+        orderAnalytics.orderPlaced(first);
+        orderAnalytics.orderPlaced(second);
+        orderAnalytics.orderCancelled(first);
+
+        assertEquals(Arrays.asList(new DailyRevenue(DAY, 0, 0.0), new DailyRevenue(DAY.plusDays(1), 1, 30.0)),
+                orderAnalytics.getRevenue(DAY, DAY.plusDays(1)));
+        assertEquals(Arrays.asList(new BookSales(8, 2), new BookSales(7, 1)), orderAnalytics.getTopBooks(10));
+        BasketStatistics basket = orderAnalytics.getBasketStatistics();
+        assertEquals(1, basket.getOrders());
+        assertEquals(3.0, basket.getAverageBasketSize());
+        assertEquals(30.0, basket.getAverageOrderValue());
+    }
+
+    @Test
+    public void getTopBooks_BookOutsellingTrackedOnes_ReplacesWeakest() {
+        orderAnalytics.orderPlaced(order(1, DAY, 10.0, new BookDetail(0, 1, 5), new BookDetail(0, 2, 3)));
+        orderAnalytics.orderPlaced(order(2, DAY, 10.0, new BookDetail(0, 3, 1)));
+        orderAnalytics.orderPlaced(order(3, DAY, 10.0, new BookDetail(0, 3, 3)));
+
+        assertEquals(Arrays.asList(new BookSales(1, 5), new BookSales(3, 4)), orderAnalytics.getTopBooks(10));
+        assertEquals(Arrays.asList(new BookSales(1, 5)), orderAnalytics.getTopBooks(1));
+    }
+
+    @Test
+    public void rebuild_RecomputesFiguresFromTablesInRanges() {
+        for (int id = 1; id <= 35; id++) {
+            table.add(order(id, id % 2 == 0 ? DAY : null, 10.0, new BookDetail(0, id % 3, 1)));
+        }
+        // drift the rebuild corrects
+        orderAnalytics.orderPlaced(order(100, DAY, 1000.0, new BookDetail(0, 9, 50)));
+
+        assertTrue(orderAnalytics.rebuild());
+
+        assertEquals(new DailyRevenue(DAY, 17, 170.0), orderAnalytics.getRevenue(DAY, DAY).get(0));
+        assertEquals(35, orderAnalytics.getBasketStatistics().getOrders());
+        assertEquals(Arrays.asList(new BookSales(1, 12), new BookSales(2, 12)), orderAnalytics.getTopBooks(2));
+        verify(orderRepository, atLeast(4)).sumCopiesByBook(eq(OrderStatus.CONFIRMED), anyInt(), anyInt());
+        assertEquals(1, meterRegistry.get("orders.analytics.rebuild").timer().count());
+    }
+
+    @Test
+    public void rebuild_OrdersChangedWhileReading_AreCountedOnce() {
+        for (int id = 1; id <= 35; id++) {
+            if (id != 5 && id != 33) {
+                table.add(order(id, DAY, 10.0, new BookDetail(0, 1, 1)));
+            }
+        }
+        AtomicBoolean changed = new AtomicBoolean();
+        when(orderRepository.sumRevenueByDay(eq(OrderStatus.CONFIRMED), eq(1), anyInt())).thenAnswer(invocation -> {
+            List<DailyRevenue> revenue = sumRevenueByDay(1, invocation.getArgument(2));
+            if (changed.compareAndSet(false, true)) {
+                // committed after the first range was read, and before or after the others
+                for (int id : new int[]{5, 33}) {
+                    Order placed = order(id, DAY, 10.0, new BookDetail(0, 1, 1));
+                    table.add(placed);
+                    orderAnalytics.orderPlaced(placed);
+                }
+                Order cancelled = table.stream().filter(order -> order.getId() == 20).findFirst().orElseThrow(AssertionError::new);
+                table.remove(cancelled);
+                orderAnalytics.orderCancelled(cancelled);
+            }
+            return revenue;
+        });
+
+        assertTrue(orderAnalytics.rebuild());
+
+        assertTrue(changed.get());
+        assertEquals(34, orderAnalytics.getBasketStatistics().getOrders());
+        assertEquals(new DailyRevenue(DAY, 34, 340.0), orderAnalytics.getRevenue(DAY, DAY).get(0));
+        assertEquals(Arrays.asList(new BookSales(1, 34)), orderAnalytics.getTopBooks(10));
+    }
+
+    private List<BookSales> sumCopiesByBook(int from, int to) {
+        Map<Integer, Long> copies = new HashMap<>();
+        for (Order order : inRange(from, to)) {
+            for (BookDetail bookDetail : order.getBookDetails()) {
+                copies.merge(bookDetail.getBookId(), (long) bookDetail.getOrderedQuantity(), Long::sum);
+            }
+        }
+        List<BookSales> sales = new ArrayList<>();
+        copies.forEach((bookId, sold) -> sales.add(new BookSales(bookId, sold)));
+        return sales;
+    }
+
+    private List<DailyRevenue> sumRevenueByDay(int from, int to) {
+        Map<LocalDate, DailyRevenue> days = new HashMap<>();
+        for (Order order : inRange(from, to)) {
+            LocalDate date = order.getPlacedAt() != null ? LocalDate.ofInstant(order.getPlacedAt(), OrderAggregates.ZONE) : null;
+            days.merge(date, new DailyRevenue(date, 1, order.getTotalAmount()),
+                    (a, b) -> new DailyRevenue(date, a.getOrders() + b.getOrders(), a.getRevenue() + b.getRevenue()));
+        }
+        return new ArrayList<>(days.values());
+    }
+
+    private List<Order> inRange(int from, int to) {
+        List<Order> orders = new ArrayList<>();
+        for (Order order : table) {
+            if (order.getId() >= from && order.getId() <= to) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    private static Order order(int id, LocalDate day, double totalAmount, BookDetail... bookDetails) {
+        return Order.builder()
+                .id(id)
+                .totalAmount(totalAmount)
+                .placedAt(day != null ? day.atTime(12, 0).atZone(OrderAggregates.ZONE).toInstant() : null)
+                .bookDetails(Arrays.asList(bookDetails))
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.dao.OrderRepository;
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BookSales;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class OrderArchiveTest {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(400));
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OrderArchive orderArchive;
+
+    private final List<Integer> ids = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        orderArchive = new OrderArchive(dataSource, transactionTemplate, meterRegistry, true,
+                Duration.ofDays(365), 2, Duration.ZERO, 10);
+        ids.add(persist(OrderStatus.CONFIRMED, OLD.plusSeconds(2), new BookDetail(0, 7, 2), new BookDetail(0, 8, 1)));
+        ids.add(persist(OrderStatus.CONFIRMED, OLD, new BookDetail(0, 7, 1)));
+        ids.add(persist(OrderStatus.CONFIRMED, OLD.plusSeconds(1), new BookDetail(0, 9, 3)));
+        ids.add(persist(OrderStatus.CONFIRMED, null, new BookDetail(0, 7, 4)));
+        ids.add(persist(OrderStatus.PENDING, OLD, new BookDetail(0, 7, 5)));
+        ids.add(persist(OrderStatus.CONFIRMED, Instant.now(), new BookDetail(0, 7, 6)));
+        testEntityManager.flush();
+        testEntityManager.clear();
+    }
+
+    @Test
+    public void archiveBatch_MovesOldestConfirmedOrdersWithTheirBookDetails() {
+        int moved = orderArchive.archiveBatch(OLD.plusSeconds(10), 2);
+
+        assertEquals(2, moved);
+        assertFalse(orderRepository.existsById(ids.get(1)));
+        assertFalse(orderRepository.existsById(ids.get(2)));
+        assertTrue(orderRepository.existsById(ids.get(0)));
+        Order archived = orderArchive.find(ids.get(1));
+        assertEquals(OrderStatus.CONFIRMED, archived.getStatus());
+        assertEquals("customer " + ids.get(1), archived.getCustomerName());
+        assertEquals(OLD.toEpochMilli(), archived.getPlacedAt().toEpochMilli());
+        assertEquals(1, archived.getBookDetails().size());
+        assertEquals(7, archived.getBookDetails().get(0).getBookId());
+        assertNull(orderArchive.find(ids.get(0)));
+        assertEquals(2.0, meterRegistry.get("orders.archived").counter().count());
+    }
+
+    @Test
+    public void archiveOldOrders_MovesDueOrdersInBatchesAndKeepsAnalytics() {
+        Map<Integer, Long> before = copiesByBook();
+
+        orderArchive.archiveOldOrders();
+
+        assertEquals(Arrays.asList(false, false, false, true, true, true),
+                ids.stream().map(orderRepository::existsById).collect(Collectors.toList()));
+        assertEquals(2, orderArchive.find(ids.get(0)).getBookDetails().size());
+        assertEquals(3.0, meterRegistry.get("orders.archived").counter().count());
+        assertEquals(2, meterRegistry.get("orders.archive.batch").timer().count());
+        assertEquals(0.0, meterRegistry.get("orders.archive.backlog").gauge().value());
+        assertEquals(before, copiesByBook());
+        assertEquals(ids.get(0), orderRepository.findMinId().orElse(null));
+    }
+
+    @Test
+    public void findArchivedIds_ReturnsOnlyArchivedOrders() {
+        orderArchive.archiveBatch(OLD.plusSeconds(10), 1);
+
+        assertEquals(Collections.singleton(ids.get(1)), orderArchive.findArchivedIds(Arrays.asList(ids.get(1), ids.get(2), -1)));
+        assertEquals(Collections.emptySet(), orderArchive.findArchivedIds(Collections.emptyList()));
+    }
+
+    private Map<Integer, Long> copiesByBook() {
+        return orderRepository.sumCopiesByBook(OrderStatus.CONFIRMED, ids.get(0), ids.get(ids.size() - 1)).stream()
+                .collect(Collectors.toMap(BookSales::getBookId, BookSales::getCopies));
+    }
+
+    private int persist(OrderStatus status, Instant placedAt, BookDetail... bookDetails) {
+        Order order = Order.builder()
+                .address("123 Street")
+                .totalAmount(25.0)
+                .status(status)
+                .placedAt(placedAt)
+                .bookDetails(Arrays.asList(bookDetails))
+                .build();
+        order = testEntityManager.persist(order);
+        order.setCustomerName("customer " + order.getId());
+        return order.getId();
+    }
+}
@@ -0,0 +1,96 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.models.SerializedOrder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final OrderCache orderCache = new OrderCache(meterRegistry, 100, Duration.ofMinutes(10));
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void get_RepeatedReads_LoadOnceAndCountHits() {
+        SerializedOrder first = orderCache.get(1, this::load);
+        SerializedOrder second = orderCache.get(1, this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertTrue(new String(first.getJson(), StandardCharsets.UTF_8).contains("\"customerName\":\"John Doe\""));
+        assertTrue(first.getEtag().startsWith("\"") && first.getEtag().endsWith("\""));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "orders").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "orders").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    public void get_ConcurrentMisses_LoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<?>[] readers = new CompletableFuture<?>[8];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = CompletableFuture.supplyAsync(() -> orderCache.get(1, id -> {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return load(id);
+            }), executor);
+        }
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        release.countDown();
+        CompletableFuture.allOf(readers).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void get_MissingOrder_IsNotCached() {
+        assertNull(orderCache.get(2, id -> null));
+
+        assertNotNull(orderCache.get(2, this::load));
+    }
+
+    @Test
+    public void invalidate_ChangedOrder_IsReloadedWithNewEtag() {
+        SerializedOrder before = orderCache.get(1, this::load);
+
+        orderCache.invalidate(1);
+        SerializedOrder after = orderCache.get(1, id -> json(id, "Jane Smith"));
+
+        assertNotEquals(before.getEtag(), after.getEtag());
+    }
+
+    private byte[] load(int id) {
+        loads.incrementAndGet();
+        return json(id, "John Doe");
+    }
+
+    private static byte[] json(int id, String customerName) {
+        return ("{\"id\":" + id + ",\"customerName\":\"" + customerName + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,169 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.ExportFormat;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class OrderExporterTest {
+
+    private static final Instant PLACED_AT = Instant.parse("2026-03-01T12:00:00Z");
+
+    private static final Duration COMMIT_LAG = Duration.ofMinutes(5);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @TempDir
+    Path directory;
+
+    private OrderExporter orderExporter;
+
+    private final List<Integer> ids = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        orderExporter = newExporter(COMMIT_LAG);
+        ids.add(persist("John Doe", null, new BookDetail(0, 7, 2), new BookDetail(0, 8, 1)));
+        ids.add(persist("Doe, \"JD\" John", PLACED_AT.minusSeconds(60)));
+        ids.add(persist("Jane Smith", PLACED_AT, new BookDetail(0, 9, 3)));
+        testEntityManager.flush();
+        testEntityManager.clear();
+    }
+
+    @Test
+    public void export_Ndjson_WritesOneOrderPerLine() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int lastId = orderExporter.export(ExportFormat.NDJSON, 0, null, null, Channels.newChannel(out));
+
+        List<String> lines = gunzip(out.toByteArray());
+        assertEquals(ids.get(2), lastId);
+        assertEquals(3, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals(ids.get(0), first.get("id").asInt());
+        assertEquals(2, first.get("bookDetails").size());
+        assertEquals(8, first.get("bookDetails").get(1).get("bookId").asInt());
+        assertTrue(first.get("placedAt").isNull());
+        assertEquals(0, objectMapper.readTree(lines.get(1)).get("bookDetails").size());
+        Order last = objectMapper.readValue(lines.get(2), Order.class);
+        assertEquals("Jane Smith", last.getCustomerName());
+        assertEquals(PLACED_AT, last.getPlacedAt());
+        assertEquals(OrderStatus.CONFIRMED, last.getStatus());
+        assertEquals(3, last.getBookDetails().get(0).getOrderedQuantity());
+    }
+
+    @Test
+    public void export_CsvSinceIdOrTime_WritesNewerOrders() throws IOException {
+        ByteArrayOutputStream afterId = new ByteArrayOutputStream();
+        ByteArrayOutputStream afterTime = new ByteArrayOutputStream();
+
+        orderExporter.export(ExportFormat.CSV, ids.get(0), null, null, Channels.newChannel(afterId));
+        orderExporter.export(ExportFormat.CSV, 0, PLACED_AT.minusSeconds(1), null, Channels.newChannel(afterTime));
+
+        List<String> sinceId = gunzip(afterId.toByteArray());
+        assertEquals(3, sinceId.size());
+        assertEquals("id,customer_name,address,total_amount,status,rejection_reason,placed_at,book_detail_id,book_id,ordered_quantity",
+                sinceId.get(0));
+        assertEquals(ids.get(1) + ",\"Doe, \"\"JD\"\" John\",123 Street,25.0,CONFIRMED,,2026-03-01T11:59:00Z,,,", sinceId.get(1));
+        assertTrue(sinceId.get(2).startsWith(ids.get(2) + ",Jane Smith,123 Street,25.0,CONFIRMED,,2026-03-01T12:00:00Z,"));
+        List<String> lines = gunzip(afterTime.toByteArray());
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).startsWith(ids.get(2) + ",Jane Smith,"));
+        assertTrue(lines.get(1).endsWith(",9,3"));
+    }
+
+    @Test
+    public void exportNewOrders_ExportsConfirmedOrdersOnceTheyAreOlderThanCommitLag() throws IOException {
+        orderExporter.exportNewOrders();
+        orderExporter.exportNewOrders();
+        // committed after the first runs, but placed before their watermark had caught up
+        int late = persist("Late Customer", Instant.now().minusSeconds(60), new BookDetail(0, 5, 1));
+        testEntityManager.flush();
+        orderExporter.exportNewOrders();
+        assertEquals(1, exportedFiles().size());
+
+        newExporter(Duration.ZERO).exportNewOrders();
+
+        List<Path> files = exportedFiles();
+        List<List<String>> exports = new ArrayList<>();
+        for (Path file : files) {
+            exports.add(gunzip(Files.readAllBytes(file)));
+        }
+        assertTrue(Files.readString(directory.resolve(OrderExporter.WATERMARK_FILE)).startsWith("20"));
+        // a line per book detail, and one for the order without any; the order never placed is left out
+        assertEquals(2, files.size());
+        assertEquals(Arrays.asList(ids.get(1), ids.get(2), late), exports.stream()
+                .flatMap(lines -> lines.stream().skip(1))
+                .map(line -> Integer.valueOf(line.substring(0, line.indexOf(','))))
+                .collect(Collectors.toList()));
+    }
+
+    private OrderExporter newExporter(Duration commitLag) {
+        return new OrderExporter(dataSource, objectMapper, new SimpleMeterRegistry(), directory.toString(), "csv", commitLag);
+    }
+
+    private List<Path> exportedFiles() throws IOException {
+        try (Stream<Path> listed = Files.list(directory)) {
+            return listed.filter(path -> path.toString().endsWith(".csv.gz")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private int persist(String customerName, Instant placedAt, BookDetail... bookDetails) {
+        Order order = Order.builder()
+                .customerName(customerName)
+                .address("123 Street")
+                .totalAmount(25.0)
+                .placedAt(placedAt)
+                .bookDetails(bookDetails.length == 0 ? Collections.emptyList() : Arrays.asList(bookDetails))
+                .build();
+        return testEntityManager.persist(order).getId();
+    }
+
+    private static List<String> gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return Arrays.asList(text.split("\r?\n"));
+        }
+    }
+}
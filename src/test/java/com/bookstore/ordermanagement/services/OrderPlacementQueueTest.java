@@ -0,0 +1,84 @@
+package com.bookstore.ordermanagement.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderPlacementQueueTest {
+
+    private static final int CAPACITY = 2;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private OrderPlacementQueue queue;
+
+    @BeforeEach
+    public void setup() {
+        queue = new OrderPlacementQueue(meterRegistry, 1, CAPACITY);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        queue.stop();
+    }
+
+    @Test
+    public void submit_OrderAlreadyQueued_IsNotQueuedAgain() throws InterruptedException {
+        AtomicInteger placements = new AtomicInteger();
+        CountDownLatch placed = new CountDownLatch(1);
+
+        assertTrue(queue.submit(1, this::awaitRelease));
+        assertTrue(queue.submit(2, () -> {
+            placements.incrementAndGet();
+            placed.countDown();
+        }));
+        assertFalse(queue.submit(2, placements::incrementAndGet));
+        assertEquals(2.0, meterRegistry.get("orders.placement.queued").gauge().value());
+
+        release.countDown();
+        assertTrue(placed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, placements.get());
+    }
+
+    @Test
+    public void submit_QueueFull_RejectsAndCanBeResubmittedLater() throws InterruptedException {
+        CountDownLatch placed = new CountDownLatch(1);
+        queue.submit(1, this::awaitRelease);
+        for (int id = 2; id < 2 + CAPACITY; id++) {
+            queue.submit(id, () -> { });
+        }
+        // the first placement may not have left the queue for the worker yet
+        if (queue.hasCapacity()) {
+            queue.submit(2 + CAPACITY, () -> { });
+        }
+
+        assertFalse(queue.hasCapacity());
+        assertThrows(RejectedExecutionException.class, () -> queue.submit(10, () -> { }));
+
+        release.countDown();
+        while (!queue.hasCapacity()) {
+            Thread.sleep(5);
+        }
+        assertTrue(queue.submit(10, placed::countDown));
+        assertTrue(placed.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
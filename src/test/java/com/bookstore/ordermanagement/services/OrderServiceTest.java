@@ -2,12 +2,17 @@ package com.bookstore.ordermanagement.services;
 
 import com.bookstore.ordermanagement.dao.OrderRepository;
 import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.entities.IdempotencyRecord;
 import com.bookstore.ordermanagement.entities.Order;
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.BatchItemResult;
+import com.bookstore.ordermanagement.models.BatchItemStatus;
 import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.BookReservationResult;
+import com.bookstore.ordermanagement.models.OrderStatusResult;
 import com.bookstore.ordermanagement.models.OrderSummary;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -15,11 +20,31 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.*;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -39,6 +64,44 @@ public class OrderServiceTest {
     @Mock
     private ResponseEntity<Boolean> responseEntity1;
 
+    @Mock
+    private BookCatalogue bookCatalogue;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private OrderMetrics orderMetrics = new OrderMetrics(meterRegistry);
+
+    @Mock
+    private InventoryReturnOutbox inventoryReturnOutbox;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private BookReservationClient bookReservationClient;
+
+    @Mock
+    private OrderCache orderCache;
+
+    @Mock
+    private OrderSummaryProjection orderSummaryProjection;
+
+    @Mock
+    private OrderAnalytics orderAnalytics;
+
+    @Mock
+    private OrderPlacementQueue orderPlacementQueue;
+
+    @Mock
+    private OrderArchive orderArchive;
+
+    @Mock
+    private IdempotencyStore idempotencyStore;
+
+    @Spy
+    private BookServiceGuard bookServiceGuard = BookServiceGuardTest.newGuard(meterRegistry);
+
     @InjectMocks
     private OrderService orderService;
 
@@ -48,31 +111,85 @@ public class OrderServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
     }
 
     @Test
-    public void getAllOrders_ReturnsListOfOrders() {
+    public void getOrders_ReturnsPageOfProjectionAfterCursor() {
         // Arrange
-        List<Order> expectedOrders = Arrays.asList(
-                new Order(1, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail())),
-                new Order(2, "Jane Smith", "456 Avenue", 200.0, Arrays.asList(new BookDetail()))
+        List<OrderSummary> expectedOrders = Arrays.asList(
+                new OrderSummary(1, "John Doe", "123 Street", 100.0, createSampleBooks(), OrderStatus.CONFIRMED),
+                new OrderSummary(2, "Jane Smith", "456 Avenue", 200.0, createSampleBooks(), OrderStatus.CONFIRMED)
         );
-        when(orderRepository.findAll()).thenReturn(expectedOrders);
+        when(orderSummaryProjection.getPage(0, 2)).thenReturn(expectedOrders);
+
+        // Act
+        List<OrderSummary> actualOrders = orderService.getOrders(0, 2);
+
+        // Assert
+        assertEquals(expectedOrders, actualOrders);
+        verifyNoInteractions(orderRepository);
+    }
+
+    @Test
+    public void findOrdersByAmount_FirstPage_StartsAtMinimum() {
+        // Arrange
+        List<Order> expectedOrders = Collections.singletonList(new Order(3, "John Doe", "123 Street", 60.0, Collections.emptyList(), OrderStatus.CONFIRMED, null, null));
+        when(orderRepository.findByTotalAmountAfter(50.0, 0, 100.0, PageRequest.of(0, 10))).thenReturn(expectedOrders);
 
         // Act
-        List<Order> actualOrders = orderService.getAllOrders();
+        List<Order> actualOrders = orderService.findOrdersByAmount(50.0, 100.0, null, 0, 10);
 
         // Assert
-        assertEquals(expectedOrders.size(), actualOrders.size());
-        assertEquals(expectedOrders.get(0), actualOrders.get(0));
-        assertEquals(expectedOrders.get(1), actualOrders.get(1));
+        assertEquals(expectedOrders, actualOrders);
+    }
+
+    @Test
+    public void findOrdersByAmount_NextPage_ContinuesAfterCursor() {
+        // Arrange
+        when(orderRepository.findByTotalAmountAfter(60.0, 3, 100.0, PageRequest.of(0, 10))).thenReturn(Collections.emptyList());
+
+        // Act
+        List<Order> actualOrders = orderService.findOrdersByAmount(50.0, 100.0, 60.0, 3, 10);
+
+        // Assert
+        assertTrue(actualOrders.isEmpty());
+        verify(orderRepository).findByTotalAmountAfter(60.0, 3, 100.0, PageRequest.of(0, 10));
+    }
+
+    @Test
+    public void streamOrders_WritesOneSummaryPerLineAndClosesCursor() throws IOException {
+        // Arrange
+        ObjectMapper mapper = new ObjectMapper();
+        ReflectionTestUtils.setField(orderService, "objectMapper", mapper);
+        OrderSummary summary1 = new OrderSummary(1, "John Doe", "123 Street", 100.0, createSampleBooks(), OrderStatus.CONFIRMED);
+        OrderSummary summary2 = new OrderSummary(2, "Jane Smith", "456 Avenue", 0, null, OrderStatus.PENDING);
+        AtomicBoolean closed = new AtomicBoolean();
+        when(orderSummaryProjection.stream(0)).thenReturn(Stream.of(summary1, summary2).onClose(() -> closed.set(true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        orderService.streamOrders(0, out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(summary1, mapper.readValue(lines[0], OrderSummary.class));
+        assertEquals(summary2, mapper.readValue(lines[1], OrderSummary.class));
+        assertTrue(closed.get());
+        verifyNoInteractions(orderRepository);
     }
 
     @Test
     public void getOrderById_ExistingOrderId_ReturnsOrder() {
         // Arrange
         int orderId = 1;
-        Order expectedOrder = new Order(orderId, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()));
+        Order expectedOrder = new Order(orderId, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()), OrderStatus.CONFIRMED, null, null);
         when(orderRepository.findById(orderId)).thenReturn(Optional.of(expectedOrder));
 
         // Act
@@ -96,6 +213,24 @@ public class OrderServiceTest {
         assertNull(actualOrder);
     }
 
+    @Test
+    public void getOrderById_ArchivedOrderId_ReturnsArchivedOrder() {
+        // Arrange
+        int orderId = 1;
+        Order archivedOrder = new Order(orderId, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()), OrderStatus.CONFIRMED, null, Instant.EPOCH);
+        when(orderRepository.findById(orderId)).thenReturn(Optional.empty());
+        when(orderArchive.find(orderId)).thenReturn(archivedOrder);
+
+        // Act
+        Order actualOrder = orderService.getOrderById(orderId);
+        OrderStatusResult status = orderService.getOrderStatus(orderId);
+
+        // Assert
+        assertEquals(archivedOrder, actualOrder);
+        assertEquals(OrderStatus.CONFIRMED, status.getStatus());
+        assertEquals(orderId, status.getOrderId());
+    }
+
     @Test
     public void placeOrder_AllBooksInStock_CreatesOrderAndReturnsOrderSummary() throws IllegalArgumentException, IOException {
         // Arrange
@@ -106,11 +241,9 @@ public class OrderServiceTest {
 
         // Mock the response from the RestTemplate exchange
         String url = "http://book-service/books/order";
-        ResponseEntity<JsonNode> responseEntity = new ResponseEntity<>(createSampleJsonNode(), HttpStatus.OK);
-        when(restTemplate.exchange(eq(url), eq(HttpMethod.PUT), any(HttpEntity.class), eq(JsonNode.class))).thenReturn(responseEntity);
+        ResponseEntity<Book[]> responseEntity = new ResponseEntity<>(books.toArray(new Book[0]), HttpStatus.OK);
+        when(restTemplate.exchange(eq(url), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class))).thenReturn(responseEntity);
 
-        when(objectMapper.readTree(anyString())).thenReturn(createSampleJsonNode());
-        when(objectMapper.convertValue(any(JsonNode.class), any(TypeReference.class))).thenReturn(books);
         when(orderRepository.save(any(Order.class))).thenReturn(order);
 
         // Act
@@ -123,6 +256,9 @@ public class OrderServiceTest {
         assertEquals(order.getAddress(), result.getAddress());
         assertEquals(totalAmount, result.getTotalAmount(), 0.01);
         assertEquals(books, result.getBooks());
+        verify(orderSummaryProjection, times(1)).put(result);
+        verify(orderCache, times(1)).invalidate(order.getId());
+        verify(orderAnalytics, times(1)).orderPlaced(argThat(placed -> placed.getPlacedAt() != null));
     }
 
     @Test
@@ -133,20 +269,155 @@ public class OrderServiceTest {
 
         // Mock the response from the RestTemplate exchange
         String url = "http://book-service/books/order";
-        ResponseEntity<JsonNode> responseEntity = new ResponseEntity<>(createSampleJsonNode(), HttpStatus.BAD_REQUEST);
-        when(restTemplate.exchange(eq(url), eq(HttpMethod.PUT), any(HttpEntity.class), eq(JsonNode.class))).thenReturn(responseEntity);
+        ResponseEntity<Book[]> responseEntity = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        when(restTemplate.exchange(eq(url), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class))).thenReturn(responseEntity);
+
+        // Act and Assert
+        assertThrows(IllegalArgumentException.class, () -> orderService.placeOrder(order));
+    }
+
+    @Test
+    public void placeOrder_BookServiceRejectsOrder_ThrowsIllegalArgumentExceptionWithResponseBody() {
+        // Arrange
+        Order order = createSampleOrder();
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                        "Book 1 is out of stock".getBytes(), null));
+
+        // Act and Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> orderService.placeOrder(order));
+        assertEquals("Book 1 is out of stock", exception.getMessage());
+    }
+
+    @Test
+    public void placeOrder_LargeBasket_PricesEveryLineAndSkipsUnorderedBooks() {
+        // Arrange
+        Order order = createSampleOrder();
+        List<BookDetail> orderedBooks = new ArrayList<>();
+        List<Book> books = new ArrayList<>();
+        for (int bookId = 1; bookId <= 1000; bookId++) {
+            orderedBooks.add(new BookDetail(0, bookId, 2));
+            books.add(new Book(bookId, "Book " + bookId, "Author", "Description", 1.5, 50));
+        }
+        books.add(new Book(5000, "Not ordered", "Author", "Description", 100.0, 50));
+        order.setBookDetails(orderedBooks);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenReturn(new ResponseEntity<>(books.toArray(new Book[0]), HttpStatus.OK));
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+
+        // Act
+        OrderSummary result = orderService.placeOrder(order);
+
+        // Assert
+        assertEquals(3000.0, result.getTotalAmount(), 0.01);
+        assertEquals(1000, result.getBooks().size());
+        assertTrue(result.getBooks().stream().allMatch(book -> book.getQuantity() == 2));
+    }
+
+    @Test
+    public void placeOrder_RejectedByCatalogue_DoesNotCallBookService() {
+        // Arrange
+        Order order = createSampleOrder();
+        doThrow(new IllegalArgumentException("Book not found with ID: 1")).when(bookCatalogue).validate(order.getBookDetails());
 
         // Act and Assert
         assertThrows(IllegalArgumentException.class, () -> orderService.placeOrder(order));
+        verifyNoInteractions(restTemplate);
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    public void placeOrderAsync_BlockingMode_ReturnsFailedFutureWhenBookNotInStock() {
+        // Arrange
+        Order order = createSampleOrder();
+        ResponseEntity<Book[]> responseEntity = new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class))).thenReturn(responseEntity);
+
+        // Act
+        CompletableFuture<OrderSummary> result = orderService.placeOrderAsync(order);
+
+        // Assert
+        assertTrue(result.isCompletedExceptionally());
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        verify(orderRepository, never()).save(any(Order.class));
+        assertEquals(1.0, meterRegistry.get("orders.failed").counter().count());
+        assertEquals(0.0, meterRegistry.get("orders.in.flight").gauge().value());
+    }
+
+    @Test
+    public void placeOrderAsync_BlockingMode_CountsPlacedOrder() {
+        // Arrange
+        Order order = createSampleOrder();
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenReturn(new ResponseEntity<>(createSampleBooks().toArray(new Book[0]), HttpStatus.OK));
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+
+        // Act
+        orderService.placeOrderAsync(order).join();
+
+        // Assert
+        assertEquals(1.0, meterRegistry.get("orders.placed").counter().count());
+        assertEquals(0.0, meterRegistry.get("orders.failed").counter().count());
+        assertEquals(0.0, meterRegistry.get("orders.in.flight").gauge().value());
+    }
+
+    @Test
+    public void placeOrderAsync_WithIdempotencyKey_RecordsKeyInOrderTransaction() {
+        // Arrange
+        Order order = createSampleOrder();
+        IdempotentRequest request = stubIdempotentRequest(order);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenReturn(new ResponseEntity<>(createSampleBooks().toArray(new Book[0]), HttpStatus.OK));
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+        AtomicBoolean inTransaction = new AtomicBoolean();
+        doAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction.set(false);
+            }
+        }).when(transactionTemplate).execute(any());
+        doAnswer(invocation -> {
+            assertTrue(inTransaction.get(), "idempotency key recorded outside the order transaction");
+            return null;
+        }).when(idempotencyStore).record(eq(request), any(OrderSummary.class));
+
+        // Act
+        OrderSummary orderSummary = orderService.placeOrderAsync(order, "address:127.0.0.1", "key-1").join();
+
+        // Assert
+        verify(idempotencyStore).record(request, orderSummary);
+    }
+
+    @Test
+    public void placeOrderAsync_KeyRecordedMeanwhile_ReturnsBooks() {
+        // Arrange
+        Order order = createSampleOrder();
+        IdempotentRequest request = stubIdempotentRequest(order);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenReturn(new ResponseEntity<>(createSampleBooks().toArray(new Book[0]), HttpStatus.OK));
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+        doThrow(new DataIntegrityViolationException("duplicate key"))
+                .when(idempotencyStore).record(eq(request), any(OrderSummary.class));
+
+        // Act
+        CompletableFuture<OrderSummary> result = orderService.placeOrderAsync(order, "address:127.0.0.1", "key-1");
+
+        // Assert
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertTrue(exception.getCause() instanceof DataIntegrityViolationException);
+        verify(inventoryReturnOutbox, times(1)).enqueue(order);
+        verifyNoInteractions(orderAnalytics);
     }
 
     @Test
     public void deleteOrder_ExistingOrderId_DeletesOrderAndReturnsTrue() {
         // Arrange
         int orderId = 1;
-        Order expectedOrder = new Order(orderId, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()));
+        Order expectedOrder = new Order(orderId, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()), OrderStatus.CONFIRMED, null, null);
         when(orderRepository.findById(orderId)).thenReturn(Optional.of(expectedOrder));
-        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class))).thenReturn(new ResponseEntity<>(true, HttpStatus.OK));
 
         // Act
         boolean result = orderService.deleteOrder(orderId);
@@ -154,6 +425,90 @@ public class OrderServiceTest {
         // Assert
         assertTrue(result);
         verify(orderRepository, times(1)).deleteById(orderId);
+        verify(orderSummaryProjection, times(1)).removeAll(Collections.singletonList(orderId));
+        verify(orderAnalytics, times(1)).orderCancelled(expectedOrder);
+        verify(inventoryReturnOutbox, times(1)).enqueue(expectedOrder);
+        verify(orderCache, times(1)).invalidate(orderId);
+        verifyNoInteractions(restTemplate);
+        assertEquals(1.0, meterRegistry.get("orders.cancelled").counter().count());
+    }
+
+    @Test
+    public void deleteOrder_StockLedgerEnabled_ReleasesBooksLocally() {
+        // Arrange
+        StockLedger stockLedger = mock(StockLedger.class);
+        ReflectionTestUtils.setField(orderService, "stockLedger", stockLedger);
+        Order order = createSampleOrder();
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+
+        // Act
+        boolean result = orderService.deleteOrder(1);
+
+        // Assert
+        assertTrue(result);
+        verify(stockLedger, times(1)).release(order.getBookDetails());
+        verifyNoInteractions(inventoryReturnOutbox);
+    }
+
+    @Test
+    public void deleteOrder_RejectedOrder_DeletesWithoutReturningBooks() {
+        // Arrange
+        StockLedger stockLedger = mock(StockLedger.class);
+        ReflectionTestUtils.setField(orderService, "stockLedger", stockLedger);
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.REJECTED);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+
+        // Act
+        boolean result = orderService.deleteOrder(1);
+
+        // Assert
+        assertTrue(result);
+        verify(orderRepository, times(1)).deleteById(1);
+        verifyNoInteractions(stockLedger, inventoryReturnOutbox, orderAnalytics);
+    }
+
+    @Test
+    public void deleteOrder_PendingOrder_ThrowsWithoutDeleting() {
+        // Arrange
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.PENDING);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+
+        // Act and Assert
+        assertThrows(IllegalStateException.class, () -> orderService.deleteOrder(1));
+        verify(orderRepository, never()).deleteById(anyInt());
+        verifyNoInteractions(inventoryReturnOutbox);
+    }
+
+    @Test
+    public void deleteOrder_ArchivedOrder_ThrowsInsteadOfNotFound() {
+        // Arrange
+        when(orderRepository.findById(1)).thenReturn(Optional.empty());
+        when(orderArchive.findArchivedIds(Collections.singletonList(1))).thenReturn(Collections.singleton(1));
+
+        // Act and Assert
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> orderService.deleteOrder(1));
+        assertEquals("Order 1 is archived", exception.getMessage());
+        verify(orderRepository, never()).deleteById(anyInt());
+        verifyNoInteractions(inventoryReturnOutbox, orderAnalytics);
+    }
+
+    @Test
+    public void placeOrder_StockLedgerEnabled_ReservesWithoutBookServiceCall() {
+        // Arrange
+        StockLedger stockLedger = mock(StockLedger.class);
+        ReflectionTestUtils.setField(orderService, "stockLedger", stockLedger);
+        Order order = createSampleOrder();
+        when(stockLedger.reserve(order.getBookDetails())).thenReturn(createSampleBooks());
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+
+        // Act
+        OrderSummary result = orderService.placeOrder(order);
+
+        // Assert
+        assertEquals(20.0, result.getTotalAmount(), 0.01);
+        verifyNoInteractions(restTemplate);
     }
 
     @Test
@@ -168,10 +523,319 @@ public class OrderServiceTest {
         // Assert
         assertFalse(result);
         verify(orderRepository, never()).deleteById(anyInt());
+        verify(inventoryReturnOutbox, never()).enqueue(any(Order.class));
+    }
+
+    @Test
+    public void placeOrders_MixedBatch_ReservesOnceAndSavesPlacedOrdersTogether() {
+        // Arrange
+        Order rejectedByCatalogue = createSampleOrder();
+        Order rejectedByBookService = createSampleOrder();
+        Order placed = createSampleOrder();
+        doThrow(new IllegalArgumentException("Book not found with ID: 1")).when(bookCatalogue).validate(same(rejectedByCatalogue.getBookDetails()));
+        Map<Long, BookReservationResult> reserved = new HashMap<>();
+        reserved.put(1L, new BookReservationResult(1, null, "Book 1 is out of stock"));
+        reserved.put(2L, new BookReservationResult(2, createSampleBooks(), null));
+        when(bookReservationClient.reserveAll(anyList())).thenReturn(reserved);
+        when(orderRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            invocation.<List<Order>>getArgument(0).forEach(order -> order.setId(42));
+            return invocation.getArgument(0);
+        });
+
+        // Act
+        List<BatchItemResult> results = orderService.placeOrders(Arrays.asList(rejectedByCatalogue, rejectedByBookService, placed));
+
+        // Assert
+        assertEquals(BatchItemStatus.REJECTED, results.get(0).getStatus());
+        assertEquals("Book not found with ID: 1", results.get(0).getError());
+        assertEquals(BatchItemStatus.REJECTED, results.get(1).getStatus());
+        assertEquals("Book 1 is out of stock", results.get(1).getError());
+        assertEquals(BatchItemStatus.CREATED, results.get(2).getStatus());
+        assertEquals(42, results.get(2).getOrderId());
+        assertEquals(20.0, results.get(2).getOrder().getTotalAmount(), 0.01);
+        verify(bookReservationClient, times(1)).reserveAll(argThat(reservations -> reservations.size() == 2));
+        verify(orderRepository, times(1)).saveAll(Collections.singletonList(placed));
+        verify(orderSummaryProjection, times(1)).putAll(Collections.singletonList(results.get(2).getOrder()));
+        assertEquals(42, results.get(2).getOrder().getId());
+        verify(orderAnalytics, times(1)).orderPlaced(placed);
+        assertEquals(1.0, meterRegistry.get("orders.placed").counter().count());
+        assertEquals(2.0, meterRegistry.get("orders.failed").counter().count());
+    }
+
+    @Test
+    public void placeOrders_SaveFails_ReturnsReservedBooksAndReportsFailure() {
+        // Arrange
+        Order order = createSampleOrder();
+        when(bookReservationClient.reserveAll(anyList()))
+                .thenReturn(Collections.singletonMap(0L, new BookReservationResult(0, createSampleBooks(), null)));
+        when(orderRepository.saveAll(anyList())).thenThrow(new IllegalStateException("Database unavailable"));
+
+        // Act
+        List<BatchItemResult> results = orderService.placeOrders(Collections.singletonList(order));
+
+        // Assert
+        assertEquals(BatchItemStatus.FAILED, results.get(0).getStatus());
+        assertNull(results.get(0).getOrder());
+        verify(inventoryReturnOutbox, times(1)).enqueueAll(Collections.singletonList(order));
+    }
+
+    @Test
+    public void placeOrders_StockLedgerEnabled_ReservesAndReturnsBooksThroughLedger() {
+        // Arrange
+        StockLedger stockLedger = mock(StockLedger.class);
+        ReflectionTestUtils.setField(orderService, "stockLedger", stockLedger);
+        Order rejected = createSampleOrder();
+        Order placed = createSampleOrder();
+        when(stockLedger.reserve(same(rejected.getBookDetails()))).thenThrow(new IllegalArgumentException("Book 1 is out of stock"));
+        when(stockLedger.reserve(same(placed.getBookDetails()))).thenReturn(createSampleBooks());
+        when(orderRepository.saveAll(anyList())).thenThrow(new IllegalStateException("Database unavailable"));
+
+        // Act
+        List<BatchItemResult> results = orderService.placeOrders(Arrays.asList(rejected, placed));
+
+        // Assert
+        assertEquals(BatchItemStatus.REJECTED, results.get(0).getStatus());
+        assertEquals("Book 1 is out of stock", results.get(0).getError());
+        assertEquals(BatchItemStatus.FAILED, results.get(1).getStatus());
+        verify(stockLedger, times(1)).release(placed.getBookDetails());
+        verifyNoInteractions(bookReservationClient, inventoryReturnOutbox);
+    }
+
+    @Test
+    public void deleteOrders_SomeIdsMissing_CancelsFoundOrdersInOneTransaction() {
+        // Arrange
+        Order order = new Order(1, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()), OrderStatus.CONFIRMED, null, null);
+        when(orderRepository.findDistinctByIdIn(anyCollection())).thenReturn(Collections.singletonList(order));
+
+        // Act
+        List<BatchItemResult> results = orderService.deleteOrders(Arrays.asList(1, 2));
+
+        // Assert
+        assertEquals(BatchItemStatus.CANCELLED, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getOrderId());
+        assertEquals(BatchItemStatus.NOT_FOUND, results.get(1).getStatus());
+        assertEquals(2, results.get(1).getOrderId());
+        verify(orderRepository, times(1)).deleteAll(Collections.singletonList(order));
+        verify(orderSummaryProjection, times(1)).removeAll(Collections.singletonList(1));
+        verify(inventoryReturnOutbox, times(1)).enqueueAll(Collections.singletonList(order));
+        verify(transactionTemplate, times(1)).execute(any());
+        assertEquals(1.0, meterRegistry.get("orders.cancelled").counter().count());
+    }
+
+    @Test
+    public void deleteOrders_PendingAndRejectedOrders_OnlyReturnsBooksOfConfirmedOrders() {
+        // Arrange
+        Order confirmed = new Order(1, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()), OrderStatus.CONFIRMED, null, null);
+        Order rejected = new Order(2, "John Doe", "123 Street", 0, Arrays.asList(new BookDetail()), OrderStatus.REJECTED, "Out of stock", null);
+        Order pending = new Order(3, "John Doe", "123 Street", 0, Arrays.asList(new BookDetail()), OrderStatus.PENDING, null, null);
+        when(orderRepository.findDistinctByIdIn(anyCollection())).thenReturn(Arrays.asList(confirmed, rejected, pending));
+
+        // Act
+        List<BatchItemResult> results = orderService.deleteOrders(Arrays.asList(1, 2, 3));
+
+        // Assert
+        assertEquals(BatchItemStatus.CANCELLED, results.get(0).getStatus());
+        assertEquals(BatchItemStatus.CANCELLED, results.get(1).getStatus());
+        assertEquals(BatchItemStatus.CONFLICT, results.get(2).getStatus());
+        verify(orderRepository, times(1)).deleteAll(Arrays.asList(confirmed, rejected));
+        verify(inventoryReturnOutbox, times(1)).enqueueAll(Collections.singletonList(confirmed));
+        verify(orderAnalytics, times(1)).orderCancelled(confirmed);
+        verify(orderAnalytics, never()).orderCancelled(rejected);
+    }
+
+    @Test
+    public void deleteOrders_ArchivedOrder_IsConflictNotNotFound() {
+        // Arrange
+        Order confirmed = new Order(1, "John Doe", "123 Street", 100.0, Arrays.asList(new BookDetail()), OrderStatus.CONFIRMED, null, null);
+        when(orderRepository.findDistinctByIdIn(anyCollection())).thenReturn(Collections.singletonList(confirmed));
+        when(orderArchive.findArchivedIds(new HashSet<>(Arrays.asList(2, 3)))).thenReturn(Collections.singleton(2));
+
+        // Act
+        List<BatchItemResult> results = orderService.deleteOrders(Arrays.asList(1, 2, 3));
+
+        // Assert
+        assertEquals(BatchItemStatus.CANCELLED, results.get(0).getStatus());
+        assertEquals(BatchItemStatus.CONFLICT, results.get(1).getStatus());
+        assertEquals("Order 2 is archived", results.get(1).getError());
+        assertEquals(BatchItemStatus.NOT_FOUND, results.get(2).getStatus());
+        verify(orderRepository, times(1)).deleteAll(Collections.singletonList(confirmed));
+    }
+
+    @Test
+    public void acceptOrder_SavesPendingOrderAndQueuesIt() {
+        // Arrange
+        Order order = createSampleOrder();
+        when(orderPlacementQueue.hasCapacity()).thenReturn(true);
+        when(orderRepository.save(any(Order.class))).thenReturn(order);
+
+        // Act
+        OrderSummary result = orderService.acceptOrder(order);
+
+        // Assert
+        assertEquals(OrderStatus.PENDING, result.getStatus());
+        assertEquals(order.getId(), result.getId());
+        verify(orderRepository).save(orderCaptor.capture());
+        assertEquals(OrderStatus.PENDING, orderCaptor.getValue().getStatus());
+        verify(orderSummaryProjection, times(1)).put(result);
+        verify(orderPlacementQueue, times(1)).submit(eq(order.getId()), any(Runnable.class));
+        verifyNoInteractions(restTemplate);
+        assertEquals(1.0, meterRegistry.get("orders.accepted").counter().count());
+    }
+
+    @Test
+    public void acceptOrder_QueueFull_ThrowsWithoutSaving() {
+        // Arrange
+        Order order = createSampleOrder();
+        when(orderPlacementQueue.hasCapacity()).thenReturn(false);
+
+        // Act and Assert
+        assertThrows(RejectedExecutionException.class, () -> orderService.acceptOrder(order));
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    public void placePendingOrder_BooksReserved_ConfirmsOrder() {
+        // Arrange
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.PENDING);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenReturn(new ResponseEntity<>(createSampleBooks().toArray(new Book[0]), HttpStatus.OK));
+        when(orderRepository.completePendingOrder(any(Order.class))).thenReturn(1);
+
+        // Act
+        orderService.placePendingOrder(1);
+
+        // Assert
+        verify(orderRepository).completePendingOrder(orderCaptor.capture());
+        assertEquals(OrderStatus.CONFIRMED, orderCaptor.getValue().getStatus());
+        assertEquals(20.0, orderCaptor.getValue().getTotalAmount(), 0.01);
+        verify(orderRepository, never()).save(any(Order.class));
+        verify(orderCache).invalidate(1);
+        verifyNoInteractions(inventoryReturnOutbox);
+        assertEquals(1.0, meterRegistry.get("orders.placed").counter().count());
+    }
+
+    @Test
+    public void placePendingOrder_DeletedMeanwhile_ReturnsBooksWithoutRecreatingOrder() {
+        // Arrange
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.PENDING);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenReturn(new ResponseEntity<>(createSampleBooks().toArray(new Book[0]), HttpStatus.OK));
+        when(orderRepository.completePendingOrder(any(Order.class))).thenReturn(0);
+
+        // Act
+        orderService.placePendingOrder(1);
+
+        // Assert
+        verify(orderRepository, never()).save(any(Order.class));
+        verify(orderSummaryProjection, never()).put(any());
+        verify(inventoryReturnOutbox, times(1)).enqueue(order);
+        verifyNoInteractions(orderAnalytics);
+        assertEquals(1.0, meterRegistry.get("orders.failed").counter().count());
+    }
+
+    @Test
+    public void placePendingOrder_BookServiceRejectsOrder_RejectsOrderWithReason() {
+        // Arrange
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.PENDING);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                        "Book 1 is out of stock".getBytes(), null));
+        when(orderRepository.completePendingOrder(any(Order.class))).thenReturn(1);
+
+        // Act
+        orderService.placePendingOrder(1);
+
+        // Assert
+        verify(orderRepository).completePendingOrder(orderCaptor.capture());
+        assertEquals(OrderStatus.REJECTED, orderCaptor.getValue().getStatus());
+        assertEquals("Book 1 is out of stock", orderCaptor.getValue().getRejectionReason());
+        verifyNoInteractions(orderAnalytics);
+        verify(orderSummaryProjection).put(argThat(summary -> summary.getStatus() == OrderStatus.REJECTED && summary.getBooks() == null));
+        assertEquals(1.0, meterRegistry.get("orders.failed").counter().count());
+    }
+
+    @Test
+    public void placePendingOrder_BookServiceUnavailable_LeavesOrderPending() {
+        // Arrange
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.PENDING);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenThrow(new ResourceAccessException("Read timed out"));
+
+        // Act
+        orderService.placePendingOrder(1);
+
+        // Assert
+        verify(orderRepository, never()).completePendingOrder(any(Order.class));
+        assertEquals(OrderStatus.PENDING, order.getStatus());
+    }
+
+    @Test
+    public void placePendingOrder_BookServiceFails_LeavesOrderPending() {
+        // Arrange
+        Order order = createSampleOrder();
+        order.setStatus(OrderStatus.PENDING);
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenThrow(HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable",
+                        HttpHeaders.EMPTY, "Try again later".getBytes(), null));
+
+        // Act
+        orderService.placePendingOrder(1);
+
+        // Assert
+        verify(orderRepository, never()).completePendingOrder(any(Order.class));
+        assertEquals(OrderStatus.PENDING, order.getStatus());
+        assertNull(order.getRejectionReason());
+    }
+
+    @Test
+    public void placePendingOrder_AlreadyConfirmed_IsSkipped() {
+        // Arrange
+        Order order = createSampleOrder();
+        when(orderRepository.findById(1)).thenReturn(Optional.of(order));
+
+        // Act
+        orderService.placePendingOrder(1);
+
+        // Assert
+        verifyNoInteractions(restTemplate);
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    public void resumePendingOrders_QueuesPendingOrdersUntilQueueIsFull() {
+        // Arrange
+        when(orderRepository.findIdsByStatus(eq(OrderStatus.PENDING), eq(0), any()))
+                .thenReturn(Arrays.asList(3, 4, 5));
+        when(orderPlacementQueue.hasCapacity()).thenReturn(true, true, false);
+
+        // Act
+        orderService.resumePendingOrders();
+
+        // Assert
+        verify(orderPlacementQueue).submit(eq(3), any(Runnable.class));
+        verify(orderPlacementQueue).submit(eq(4), any(Runnable.class));
+        verify(orderPlacementQueue, never()).submit(eq(5), any(Runnable.class));
     }
 
     // Helper methods to create sample objects for testing
 
+    private IdempotentRequest stubIdempotentRequest(Order order) {
+        IdempotentRequest request = new IdempotentRequest(new IdempotencyRecord.Key("address:127.0.0.1", "key-1"), "hash");
+        when(idempotencyStore.request("address:127.0.0.1", "key-1", order)).thenReturn(request);
+        when(idempotencyStore.execute(eq(request), any())).thenAnswer(invocation ->
+                invocation.<Supplier<CompletableFuture<OrderSummary>>>getArgument(1).get());
+        return request;
+    }
+
     private Order createSampleOrder() {
         Order order = new Order();
         order.setId(1);
@@ -187,9 +851,4 @@ public class OrderServiceTest {
         books.add(new Book(1, "Book 1", "Author 1", "Description 1", 10.0, 5));
         return books;
     }
-
-    private JsonNode createSampleJsonNode() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.createObjectNode(); // Create an empty JsonNode for simplicity
-    }
 }
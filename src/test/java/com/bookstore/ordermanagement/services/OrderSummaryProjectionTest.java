@@ -0,0 +1,151 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.OrderStatus;
+import com.bookstore.ordermanagement.models.Book;
+import com.bookstore.ordermanagement.models.OrderSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(OrderSummaryProjection.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class OrderSummaryProjectionTest {
+
+    @Autowired
+    private OrderSummaryProjection orderSummaryProjection;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void put_ReplacesSummaryAndKeepsPricedBooks() throws Exception {
+        orderSummaryProjection.put(summary(1, OrderStatus.PENDING, null));
+        orderSummaryProjection.put(summary(1, OrderStatus.CONFIRMED, Collections.singletonList(book())));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        OrderSummary stored = objectMapper.readValue(orderSummaryProjection.getJson(1), OrderSummary.class);
+
+        assertEquals(OrderStatus.CONFIRMED, stored.getStatus());
+        assertEquals(book(), stored.getBooks().get(0));
+        assertNull(orderSummaryProjection.getJson(2));
+    }
+
+    @Test
+    public void getPage_ReadsKeysetPageInOneStatement() {
+        orderSummaryProjection.putAll(Arrays.asList(
+                summary(1, OrderStatus.CONFIRMED, Collections.singletonList(book())),
+                summary(2, OrderStatus.PENDING, null),
+                summary(3, OrderStatus.CONFIRMED, Collections.singletonList(book()))));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        Statistics statistics = testEntityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<OrderSummary> page = orderSummaryProjection.getPage(1, 2);
+
+        assertEquals(2, page.size());
+        assertEquals(2, page.get(0).getId());
+        assertEquals(3, page.get(1).getId());
+        assertEquals(12.5, page.get(1).getBooks().get(0).getPrice());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void stream_ReadsSummariesAfterIdFromOneCursor() {
+        orderSummaryProjection.putAll(Arrays.asList(
+                summary(1, OrderStatus.CONFIRMED, Collections.singletonList(book())),
+                summary(2, OrderStatus.PENDING, null),
+                summary(3, OrderStatus.CONFIRMED, Collections.singletonList(book()))));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        Statistics statistics = testEntityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<OrderSummary> streamed;
+        try (Stream<OrderSummary> stream = orderSummaryProjection.stream(1)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+        long entitiesLoaded = statistics.getEntityLoadCount();
+
+        assertEquals(0, entitiesLoaded);
+        assertEquals(orderSummaryProjection.getPage(1, 10), streamed);
+        assertEquals(OrderStatus.PENDING, streamed.get(0).getStatus());
+        assertEquals(12.5, streamed.get(1).getBooks().get(0).getPrice());
+    }
+
+    @Test
+    public void removeAll_DeletesSummaries() {
+        orderSummaryProjection.putAll(Arrays.asList(summary(1, OrderStatus.CONFIRMED, null), summary(2, OrderStatus.CONFIRMED, null)));
+        testEntityManager.flush();
+
+        orderSummaryProjection.removeAll(Collections.singletonList(1));
+        testEntityManager.clear();
+
+        assertNull(orderSummaryProjection.getJson(1));
+        assertNotNull(orderSummaryProjection.getJson(2));
+    }
+
+    @Test
+    public void migration_BackfillsSummariesOfExistingOrders() throws Exception {
+        String url = "jdbc:h2:mem:order-summary-backfill;DB_CLOSE_DELAY=-1";
+        Flyway.configure().dataSource(url, "sa", "").target("2").load().migrate();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("insert into \"order\" (\"id\", \"customer_name\", \"address\", \"total_amount\", \"status\") "
+                    + "values (1, 'John \"JD\" Doe', '123 Street', 25.0, 'CONFIRMED'), (2, 'Jane Smith', null, 0, 'PENDING')");
+            statement.execute("insert into \"book_detail\" (\"fid\", \"book_id\", \"ordered_quantity\", \"order_id\") "
+                    + "values (1, 7, 2, 1), (2, 8, 1, 2)");
+
+            Flyway.configure().dataSource(url, "sa", "").load().migrate();
+
+            ResultSet summaries = statement.executeQuery("select \"summary\" from \"order_summary\" order by \"order_id\"");
+            assertTrue(summaries.next());
+            OrderSummary confirmed = objectMapper.readValue(summaries.getString(1), OrderSummary.class);
+            assertTrue(summaries.next());
+            OrderSummary pending = objectMapper.readValue(summaries.getString(1), OrderSummary.class);
+
+            assertEquals("John \"JD\" Doe", confirmed.getCustomerName());
+            assertEquals(25.0, confirmed.getTotalAmount());
+            assertEquals(7, confirmed.getBooks().get(0).getId());
+            assertEquals(2, confirmed.getBooks().get(0).getQuantity());
+            assertEquals(OrderStatus.PENDING, pending.getStatus());
+            assertNull(pending.getBooks());
+            statement.execute("drop all objects");
+        }
+    }
+
+    private static OrderSummary summary(int id, OrderStatus status, List<Book> books) {
+        return new OrderSummary(id, "John Doe", "123 Street", books == null ? 0 : 25.0, books, status);
+    }
+
+    private static Book book() {
+        return new Book(1, "Book 1", "Author", "Description", 12.5, 2);
+    }
+}
@@ -0,0 +1,218 @@
+package com.bookstore.ordermanagement.services;
+
+import com.bookstore.ordermanagement.entities.BookDetail;
+import com.bookstore.ordermanagement.models.Book;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class StockLedgerTest {
+
+    private static final int LEASE_SIZE = 20;
+
+    private static final int MAX_HELD = 30;
+
+    private static final int OUT_OF_STOCK_BOOK_ID = 99;
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong leased = new AtomicLong();
+
+    private StockLedger stockLedger;
+
+    @BeforeEach
+    public void setup() {
+        stockLedger = newLedger(Duration.ofMinutes(5));
+        when(restTemplate.exchange(eq(StockLedger.BOOK_ORDER_URL), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenAnswer(invocation -> {
+                    BookDetail bookDetail = bookDetail(invocation.getArgument(2));
+                    if (bookDetail.getBookId() == OUT_OF_STOCK_BOOK_ID) {
+                        throw HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY,
+                                "Book 99 is out of stock".getBytes(), null);
+                    }
+                    leased.addAndGet(bookDetail.getOrderedQuantity());
+                    return new ResponseEntity<>(new Book[]{book(bookDetail.getBookId())}, HttpStatus.OK);
+                });
+        when(restTemplate.exchange(eq(StockLedger.BOOK_RETURN_URL), eq(HttpMethod.PUT), any(HttpEntity.class), eq(boolean.class)))
+                .thenReturn(new ResponseEntity<>(true, HttpStatus.OK));
+    }
+
+    @Test
+    public void reserve_RepeatedOrders_LeaseOnceAndReserveLocally() {
+        List<Book> books = stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 2)));
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 3)));
+
+        assertEquals(12.5, books.get(0).getPrice());
+        assertEquals(LEASE_SIZE - 5, stockLedger.getHeld(1));
+        verify(restTemplate, times(1)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(Book[].class));
+        assertEquals(1.0, meterRegistry.get("orders.stock.ledger.leases").counter().count());
+        assertEquals(1.0, meterRegistry.get("orders.stock.ledger.reservations").counter().count());
+    }
+
+    @Test
+    public void reserve_OrderLargerThanLease_LeasesOrderedQuantity() {
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, LEASE_SIZE + 5)));
+
+        assertEquals(LEASE_SIZE + 5, leased.get());
+        assertEquals(0, stockLedger.getHeld(1));
+    }
+
+    @Test
+    public void reserve_BookOutOfStock_ReleasesOtherLinesOfOrder() {
+        List<BookDetail> order = Arrays.asList(new BookDetail(0, 1, 2), new BookDetail(0, OUT_OF_STOCK_BOOK_ID, 1));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> stockLedger.reserve(order));
+
+        assertEquals("Book 99 is out of stock", exception.getMessage());
+        assertEquals(LEASE_SIZE, stockLedger.getHeld(1));
+        assertEquals(0, stockLedger.getHeld(OUT_OF_STOCK_BOOK_ID));
+    }
+
+    @Test
+    public void reserve_BookServiceFails_IsNotRejectedNorLeasedAgain() {
+        when(restTemplate.exchange(eq(StockLedger.BOOK_ORDER_URL), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenThrow(HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable",
+                        HttpHeaders.EMPTY, "Try again later".getBytes(), null));
+
+        assertThrows(HttpServerErrorException.class,
+                () -> stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 2))));
+
+        verify(restTemplate, times(1)).exchange(anyString(), any(HttpMethod.class), any(HttpEntity.class), eq(Book[].class));
+        assertEquals(0, stockLedger.getHeld(1));
+    }
+
+    @Test
+    public void release_CancelledOrder_IsReservedAgainWithoutLease() {
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, LEASE_SIZE)));
+        stockLedger.release(Collections.singletonList(new BookDetail(0, 1, 4)));
+
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 4)));
+
+        assertEquals(LEASE_SIZE, leased.get());
+        assertEquals(0, stockLedger.getHeld(1));
+    }
+
+    @Test
+    public void reserve_WhileLeasing_OrdersServedFromHeldStockAreNotBlocked() throws Exception {
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 1)));
+        CountDownLatch leaseStarted = new CountDownLatch(1);
+        CountDownLatch leaseAnswered = new CountDownLatch(1);
+        when(restTemplate.exchange(eq(StockLedger.BOOK_ORDER_URL), eq(HttpMethod.PUT), any(HttpEntity.class), eq(Book[].class)))
+                .thenAnswer(invocation -> {
+                    leaseStarted.countDown();
+                    assertTrue(leaseAnswered.await(5, TimeUnit.SECONDS));
+                    leased.addAndGet(bookDetail(invocation.getArgument(2)).getOrderedQuantity());
+                    return new ResponseEntity<>(new Book[]{book(1)}, HttpStatus.OK);
+                });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Book>> large = executor.submit(() -> stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, LEASE_SIZE + 5))));
+            assertTrue(leaseStarted.await(5, TimeUnit.SECONDS));
+
+            stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 2)));
+
+            leaseAnswered.countDown();
+            large.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(LEASE_SIZE - 3, stockLedger.getHeld(1));
+        assertEquals(LEASE_SIZE + LEASE_SIZE + 5, leased.get());
+    }
+
+    @Test
+    public void reconcile_TooManyHeld_ReturnsExcess() {
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 1)));
+        stockLedger.release(Collections.singletonList(new BookDetail(0, 1, 20)));
+
+        stockLedger.reconcile();
+
+        assertEquals(MAX_HELD, stockLedger.getHeld(1));
+        assertEquals(LEASE_SIZE - 1 + 20 - MAX_HELD, returned());
+    }
+
+    @Test
+    public void reconcile_ExpiredLease_ReturnsAllAndLeasesAgain() {
+        stockLedger = newLedger(Duration.ZERO);
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 1)));
+
+        stockLedger.reconcile();
+        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 1)));
+
+        assertEquals(LEASE_SIZE - 1, returned());
+        assertEquals(2 * LEASE_SIZE, leased.get());
+    }
+
+    @Test
+    public void reserve_ConcurrentOrdersForOneBook_NeverReserveMoreThanLeased() throws Exception {
+        int threads = 8;
+        int ordersPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < ordersPerThread; j++) {
+                        stockLedger.reserve(Collections.singletonList(new BookDetail(0, 1, 1)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(leased.get(), threads * ordersPerThread + stockLedger.getHeld(1));
+        assertTrue(stockLedger.getHeld(1) < LEASE_SIZE);
+    }
+
+    private StockLedger newLedger(Duration leaseTtl) {
+        return new StockLedger(restTemplate, BookServiceGuardTest.newGuard(meterRegistry), meterRegistry,
+                LEASE_SIZE, MAX_HELD, leaseTtl);
+    }
+
+    private long returned() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<HttpEntity<List<BookDetail>>> request = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restTemplate, atLeastOnce()).exchange(eq(StockLedger.BOOK_RETURN_URL), eq(HttpMethod.PUT),
+                request.capture(), eq(boolean.class));
+        return request.getAllValues().stream().mapToLong(entity -> bookDetail(entity).getOrderedQuantity()).sum();
+    }
+
+    private static BookDetail bookDetail(HttpEntity<?> request) {
+        return (BookDetail) ((List<?>) request.getBody()).get(0);
+    }
+
+    private static Book book(int bookId) {
+        return new Book(bookId, "Book " + bookId, "Author", "Description", 12.5, 1000);
+    }
+}